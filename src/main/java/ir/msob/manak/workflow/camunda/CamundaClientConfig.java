@@ -2,6 +2,7 @@ package ir.msob.manak.workflow.camunda;
 
 import io.camunda.client.CamundaClient;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -13,6 +14,7 @@ import java.net.URI;
  * and initializes a CamundaClient bean.
  */
 @Configuration
+@EnableConfigurationProperties(JobWorkerProperties.class)
 public class CamundaClientConfig {
 
     @Value("${camunda.client.grpc-address}")
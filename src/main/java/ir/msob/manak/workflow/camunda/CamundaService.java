@@ -1,49 +1,285 @@
 package ir.msob.manak.workflow.camunda;
 
 import io.camunda.client.CamundaClient;
+import io.camunda.client.api.command.ClientHttpException;
+import io.camunda.client.api.command.ClientStatusException;
 import io.camunda.client.api.response.ActivatedJob;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import ir.msob.jima.core.commons.logger.Logger;
 import ir.msob.jima.core.commons.logger.LoggerFactory;
+import ir.msob.manak.workflow.jobresult.JobResult;
+import ir.msob.manak.workflow.jobresult.JobResultService;
+import ir.msob.manak.workflow.largevalue.LargeValueStore;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
 
+import java.time.Duration;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static ir.msob.manak.workflow.worker.Constants.JOB_COMPLETED_AT_KEY;
+import static ir.msob.manak.workflow.worker.Constants.WORKFLOW_ID_KEY;
 
 @Service
 @RequiredArgsConstructor
 public class CamundaService {
     private static final Logger logger = LoggerFactory.getLogger(CamundaService.class);
+    private static final Set<Status.Code> TRANSIENT_CODES = Set.of(
+            Status.Code.UNAVAILABLE, Status.Code.DEADLINE_EXCEEDED, Status.Code.RESOURCE_EXHAUSTED);
+    private static final Set<Integer> TRANSIENT_HTTP_STATUSES = Set.of(429, 502, 503, 504);
+    /**
+     * Transient errors of commands that were certainly not applied; a timeout may hide an applied command.
+     */
+    private static final Set<Status.Code> RETRYABLE_CODES = Set.of(Status.Code.UNAVAILABLE, Status.Code.RESOURCE_EXHAUSTED);
+    private static final Set<Integer> RETRYABLE_HTTP_STATUSES = Set.of(429, 503);
 
     private final CamundaClient camundaClient;
+    private final JobWorkerProperties jobWorkerProperties;
+    private final MeterRegistry meterRegistry;
+    private final LargeValueStore largeValueStore;
+    private final JobResultService jobResultService;
+    private final Map<String, DistributionSummary> activationPayloads = new ConcurrentHashMap<>();
+    private final Map<String, Timer> hopLatencies = new ConcurrentHashMap<>();
+    private final Map<String, Counter> replays = new ConcurrentHashMap<>();
+
+    @Value("${manak.camunda.command-retry.max-retries:3}")
+    private int commandMaxRetries;
+    @Value("${manak.camunda.command-retry.min-backoff:100ms}")
+    private Duration commandMinBackoff;
+    @Value("${manak.camunda.command-retry.max-backoff:2s}")
+    private Duration commandMaxBackoff;
+    @Value("${manak.camunda.fail-backoff:5s}")
+    private Duration failBackoff;
+    @Getter
+    @Value("${manak.camunda.claim-check.enabled:false}")
+    private boolean claimCheckEnabled;
+
+    /**
+     * Record the hop latency of a just activated job: the time since the previous job of the process instance was
+     * completed ({@code jobCompletedAt}, set by {@link #complete}), tagged with the job type and whether the type
+     * is streamed or polled. Comparing the two deliveries shows what streaming saves per stage hop.
+     * Jobs without a previous completion (first job of a process) are skipped.
+     * The length of the fetched variables document is recorded for every job, to follow what the workers' fetchVariables save.
+     * Called by {@link JobExecutor} for every job it runs.
+     */
+    public void recordActivation(ActivatedJob job) {
+        activationPayloads.computeIfAbsent(job.getType(), type -> DistributionSummary.builder("manak.camunda.job.activation.payload")
+                        .description("Length of the variables document fetched with an activated job")
+                        .baseUnit("characters")
+                        .tag("type", type)
+                        .publishPercentiles(0.5, 0.95, 0.99)
+                        .register(meterRegistry))
+                .record(job.getVariables().length());
+        if (!(job.getVariablesAsMap().get(JOB_COMPLETED_AT_KEY) instanceof Number completedAt)) {
+            return;
+        }
+        long latency = Math.max(0, System.currentTimeMillis() - completedAt.longValue());
+        String delivery = jobWorkerProperties.isStreamEnabled(job.getType()) ? "stream" : "poll";
+        hopLatencies.computeIfAbsent(job.getType() + ":" + delivery, key -> Timer.builder("manak.camunda.job.hop.latency")
+                        .description("Time from completing a job to activating the next job of the same process instance")
+                        .tag("type", job.getType())
+                        .tag("delivery", delivery)
+                        .publishPercentiles(0.5, 0.95, 0.99)
+                        .register(meterRegistry))
+                .record(latency, TimeUnit.MILLISECONDS);
+    }
 
     /**
      * Complete Camunda job using CamundaClient's async API.
      * Wrapped into a Mono so it can be composed reactively.
+     * The completion time is passed on to the next job for {@link #recordActivation}.
+     * Transient transport errors are retried with backoff; see {@link #isTransient(Throwable)}.
+     * With the claim check enabled, oversized top-level variables are stored by the {@link LargeValueStore} and
+     * only their references are passed to Camunda; workers load them again where they read them.
+     * The variables are recorded in the {@link JobResultService} first, so a redelivery of the job gets the same result
+     * (see {@link #claim}).
      */
     public Mono<Void> complete(ActivatedJob job, Map<String, Object> resultVars) {
         Objects.requireNonNull(job, "job must not be null");
+        Map<String, Object> variables = resultVars == null ? new HashMap<>() : new HashMap<>(resultVars);
+
+        return (claimCheckEnabled ? largeValueStore.offload(variables, owningWorkflowId(job, variables)) : Mono.just(variables))
+                .flatMap(offloaded -> jobResultService.record(job, new HashMap<>(offloaded))
+                        .then(sendComplete(job, offloaded)));
+    }
+
+    /**
+     * Claim the job in the {@link JobResultService} before its pipeline runs. A job a previous activation already
+     * completed is completed again with the recorded result; a job another activation is still running is handed
+     * back, see {@link #handBack}.
+     *
+     * @return true when the job must not be run by this activation
+     */
+    public Mono<Boolean> claim(ActivatedJob job) {
+        return jobResultService.claim(job)
+                .flatMap(existing -> {
+                    if (existing.getStatus() == JobResult.Status.DONE) {
+                        logger.info("Job already handled, completing it with the recorded result. jobKey={} type={}",
+                                job.getKey(), job.getType());
+                        replays.computeIfAbsent(job.getType(), type -> Counter.builder("manak.camunda.job.replayed")
+                                        .description("Redelivered jobs completed with the recorded result instead of running again")
+                                        .tag("type", type)
+                                        .register(meterRegistry))
+                                .increment();
+                        Map<String, Object> variables = existing.getVariables() == null ? new HashMap<>() : new HashMap<>(existing.getVariables());
+                        return sendComplete(job, variables).thenReturn(true);
+                    }
+                    logger.info("Job is being handled by another activation, handing it back. jobKey={} type={}",
+                            job.getKey(), job.getType());
+                    return handBack(job, "Job " + job.getKey() + " is being handled by another activation").thenReturn(true);
+                })
+                .defaultIfEmpty(false);
+    }
 
-        return Mono.create(sink -> {
-            try {
-                camundaClient
-                        .newCompleteCommand(job.getKey())
-                        .variables(resultVars)
-                        .send()
-                        .whenComplete((resp, ex) -> {
+    /**
+     * The workflow that owns the variables offloaded on completion: the one the job completes with (a new workflow)
+     * or the one of its process instance.
+     */
+    private static String owningWorkflowId(ActivatedJob job, Map<String, Object> variables) {
+        Object workflowId = variables.get(WORKFLOW_ID_KEY);
+        if (workflowId == null) {
+            workflowId = job.getVariablesAsMap().get(WORKFLOW_ID_KEY);
+        }
+        return workflowId == null ? null : workflowId.toString();
+    }
+
+    private Mono<Void> sendComplete(ActivatedJob job, Map<String, Object> variables) {
+        return send("complete", job, () -> {
+            variables.put(JOB_COMPLETED_AT_KEY, System.currentTimeMillis());
+            return camundaClient
+                    .newCompleteCommand(job.getKey())
+                    .variables(variables)
+                    .send();
+        });
+    }
+
+    /**
+     * Fail the job with one retry less and the configured backoff, so Camunda activates it again later
+     * (or raises an incident when no retries are left). The job's claim is released first, so the retry runs.
+     */
+    public Mono<Void> fail(ActivatedJob job, String errorMessage) {
+        return jobResultService.release(job)
+                .then(fail(job, job.getRetries() - 1, failBackoff, errorMessage));
+    }
+
+    /**
+     * Settle a job whose pipeline failed and end with the original error. A transient error (Camunda was
+     * unreachable) hands the job back for a native retry instead of failing the workflow; any other error is a
+     * business failure and is reported by {@code businessFailure}, e.g. by completing the job with an error result.
+     */
+    public Mono<Void> failJob(ActivatedJob job, String errorMessage, Throwable ex, Supplier<Mono<Void>> businessFailure) {
+        Mono<Void> outcome = isTransient(ex) ? fail(job, errorMessage) : Mono.defer(businessFailure);
+        return outcome.then(Mono.error(ex));
+    }
+
+    /**
+     * Give a job this activation does not run back to Camunda with its retries unchanged and the
+     * {@code yield-backoff}; a claim held by another activation is left alone.
+     */
+    public Mono<Void> handBack(ActivatedJob job, String reason) {
+        return fail(job, job.getRetries(), jobWorkerProperties.getYieldBackoff(), reason);
+    }
+
+    /**
+     * Fail the job using Camunda's native job retries instead of completing it with an error variable.
+     */
+    public Mono<Void> fail(ActivatedJob job, int retries, Duration backoff, String errorMessage) {
+        Objects.requireNonNull(job, "job must not be null");
+        return send("fail", job, () -> camundaClient
+                .newFailCommand(job.getKey())
+                .retries(Math.max(retries, 0))
+                .retryBackoff(backoff)
+                .errorMessage(errorMessage)
+                .send())
+                // e.g. a complete that timed out but was applied: there is nothing left to hand back
+                .onErrorResume(CamundaService::isNotFound, ex -> {
+                    logger.info("Job is no longer active, not failing it. jobKey={}", job.getKey());
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Whether the error is a transport error that is expected to go away on its own (broker unavailable,
+     * overloaded or slow to answer), as opposed to a rejection of the command.
+     * A timeout ({@code DEADLINE_EXCEEDED}, 504) counts as transient, but the command may still have been applied,
+     * so it is not retried by {@link #send}; see {@link #fail(ActivatedJob, int, Duration, String)}.
+     */
+    public boolean isTransient(Throwable ex) {
+        return hasStatus(ex, TRANSIENT_CODES, TRANSIENT_HTTP_STATUSES);
+    }
+
+    static boolean isRetryable(Throwable ex) {
+        return hasStatus(ex, RETRYABLE_CODES, RETRYABLE_HTTP_STATUSES);
+    }
+
+    static boolean isNotFound(Throwable ex) {
+        return hasStatus(ex, Set.of(Status.Code.NOT_FOUND), Set.of(404));
+    }
+
+    private static boolean hasStatus(Throwable ex, Set<Status.Code> codes, Set<Integer> httpStatuses) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ClientStatusException statusException) {
+                return codes.contains(statusException.getStatusCode());
+            }
+            if (cause instanceof StatusRuntimeException statusException) {
+                return codes.contains(statusException.getStatus().getCode());
+            }
+            if (cause instanceof ClientHttpException httpException) {
+                return httpStatuses.contains(httpException.code());
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Send the command, retrying errors that guarantee it was not applied. A NOT_FOUND answer to a retry means an
+     * earlier attempt was applied after all, so it counts as success.
+     */
+    private Mono<Void> send(String action, ActivatedJob job, Supplier<CompletionStage<?>> command) {
+        AtomicInteger attempts = new AtomicInteger();
+        return Mono.<Void>create(sink -> {
+                    attempts.incrementAndGet();
+                    try {
+                        command.get().whenComplete((resp, ex) -> {
                             if (ex != null) {
-                                logger.error("Failed to complete job in Camunda. jobKey={} error={}", job.getKey(), ex.getMessage(), ex);
                                 sink.error(ex);
                             } else {
-                                logger.info("Job completed in Camunda successfully. jobKey={}", job.getKey());
+                                logger.info("Job {} command accepted by Camunda. jobKey={}", action, job.getKey());
                                 sink.success();
                             }
                         });
-            } catch (Exception ex) {
-                logger.error("Exception while sending complete command to Camunda. jobKey={} error={}", job.getKey(), ex.getMessage(), ex);
-                sink.error(ex);
-            }
-        });
+                    } catch (Exception ex) {
+                        sink.error(ex);
+                    }
+                })
+                .retryWhen(Retry.backoff(commandMaxRetries, commandMinBackoff)
+                        .maxBackoff(commandMaxBackoff)
+                        .jitter(0.5)
+                        .filter(CamundaService::isRetryable)
+                        .doBeforeRetry(signal -> logger.warn("Transient error sending job {} command, retrying. jobKey={} attempt={} error={}",
+                                action, job.getKey(), signal.totalRetries() + 1, signal.failure().getMessage()))
+                        .onRetryExhaustedThrow((spec, signal) -> signal.failure()))
+                .onErrorResume(ex -> attempts.get() > 1 && isNotFound(ex), ex -> {
+                    logger.info("Job {} command retry answered NOT_FOUND, an earlier attempt was applied. jobKey={}", action, job.getKey());
+                    return Mono.empty();
+                })
+                .doOnError(ex -> logger.error("Failed to send job {} command to Camunda. jobKey={} error={}",
+                        action, job.getKey(), ex.getMessage(), ex));
     }
 }
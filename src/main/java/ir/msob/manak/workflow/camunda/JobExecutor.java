@@ -0,0 +1,185 @@
+package ir.msob.manak.workflow.camunda;
+
+import io.camunda.client.api.response.ActivatedJob;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import ir.msob.jima.core.commons.logger.Logger;
+import ir.msob.jima.core.commons.logger.LoggerFactory;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs the reactive pipeline of an activated job with a bounded number of pipelines in flight per job type.
+ * <p>
+ * Workers return from the job handler as soon as the pipeline is subscribed, so the SDK's {@code maxJobsActive}
+ * does not bound the work in progress. Here each job type has a lane of {@code max-in-flight} permits
+ * ({@link JobWorkerProperties}). Admission never blocks: a job arriving while its lane is full is handed back to
+ * Camunda with its retries unchanged and {@code yield-backoff}, so a saturated job type cannot hold the SDK's shared
+ * handler threads and starve the other types. In-flight pipelines per type are exposed as the
+ * {@code manak.camunda.job.in-flight} gauge and handed back jobs as the {@code manak.camunda.job.yielded} counter.
+ * {@link JobWorkerSettingsCustomizer} caps {@code maxJobsActive} at the lane size, so one activation never fetches
+ * more jobs than the lane can take.
+ * <p>
+ * With {@code manak.camunda.job-workers.virtual-threads} the pipeline is subscribed on a virtual thread per job, so
+ * the handler thread is back to the SDK right after taking the permit, and {@link #getBlockingScheduler()} moves
+ * blocking or serialization-heavy steps off the Reactor event loops onto virtual threads as well. Otherwise both
+ * run where they are called, as before. The {@code manak.camunda.job.duration} timer, tagged with the thread mode,
+ * gives the throughput of either mode under the same load. The build targets Java 17, so virtual threads need a
+ * Java 21 runtime and are off by default.
+ */
+@Component
+public class JobExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(JobExecutor.class);
+
+    private final JobWorkerProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final CamundaService camundaService;
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+    private final String threads;
+    /**
+     * Scheduler for blocking or serialization-heavy steps of a pipeline: virtual threads when enabled, otherwise
+     * the calling thread.
+     */
+    @Getter
+    private final Scheduler blockingScheduler;
+
+    public JobExecutor(JobWorkerProperties properties, MeterRegistry meterRegistry, CamundaService camundaService) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.camundaService = camundaService;
+        if (properties.isVirtualThreads()) {
+            this.threads = "virtual";
+            this.blockingScheduler = Schedulers.fromExecutorService(newVirtualThreadPerTaskExecutor(), "manak-job");
+        } else {
+            this.threads = "platform";
+            this.blockingScheduler = Schedulers.immediate();
+        }
+        logger.info("Job executor started. threads={}", threads);
+    }
+
+    /**
+     * Take a permit of the job's type and subscribe to the pipeline; the permit is released when it terminates.
+     * Without a free permit the job is handed back to Camunda instead; an admitted job has its activation recorded
+     * ({@link CamundaService#recordActivation}).
+     * Errors are expected to be handled (job failed or completed with an error result) inside the pipeline.
+     * The job is claimed first (see {@link CamundaService#claim}): a redelivered job that was already completed gets
+     * its recorded result again, one still running elsewhere is handed back, and in both cases the pipeline is not run.
+     */
+    public void execute(ActivatedJob job, Supplier<Mono<?>> pipeline) {
+        Lane lane = lane(job.getType());
+        if (!lane.permits.tryAcquire()) {
+            lane.yielded.increment();
+            logger.debug("Job type at max-in-flight, handing the job back. jobKey={} type={}", job.getKey(), job.getType());
+            camundaService.handBack(job, "Job type " + job.getType() + " is at max-in-flight on this instance")
+                    .subscribe(null, ex -> logger.warn("Failed to hand back job. jobKey={} type={} error={}",
+                            job.getKey(), job.getType(), ex.getMessage()));
+            return;
+        }
+
+        camundaService.recordActivation(job);
+        lane.inFlight.incrementAndGet();
+        Timer.Sample sample = Timer.start(meterRegistry);
+        camundaService.claim(job)
+                .flatMap(handled -> handled ? Mono.<Object>empty() : Mono.<Object>defer(pipeline))
+                .subscribeOn(blockingScheduler)
+                .doFinally(signal -> {
+                    sample.stop(lane.duration);
+                    lane.inFlight.decrementAndGet();
+                    lane.permits.release();
+                })
+                .subscribe(null, ex -> logger.warn("Job pipeline terminated with error. jobKey={} type={} error={}",
+                        job.getKey(), job.getType(), ex.getMessage()));
+    }
+
+    /**
+     * Change the in-flight limit of a job type; pipelines already running are not affected.
+     */
+    public void resize(String type, int maxInFlight) {
+        lane(type).resize(maxInFlight);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        blockingScheduler.dispose();
+    }
+
+    /**
+     * The build targets Java 17, so the Java 21 factory is looked up at runtime; enabling virtual threads on an
+     * older runtime fails startup instead of silently falling back to platform threads.
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("manak.camunda.job-workers.virtual-threads requires Java 21 or later, running on "
+                    + Runtime.version(), ex);
+        }
+    }
+
+    private Lane lane(String type) {
+        return lanes.computeIfAbsent(type, t -> {
+            Lane lane = new Lane(properties.getMaxInFlight(t));
+            Gauge.builder("manak.camunda.job.in-flight", lane.inFlight, AtomicInteger::get)
+                    .description("Job pipelines running")
+                    .tag("type", t)
+                    .register(meterRegistry);
+            lane.duration = Timer.builder("manak.camunda.job.duration")
+                    .description("Time from taking an execution permit to the end of the job pipeline")
+                    .tag("type", t)
+                    .tag("threads", threads)
+                    .register(meterRegistry);
+            lane.yielded = Counter.builder("manak.camunda.job.yielded")
+                    .description("Activated jobs handed back to Camunda because their type was at max-in-flight")
+                    .tag("type", t)
+                    .register(meterRegistry);
+            return lane;
+        });
+    }
+
+    private static class Lane {
+        private final ResizableSemaphore permits;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private Counter yielded;
+        private Timer duration;
+        private int limit;
+
+        private Lane(int limit) {
+            this.limit = limit;
+            this.permits = new ResizableSemaphore(limit);
+        }
+
+        private synchronized void resize(int newLimit) {
+            if (newLimit > limit) {
+                permits.release(newLimit - limit);
+            } else if (newLimit < limit) {
+                permits.reducePermits(limit - newLimit);
+            }
+            limit = newLimit;
+        }
+    }
+
+    private static class ResizableSemaphore extends Semaphore {
+        private ResizableSemaphore(int permits) {
+            super(permits);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package ir.msob.manak.workflow.camunda;
+
+import ir.msob.manak.core.service.jima.security.UserService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.security.Principal;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Runtime view and adjustment of the per-job-type worker settings, without a redeploy. Restricted to the
+ * {@code manak.camunda.job-workers.admin-role}.
+ */
+@RestController
+@RequestMapping(JobWorkerAdminRestResource.BASE_URI)
+@RequiredArgsConstructor
+public class JobWorkerAdminRestResource {
+    public static final String BASE_URI = "/api/v1/admin/job-workers";
+
+    private final JobWorkerAdminService jobWorkerAdminService;
+    private final UserService userService;
+
+    @GetMapping
+    public Mono<Map<String, JobWorkerProperties.JobTypeSettings>> getSettings(Principal principal) {
+        return Mono.fromSupplier(() -> jobWorkerAdminService.getSettings(userService.getUser(Optional.ofNullable(principal))));
+    }
+
+    /**
+     * Replace the settings of {@code type} with the given ones and reopen its worker.
+     */
+    @PutMapping("/{type}")
+    public Mono<JobWorkerProperties.JobTypeSettings> update(@PathVariable String type,
+                                                            @RequestBody JobWorkerProperties.JobTypeSettings settings,
+                                                            Principal principal) {
+        // closing a worker waits for its in-flight activation request
+        return Mono.fromCallable(() -> jobWorkerAdminService.update(type, settings, userService.getUser(Optional.ofNullable(principal))))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+}
@@ -0,0 +1,63 @@
+package ir.msob.manak.workflow.camunda;
+
+import io.camunda.client.CamundaClient;
+import io.camunda.client.annotation.value.JobWorkerValue;
+import io.camunda.client.api.worker.JobWorker;
+import io.camunda.client.jobhandling.JobWorkerManager;
+import ir.msob.jima.core.commons.exception.datanotfound.DataNotFoundException;
+import ir.msob.jima.core.commons.logger.Logger;
+import ir.msob.jima.core.commons.logger.LoggerFactory;
+import ir.msob.manak.core.model.jima.security.User;
+import lombok.RequiredArgsConstructor;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+
+/**
+ * Changes the activation settings of a running job worker: the worker of the type is closed and opened again
+ * with the new settings, which replace the previous ones. Only users with the {@code admin-role} of
+ * {@link JobWorkerProperties} may read or change them. Jobs already activated by the closed worker still complete; they only stop counting
+ * against the new limit. Changes are not persisted and reset to the configuration on restart.
+ */
+@Service
+@RequiredArgsConstructor
+public class JobWorkerAdminService {
+    private static final Logger logger = LoggerFactory.getLogger(JobWorkerAdminService.class);
+
+    private final JobWorkerProperties properties;
+    private final JobWorkerSettingsCustomizer customizer;
+    private final JobWorkerManager jobWorkerManager;
+    private final CamundaClient camundaClient;
+    private final JobExecutor jobExecutor;
+
+    public Map<String, JobWorkerProperties.JobTypeSettings> getSettings(User user) {
+        checkAdmin(user);
+        return properties.getTypes();
+    }
+
+    /**
+     * Replace the settings of {@code type}; values left unset fall back to the worker's declared values and the
+     * defaults.
+     */
+    public synchronized JobWorkerProperties.JobTypeSettings update(String type, JobWorkerProperties.JobTypeSettings settings, User user) {
+        checkAdmin(user);
+        JobWorkerValue jobWorkerValue = jobWorkerManager.findJobWorkerConfigByType(type)
+                .orElseThrow(() -> new DataNotFoundException("Job worker not found: " + type));
+
+        properties.getTypes().put(type, settings);
+        jobExecutor.resize(type, properties.getMaxInFlight(type));
+
+        jobWorkerManager.findJobWorkerByType(type).ifPresent(JobWorker::close);
+        customizer.customize(jobWorkerValue);
+        jobWorkerManager.openWorker(camundaClient, jobWorkerValue);
+        logger.info("Job worker reopened with new settings. type={} user={}", type, user.getUsername());
+        return settings;
+    }
+
+    private void checkAdmin(User user) {
+        if (user == null || user.getRoles() == null || !user.getRoles().contains(properties.getAdminRole())) {
+            throw new AccessDeniedException("Job worker settings require the " + properties.getAdminRole() + " role");
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package ir.msob.manak.workflow.camunda;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Activation settings per Camunda job type ({@code manak.camunda.job-workers.types.<job-type>}).
+ * Unset values keep the SDK defaults. The map is also the live state changed through {@link JobWorkerAdminRestResource}.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "manak.camunda.job-workers")
+public class JobWorkerProperties {
+    /**
+     * Pipelines of one job type running at once on this instance, unless set per type; see {@link JobExecutor}.
+     */
+    private int defaultMaxInFlight = 32;
+    /**
+     * Backoff of a job handed back because its type was at max-in-flight; see {@link JobExecutor}.
+     */
+    private Duration yieldBackoff = Duration.ofSeconds(1);
+    /**
+     * Run job pipelines, and the blocking or serialization-heavy steps scheduled on
+     * {@link JobExecutor#getBlockingScheduler()}, on virtual threads; see {@link JobExecutor}. Requires a Java 21 runtime, startup fails otherwise.
+     */
+    private boolean virtualThreads;
+    /**
+     * Role a user needs to change the settings through {@link JobWorkerAdminRestResource}.
+     */
+    private String adminRole = "ADMIN";
+    private Map<String, JobTypeSettings> types = new ConcurrentHashMap<>();
+
+    public int getMaxInFlight(String type) {
+        JobTypeSettings settings = types.get(type);
+        return settings != null && settings.getMaxInFlight() != null ? settings.getMaxInFlight() : defaultMaxInFlight;
+    }
+
+    public boolean isStreamEnabled(String type) {
+        JobTypeSettings settings = types.get(type);
+        return settings != null && Boolean.TRUE.equals(settings.getStreamEnabled());
+    }
+
+    @Getter
+    @Setter
+    public static class JobTypeSettings {
+        /**
+         * Maximum number of jobs of this type activated and not yet completed on this instance.
+         */
+        private Integer maxJobsActive;
+        /**
+         * Time the job stays locked to this instance before it can be activated elsewhere.
+         */
+        private Duration timeout;
+        private Duration pollInterval;
+        private Duration requestTimeout;
+        /**
+         * Receive jobs over a gRPC job stream as soon as they are created. Polling continues at
+         * {@code pollInterval} as a fallback, so the interval can be long for streamed types.
+         */
+        private Boolean streamEnabled;
+        private Duration streamTimeout;
+        /**
+         * Pipelines of this type running at once; further jobs are handed back to Camunda. See {@link JobExecutor}.
+         */
+        private Integer maxInFlight;
+        /**
+         * Process variables fetched on activation in addition to the ones the worker declares, e.g. variables read as
+         * {@code $processVariable>name} by the stage mappings and transition conditions of stage-pre-processing,
+         * stage-post-processing and stage-decision. A variable missing here reads as null.
+         */
+        private List<String> fetchVariables;
+    }
+}
@@ -0,0 +1,100 @@
+package ir.msob.manak.workflow.camunda;
+
+import io.camunda.client.annotation.customizer.JobWorkerValueCustomizer;
+import io.camunda.client.annotation.value.JobWorkerValue;
+import ir.msob.jima.core.commons.logger.Logger;
+import ir.msob.jima.core.commons.logger.LoggerFactory;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Applies {@link JobWorkerProperties} to every {@code @JobWorker} before the SDK opens it, so each job type
+ * can be sized to its own latency profile (few slow AI jobs, many fast decision jobs).
+ * <p>
+ * The values a worker had when first customized are remembered, and every customization starts from them: settings
+ * replaced through {@link JobWorkerAdminService} leave no trace of the previous ones, and an unset value falls back
+ * to what the worker declares.
+ */
+@Component
+@RequiredArgsConstructor
+public class JobWorkerSettingsCustomizer implements JobWorkerValueCustomizer {
+    private static final Logger logger = LoggerFactory.getLogger(JobWorkerSettingsCustomizer.class);
+
+    private final JobWorkerProperties properties;
+    private final Map<String, JobWorkerProperties.JobTypeSettings> declared = new ConcurrentHashMap<>();
+
+    @Override
+    public void customize(JobWorkerValue jobWorkerValue) {
+        restore(jobWorkerValue, declared.computeIfAbsent(jobWorkerValue.getType(), type -> declaredSettings(jobWorkerValue)));
+        JobWorkerProperties.JobTypeSettings settings = properties.getTypes().get(jobWorkerValue.getType());
+        if (settings != null) {
+            if (settings.getMaxJobsActive() != null) jobWorkerValue.setMaxJobsActive(settings.getMaxJobsActive());
+            if (settings.getTimeout() != null) jobWorkerValue.setTimeout(settings.getTimeout());
+            if (settings.getPollInterval() != null) jobWorkerValue.setPollInterval(settings.getPollInterval());
+            if (settings.getRequestTimeout() != null) jobWorkerValue.setRequestTimeout(settings.getRequestTimeout());
+            if (settings.getStreamEnabled() != null) jobWorkerValue.setStreamEnabled(settings.getStreamEnabled());
+            if (settings.getStreamTimeout() != null) jobWorkerValue.setStreamTimeout(settings.getStreamTimeout());
+            if (settings.getFetchVariables() != null && !settings.getFetchVariables().isEmpty()) {
+                jobWorkerValue.setFetchVariables(withDeclared(jobWorkerValue.getFetchVariables(), settings.getFetchVariables()));
+            }
+        }
+        capMaxJobsActive(jobWorkerValue);
+        logger.info("Job worker configured. type={} maxJobsActive={} timeout={} pollInterval={} requestTimeout={} streamEnabled={} fetchVariables={}",
+                jobWorkerValue.getType(), jobWorkerValue.getMaxJobsActive(), jobWorkerValue.getTimeout(),
+                jobWorkerValue.getPollInterval(), jobWorkerValue.getRequestTimeout(), jobWorkerValue.getStreamEnabled(),
+                jobWorkerValue.getFetchVariables());
+    }
+
+    /**
+     * Jobs activated beyond the lane's {@code max-in-flight} would only be handed back by {@link JobExecutor}, so the
+     * SDK is not allowed to activate more than that; it stops fetching once the lane is full.
+     */
+    private void capMaxJobsActive(JobWorkerValue jobWorkerValue) {
+        int maxInFlight = properties.getMaxInFlight(jobWorkerValue.getType());
+        Integer maxJobsActive = jobWorkerValue.getMaxJobsActive();
+        if (maxJobsActive == null || maxJobsActive > maxInFlight) {
+            jobWorkerValue.setMaxJobsActive(maxInFlight);
+        }
+    }
+
+    /**
+     * Configured variables are fetched in addition to the declared ones, never replacing them; a worker that
+     * declares none already fetches all.
+     */
+    private static List<String> withDeclared(List<String> declared, List<String> configured) {
+        if (declared == null || declared.isEmpty()) {
+            return declared;
+        }
+        Set<String> fetchVariables = new LinkedHashSet<>(declared);
+        fetchVariables.addAll(configured);
+        return List.copyOf(fetchVariables);
+    }
+
+    private static JobWorkerProperties.JobTypeSettings declaredSettings(JobWorkerValue jobWorkerValue) {
+        JobWorkerProperties.JobTypeSettings settings = new JobWorkerProperties.JobTypeSettings();
+        settings.setMaxJobsActive(jobWorkerValue.getMaxJobsActive());
+        settings.setTimeout(jobWorkerValue.getTimeout());
+        settings.setPollInterval(jobWorkerValue.getPollInterval());
+        settings.setRequestTimeout(jobWorkerValue.getRequestTimeout());
+        settings.setStreamEnabled(jobWorkerValue.getStreamEnabled());
+        settings.setStreamTimeout(jobWorkerValue.getStreamTimeout());
+        settings.setFetchVariables(jobWorkerValue.getFetchVariables());
+        return settings;
+    }
+
+    private static void restore(JobWorkerValue jobWorkerValue, JobWorkerProperties.JobTypeSettings declared) {
+        jobWorkerValue.setMaxJobsActive(declared.getMaxJobsActive());
+        jobWorkerValue.setTimeout(declared.getTimeout());
+        jobWorkerValue.setPollInterval(declared.getPollInterval());
+        jobWorkerValue.setRequestTimeout(declared.getRequestTimeout());
+        jobWorkerValue.setStreamEnabled(declared.getStreamEnabled());
+        jobWorkerValue.setStreamTimeout(declared.getStreamTimeout());
+        jobWorkerValue.setFetchVariables(declared.getFetchVariables());
+    }
+}
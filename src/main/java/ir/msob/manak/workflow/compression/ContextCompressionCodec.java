@@ -0,0 +1,232 @@
+package ir.msob.manak.workflow.compression;
+
+import com.mongodb.MongoClientSettings;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import ir.msob.jima.core.commons.logger.Logger;
+import ir.msob.jima.core.commons.logger.LoggerFactory;
+import lombok.Getter;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinarySubType;
+import org.bson.BsonBinaryWriter;
+import org.bson.Document;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.bson.types.Binary;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Stores selected context entries as deflate-compressed BSON.
+ * <p>
+ * Works on stored documents: inside every {@code context}, {@code stageInput} and {@code stageOutput} sub-document,
+ * entries named in {@code manak.workflow.context-compression.keys} whose encoded size is at least {@code min-size}
+ * are replaced by a user-defined binary ({@code 0x80}) holding a format byte and the deflated BSON of the value.
+ * Decoding replaces every such binary anywhere in a document and always runs, so data written while compression
+ * was enabled stays readable after it is turned off.
+ */
+@Component
+public class ContextCompressionCodec {
+    private static final Logger logger = LoggerFactory.getLogger(ContextCompressionCodec.class);
+    private static final Set<String> CONTEXT_FIELDS = Set.of("context", "stageInput", "stageOutput");
+    private static final byte FORMAT_DEFLATE = 1;
+    private static final String VALUE_KEY = "v";
+    private static final DocumentCodec DOCUMENT_CODEC = new DocumentCodec(MongoClientSettings.getDefaultCodecRegistry());
+
+    @Getter
+    private final boolean enabled;
+    private final Set<String> keys;
+    private final int minSize;
+    private final int level;
+    private final DistributionSummary compressionRatio;
+    private final Counter rawBytes;
+    private final Counter compressedBytes;
+
+    public ContextCompressionCodec(@Value("${manak.workflow.context-compression.enabled:false}") boolean enabled,
+                                   @Value("${manak.workflow.context-compression.keys:}") Set<String> keys,
+                                   @Value("${manak.workflow.context-compression.min-size:4096}") int minSize,
+                                   @Value("${manak.workflow.context-compression.level:6}") int level,
+                                   MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.keys = keys;
+        this.minSize = minSize;
+        this.level = level;
+        this.compressionRatio = DistributionSummary.builder("manak.workflow.context.compression.ratio")
+                .description("Raw size divided by compressed size of compressed context entries")
+                .publishPercentiles(0.5, 0.95)
+                .register(meterRegistry);
+        this.rawBytes = Counter.builder("manak.workflow.context.compression.raw.bytes")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.compressedBytes = Counter.builder("manak.workflow.context.compression.compressed.bytes")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Compress the selected entries of every context in the stored document, in place. No-op when disabled.
+     */
+    public void compress(Document document) {
+        if (!enabled || keys.isEmpty() || document == null) {
+            return;
+        }
+        compressNode(document);
+    }
+
+    /**
+     * Replace every compressed entry in the stored document by its decoded value, in place.
+     */
+    public void decompress(Object node) {
+        if (node instanceof Document document) {
+            document.replaceAll((key, value) -> decodeIfCompressed(value));
+            document.values().forEach(this::decompress);
+        } else if (node instanceof List<?> list) {
+            list.forEach(this::decompress);
+        }
+    }
+
+    /**
+     * Whether context entries named {@code key} are selected for compression. Such an entry may be stored as a
+     * single binary, so a targeted update has to replace it whole.
+     */
+    public boolean isSelected(String key) {
+        return keys.contains(key);
+    }
+
+    /**
+     * Stored form of one context entry for a targeted {@code $set}, which bypasses the template's save events.
+     */
+    public Object compressEntry(String key, Object storedValue) {
+        if (!enabled || storedValue == null || !keys.contains(key) || isCompressed(storedValue)) {
+            return storedValue;
+        }
+        return encode(storedValue);
+    }
+
+    private void compressNode(Object node) {
+        if (node instanceof Document document) {
+            document.forEach((key, value) -> {
+                if (CONTEXT_FIELDS.contains(key) && value instanceof Document context) {
+                    compressContext(context);
+                } else {
+                    compressNode(value);
+                }
+            });
+        } else if (node instanceof List<?> list) {
+            list.forEach(this::compressNode);
+        }
+    }
+
+    private void compressContext(Document context) {
+        for (Map.Entry<String, Object> entry : context.entrySet()) {
+            if (keys.contains(entry.getKey()) && entry.getValue() != null && !isCompressed(entry.getValue())) {
+                entry.setValue(encode(entry.getValue()));
+            }
+        }
+    }
+
+    /**
+     * Compress a whole stored document into one binary, regardless of {@link #isEnabled()}.
+     */
+    public Binary pack(Document document) {
+        return new Binary(BsonBinarySubType.USER_DEFINED, deflate(toBson(document)));
+    }
+
+    /**
+     * Inverse of {@link #pack(Document)}.
+     */
+    public Document unpack(Binary binary) {
+        return (Document) fromBson(inflate(binary.getData()));
+    }
+
+    private Object encode(Object value) {
+        byte[] bson = toBson(value);
+        if (bson.length < minSize) {
+            return value;
+        }
+        byte[] payload = deflate(bson);
+        if (payload.length >= bson.length) {
+            return value; // incompressible, keep it readable
+        }
+        rawBytes.increment(bson.length);
+        compressedBytes.increment(payload.length);
+        compressionRatio.record((double) bson.length / payload.length);
+        return new Binary(BsonBinarySubType.USER_DEFINED, payload);
+    }
+
+    private Object decodeIfCompressed(Object value) {
+        return isCompressed(value) ? fromBson(inflate(((Binary) value).getData())) : value;
+    }
+
+    private byte[] deflate(byte[] bson) {
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(bson);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bson.length / 4 + 16);
+            out.write(FORMAT_DEFLATE);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] payload) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(payload, 1, payload.length - 1);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int read = inflater.inflate(buffer);
+                if (read == 0 && inflater.needsInput()) {
+                    throw new DataFormatException("truncated compressed entry");
+                }
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            logger.error("Failed to decode compressed entry. error={}", e.getMessage());
+            throw new IllegalStateException("Corrupted compressed entry", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static boolean isCompressed(Object value) {
+        return value instanceof Binary binary
+                && binary.getType() == BsonBinarySubType.USER_DEFINED.getValue()
+                && binary.getData().length > 1
+                && binary.getData()[0] == FORMAT_DEFLATE;
+    }
+
+    private static byte[] toBson(Object value) {
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        try (BsonBinaryWriter writer = new BsonBinaryWriter(buffer)) {
+            DOCUMENT_CODEC.encode(writer, new Document(VALUE_KEY, value), EncoderContext.builder().build());
+        }
+        return buffer.toByteArray();
+    }
+
+    private static Object fromBson(byte[] bson) {
+        try (BsonBinaryReader reader = new BsonBinaryReader(ByteBuffer.wrap(bson))) {
+            return DOCUMENT_CODEC.decode(reader, DecoderContext.builder().build()).get(VALUE_KEY);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package ir.msob.manak.workflow.compression;
+
+import ir.msob.manak.domain.model.workflow.workflow.Workflow;
+import ir.msob.manak.workflow.stagehistory.StageHistoryRepository;
+import ir.msob.manak.workflow.stagehistory.WorkflowStageHistory;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterLoadEvent;
+import org.springframework.data.mongodb.core.mapping.event.BeforeSaveEvent;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+
+/**
+ * Applies the {@link ContextCompressionCodec} to documents saved and loaded through the template, so the domain
+ * model never sees compressed entries. Writes that go straight to the driver call the codec themselves.
+ */
+@Component
+public class ContextCompressionListener extends AbstractMongoEventListener<Object> {
+    private final ContextCompressionCodec codec;
+    private final Set<String> collections;
+
+    public ContextCompressionListener(ContextCompressionCodec codec, MongoMappingContext mappingContext) {
+        this.codec = codec;
+        this.collections = Set.of(
+                mappingContext.getRequiredPersistentEntity(Workflow.class).getCollection(),
+                WorkflowStageHistory.COLLECTION_NAME,
+                StageHistoryRepository.ARCHIVE_COLLECTION_NAME);
+    }
+
+    @Override
+    public void onBeforeSave(BeforeSaveEvent<Object> event) {
+        if (collections.contains(event.getCollectionName())) {
+            codec.compress(event.getDocument());
+        }
+    }
+
+    @Override
+    public void onAfterLoad(AfterLoadEvent<Object> event) {
+        if (collections.contains(event.getCollectionName())) {
+            codec.decompress(event.getDocument());
+        }
+    }
+}
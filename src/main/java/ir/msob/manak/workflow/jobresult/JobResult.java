@@ -0,0 +1,45 @@
+package ir.msob.manak.workflow.jobresult;
+
+import lombok.*;
+import lombok.experimental.FieldNameConstants;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Ledger entry of a job, so a redelivery of the same job is neither run twice at the same time nor run again after
+ * it was completed.
+ * The id is {@code <elementInstanceKey>:<jobKey>}. An activation claims the entry ({@link Status#IN_PROGRESS})
+ * before its pipeline runs, holding it until the job's deadline ({@code leaseUntil}), and marks it
+ * {@link Status#DONE} with the variables the job is completed with. Documents are removed by a TTL index on
+ * {@code expiresAt}.
+ */
+@Document(collection = JobResult.COLLECTION_NAME)
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldNameConstants(innerTypeName = "FN")
+public class JobResult {
+    public static final String COLLECTION_NAME = "JobResult";
+
+    @Id
+    private String id;
+    private String jobType;
+    private Status status;
+    private Map<String, Object> variables;
+    /**
+     * Deadline of the activation holding the entry; identifies the activation when the claim is released.
+     */
+    private Instant leaseUntil;
+    private Instant completedAt;
+    private Instant expiresAt;
+
+    public enum Status {
+        IN_PROGRESS,
+        DONE
+    }
+}
@@ -0,0 +1,91 @@
+package ir.msob.manak.workflow.jobresult;
+
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
+import ir.msob.manak.workflow.mongo.IndexContributor;
+import ir.msob.manak.workflow.mongo.ManagedIndex;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public class JobResultRepository implements IndexContributor {
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    public JobResultRepository(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    /**
+     * Insert a new entry; fails with a {@link org.springframework.dao.DuplicateKeyException} when the job already
+     * has one.
+     */
+    public Mono<Void> insert(JobResult jobResult) {
+        return reactiveMongoTemplate.insert(jobResult).then();
+    }
+
+    /**
+     * Replace the entry with the given one, provided it still expires at {@code expectedExpiresAt}, i.e. nobody
+     * wrote it since it was read.
+     *
+     * @return whether the entry was replaced
+     */
+    public Mono<Boolean> replace(JobResult jobResult, Instant expectedExpiresAt) {
+        Query query = Query.query(Criteria.where(JobResult.FN.id).is(jobResult.getId())
+                .and(JobResult.FN.expiresAt).is(expectedExpiresAt));
+        Update update = new Update()
+                .set(JobResult.FN.jobType, jobResult.getJobType())
+                .set(JobResult.FN.status, jobResult.getStatus())
+                .set(JobResult.FN.variables, jobResult.getVariables())
+                .set(JobResult.FN.leaseUntil, jobResult.getLeaseUntil())
+                .set(JobResult.FN.completedAt, jobResult.getCompletedAt())
+                .set(JobResult.FN.expiresAt, jobResult.getExpiresAt());
+        return reactiveMongoTemplate.updateFirst(query, update, JobResult.class)
+                .map(UpdateResult::getModifiedCount)
+                .map(modified -> modified > 0);
+    }
+
+    /**
+     * Insert or replace the entry; a job completed again after a redelivery overwrites it.
+     */
+    public Mono<Void> save(JobResult jobResult) {
+        return reactiveMongoTemplate.save(jobResult).then();
+    }
+
+    /**
+     * Remove the in-progress entry held by the activation with the given lease; a completed entry or one taken over
+     * by a later activation is left alone.
+     */
+    public Mono<Long> deleteClaim(String id, Instant leaseUntil) {
+        Query query = Query.query(Criteria.where(JobResult.FN.id).is(id)
+                .and(JobResult.FN.status).is(JobResult.Status.IN_PROGRESS)
+                .and(JobResult.FN.leaseUntil).is(leaseUntil));
+        return reactiveMongoTemplate.remove(query, JobResult.class)
+                .map(DeleteResult::getDeletedCount);
+    }
+
+    public Mono<JobResult> findById(String id) {
+        return reactiveMongoTemplate.findById(id, JobResult.class);
+    }
+
+    /**
+     * Each document expires at its own {@code expiresAt}, so changing the ttl does not require rebuilding the index.
+     */
+    @Override
+    public Collection<ManagedIndex> getIndexes() {
+        return List.of(new ManagedIndex(JobResult.class, new Index()
+                .on(JobResult.FN.expiresAt, Sort.Direction.ASC)
+                .expire(Duration.ZERO)));
+    }
+}
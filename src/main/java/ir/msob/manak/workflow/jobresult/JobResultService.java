@@ -0,0 +1,157 @@
+package ir.msob.manak.workflow.jobresult;
+
+import io.camunda.client.api.response.ActivatedJob;
+import ir.msob.jima.core.commons.logger.Logger;
+import ir.msob.jima.core.commons.logger.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Idempotency ledger of jobs, keyed by element instance and job key.
+ * <p>
+ * An activation claims the job with an insert-if-absent before its pipeline runs and holds the claim until the
+ * job's deadline, when Camunda would hand the job out again anyway. The result is recorded right before the complete
+ * command is sent. When Camunda activates the same job again, {@link #claim} returns the existing entry instead:
+ * a recorded result is sent again and the worker does not run, a live claim means another activation is still
+ * running the job. A claim whose deadline passed is taken over. Failing a job releases its claim, so the retry runs.
+ * <p>
+ * Entries are kept in mongo for {@code manak.camunda.job-results.ttl} and the most recent results in memory (LRU)
+ * in front of it. The ledger costs a mongo write per job and is off by default
+ * ({@code manak.camunda.job-results.enabled}). It is best effort: a failed write or lookup never fails the job.
+ */
+@Service
+public class JobResultService {
+    private static final Logger logger = LoggerFactory.getLogger(JobResultService.class);
+
+    private final JobResultRepository repository;
+    private final boolean enabled;
+    private final Duration ttl;
+    private final Map<String, JobResult> cache;
+
+    public JobResultService(JobResultRepository repository,
+                            @Value("${manak.camunda.job-results.enabled:false}") boolean enabled,
+                            @Value("${manak.camunda.job-results.ttl:1h}") Duration ttl,
+                            @Value("${manak.camunda.job-results.cache-size:1024}") int cacheSize) {
+        this.repository = repository;
+        this.enabled = enabled;
+        this.ttl = ttl;
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, JobResult> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    /**
+     * Claim the job for this activation.
+     *
+     * @return empty when this activation holds the claim (or the ledger is off or unavailable) and must run the job;
+     * otherwise the entry that stops it: {@link JobResult.Status#DONE} with the recorded result, or
+     * {@link JobResult.Status#IN_PROGRESS} held by another activation
+     */
+    public Mono<JobResult> claim(ActivatedJob job) {
+        if (!enabled) {
+            return Mono.empty();
+        }
+        String key = key(job);
+        JobResult cached = cache.get(key);
+        if (cached != null && cached.getExpiresAt().isAfter(Instant.now())) {
+            return Mono.just(cached);
+        }
+        JobResult claim = claimOf(job);
+        return repository.insert(claim)
+                .then(Mono.<JobResult>empty())
+                .onErrorResume(DuplicateKeyException.class, ex -> repository.findById(key)
+                        .flatMap(existing -> resolve(job, existing, claim)))
+                .onErrorResume(ex -> {
+                    logger.warn("Failed to claim job, handling it. jobKey={} type={} error={}", job.getKey(), job.getType(), ex.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Record the variables the job is about to be completed with.
+     */
+    public Mono<Void> record(ActivatedJob job, Map<String, Object> variables) {
+        if (!enabled) {
+            return Mono.empty();
+        }
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        JobResult jobResult = JobResult.builder()
+                .id(key(job))
+                .jobType(job.getType())
+                .status(JobResult.Status.DONE)
+                .variables(variables)
+                .leaseUntil(leaseUntil(job))
+                .completedAt(now)
+                .expiresAt(now.plus(ttl))
+                .build();
+        cache.put(jobResult.getId(), jobResult);
+        return repository.save(jobResult)
+                .onErrorResume(ex -> {
+                    logger.warn("Failed to record job result. jobKey={} type={} error={}", job.getKey(), job.getType(), ex.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Release the claim of this activation, so the next activation of the job (a retry) runs it.
+     */
+    public Mono<Void> release(ActivatedJob job) {
+        if (!enabled) {
+            return Mono.empty();
+        }
+        return repository.deleteClaim(key(job), leaseUntil(job))
+                .then()
+                .onErrorResume(ex -> {
+                    logger.warn("Failed to release job claim. jobKey={} type={} error={}", job.getKey(), job.getType(), ex.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<JobResult> resolve(ActivatedJob job, JobResult existing, JobResult claim) {
+        Instant now = Instant.now();
+        // the TTL monitor removes expired documents only about once a minute
+        boolean expired = !existing.getExpiresAt().isAfter(now);
+        if (existing.getStatus() == JobResult.Status.DONE && !expired) {
+            cache.put(existing.getId(), existing);
+            return Mono.just(existing);
+        }
+        if (existing.getStatus() == JobResult.Status.IN_PROGRESS && !expired && existing.getLeaseUntil().isAfter(now)) {
+            return Mono.just(existing);
+        }
+        logger.debug("Taking over lapsed job claim. jobKey={} type={}", job.getKey(), job.getType());
+        return repository.replace(claim, existing.getExpiresAt())
+                // lost the race: answer with whatever the winner wrote
+                .flatMap(replaced -> replaced ? Mono.<JobResult>empty() : repository.findById(claim.getId()));
+    }
+
+    private JobResult claimOf(ActivatedJob job) {
+        Instant leaseUntil = leaseUntil(job);
+        return JobResult.builder()
+                .id(key(job))
+                .jobType(job.getType())
+                .status(JobResult.Status.IN_PROGRESS)
+                .leaseUntil(leaseUntil)
+                .expiresAt(leaseUntil.plus(ttl))
+                .build();
+    }
+
+    private static Instant leaseUntil(ActivatedJob job) {
+        return Instant.ofEpochMilli(job.getDeadline());
+    }
+
+    private static String key(ActivatedJob job) {
+        return job.getElementInstanceKey() + ":" + job.getKey();
+    }
+}
@@ -0,0 +1,19 @@
+package ir.msob.manak.workflow.largevalue;
+
+import lombok.Getter;
+
+import java.util.Set;
+
+/**
+ * Thrown by a {@link LargeValueResolver} when a path crosses an offloaded value that has not been loaded yet.
+ * {@link LargeValueStore#withResolver} loads the values and runs the work again.
+ */
+@Getter
+public class LargeValueNotLoadedException extends RuntimeException {
+    private final transient Set<String> referenceIds;
+
+    public LargeValueNotLoadedException(Set<String> referenceIds) {
+        super("Large values not loaded: " + referenceIds);
+        this.referenceIds = referenceIds;
+    }
+}
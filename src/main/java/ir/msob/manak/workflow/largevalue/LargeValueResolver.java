@@ -0,0 +1,142 @@
+package ir.msob.manak.workflow.largevalue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Synchronous, dot-delimited path reads over contexts that may contain offloaded values.
+ * <p>
+ * A read that crosses a reference continues inside the referenced value once it has been loaded; otherwise it
+ * throws {@link LargeValueNotLoadedException}, so only values actually touched by a mapping or condition are
+ * ever fetched. Loaded values are kept for the lifetime of the resolver (one job).
+ */
+public class LargeValueResolver {
+    static final String REFERENCE_KEY = "_largeValueRef";
+    static final String SIZE_KEY = "size";
+
+    private final Map<String, Object> loaded = new ConcurrentHashMap<>();
+
+    /**
+     * Read the value at the path, loading a reference found at the end of the path as well.
+     * Returns null if any path segment is missing or a non-map is encountered.
+     */
+    public Object read(Map<String, Object> context, String path) {
+        return resolve(walk(context, path));
+    }
+
+    /**
+     * Read the value at the path, but return a reference found at the end of the path as is.
+     * Used when the value is only copied between contexts, so it never needs to be loaded.
+     */
+    public Object readReference(Map<String, Object> context, String path) {
+        return walk(context, path);
+    }
+
+    /**
+     * Replace a top-level reference with the loaded value.
+     */
+    public Object resolve(Object value) {
+        String referenceId = referenceId(value);
+        if (referenceId == null) {
+            return value;
+        }
+        Object loadedValue = loaded.get(referenceId);
+        if (loadedValue == null) {
+            throw new LargeValueNotLoadedException(Set.of(referenceId));
+        }
+        return loadedValue;
+    }
+
+    /**
+     * Copy of the value with every reference, at any depth, replaced by the loaded value. Returns the value itself
+     * when it holds no reference. All references not loaded yet are reported at once.
+     */
+    public Object resolveAll(Object value) {
+        Set<String> missing = new HashSet<>();
+        Object resolved = resolveAll(value, missing);
+        if (!missing.isEmpty()) {
+            throw new LargeValueNotLoadedException(missing);
+        }
+        return resolved;
+    }
+
+    private Object resolveAll(Object value, Set<String> missing) {
+        String referenceId = referenceId(value);
+        if (referenceId != null) {
+            Object loadedValue = loaded.get(referenceId);
+            if (loadedValue == null) {
+                missing.add(referenceId);
+                return value;
+            }
+            return resolveAll(loadedValue, missing);
+        }
+        if (value instanceof Map<?, ?> map) {
+            Map<Object, Object> copy = null;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                Object resolved = resolveAll(entry.getValue(), missing);
+                if (resolved != entry.getValue() && copy == null) {
+                    copy = new LinkedHashMap<>(map);
+                }
+                if (copy != null) copy.put(entry.getKey(), resolved);
+            }
+            return copy != null ? copy : value;
+        }
+        if (value instanceof List<?> list) {
+            List<Object> copy = null;
+            for (int i = 0; i < list.size(); i++) {
+                Object resolved = resolveAll(list.get(i), missing);
+                if (resolved != list.get(i) && copy == null) {
+                    copy = new ArrayList<>(list);
+                }
+                if (copy != null) copy.set(i, resolved);
+            }
+            return copy != null ? copy : value;
+        }
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object walk(Map<String, Object> context, String path) {
+        if (context == null || path == null || path.isBlank()) return null;
+        String[] keys = path.split("\\.");
+        Object current = context;
+        for (String key : keys) {
+            current = resolve(current);
+            if (!(current instanceof Map)) return null;
+            current = ((Map<String, Object>) current).get(key);
+            if (current == null) return null;
+        }
+        return current;
+    }
+
+    void put(String referenceId, Object value) {
+        loaded.put(referenceId, value);
+    }
+
+    /**
+     * Add the id of every reference found in the value, at any depth, to {@code referenceIds}.
+     */
+    public static void collectReferenceIds(Object value, Set<String> referenceIds) {
+        String referenceId = referenceId(value);
+        if (referenceId != null) {
+            referenceIds.add(referenceId);
+        } else if (value instanceof Map<?, ?> map) {
+            map.values().forEach(child -> collectReferenceIds(child, referenceIds));
+        } else if (value instanceof List<?> list) {
+            list.forEach(child -> collectReferenceIds(child, referenceIds));
+        }
+    }
+
+    public static boolean isReference(Object value) {
+        return referenceId(value) != null;
+    }
+
+    static String referenceId(Object value) {
+        return value instanceof Map<?, ?> map && map.get(REFERENCE_KEY) instanceof String id ? id : null;
+    }
+}
@@ -0,0 +1,189 @@
+package ir.msob.manak.workflow.largevalue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ir.msob.jima.core.commons.logger.Logger;
+import ir.msob.jima.core.commons.logger.LoggerFactory;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.gridfs.ReactiveGridFsTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Keeps oversized stage inputs and outputs out of Mongo documents and Camunda process variables.
+ * <p>
+ * Top-level values whose JSON form exceeds {@code manak.workflow.large-value.threshold} are streamed to GridFS
+ * and replaced by a small reference ({@code {_largeValueRef: <fileId>, size: <bytes>}}). References are immutable,
+ * so they can be copied between contexts and process variables without being loaded; see {@link LargeValueResolver}
+ * for reads.
+ * <p>
+ * Each file records the workflow that owns it ({@code metadata.workflowId}). Since references may be copied
+ * anywhere within the workflow, a value is never deleted when it is overwritten: a workflow's files are deleted with
+ * the workflow, and the ones it no longer references when it is archived. Files without an owner are removed by
+ * {@link LargeValueSweeper}.
+ */
+@Service
+public class LargeValueStore {
+    private static final Logger logger = LoggerFactory.getLogger(LargeValueStore.class);
+    private static final String CONTENT_TYPE = "application/json";
+    static final String OWNER_KEY = "workflowId";
+    private static final String METADATA_PREFIX = "metadata.";
+    private static final String FILE_ID = "_id";
+    private static final String FILES_COLLECTION = "fs.files";
+
+    private final ReactiveGridFsTemplate gridFsTemplate;
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final ObjectMapper objectMapper;
+    private final long threshold;
+    private final int maxLoadRounds;
+
+    public LargeValueStore(ReactiveGridFsTemplate gridFsTemplate,
+                           ReactiveMongoTemplate reactiveMongoTemplate,
+                           ObjectMapper objectMapper,
+                           @Value("${manak.workflow.large-value.threshold:256KB}") DataSize threshold,
+                           @Value("${manak.workflow.large-value.max-load-rounds:5}") int maxLoadRounds) {
+        this.gridFsTemplate = gridFsTemplate;
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.objectMapper = objectMapper;
+        this.threshold = threshold.toBytes();
+        this.maxLoadRounds = maxLoadRounds;
+    }
+
+    /**
+     * Index behind the deletes by owner; GridFS collections have no entity, so it is not a {@code ManagedIndex}.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureOwnerIndex() {
+        reactiveMongoTemplate.indexOps(FILES_COLLECTION)
+                .ensureIndex(new Index().on(METADATA_PREFIX + OWNER_KEY, Sort.Direction.ASC))
+                .subscribe(name -> logger.info("Mongo index ensured. collection={} index={}", FILES_COLLECTION, name),
+                        ex -> logger.error("Failed to ensure mongo index. collection={} error={}", FILES_COLLECTION, ex.getMessage(), ex));
+    }
+
+    /**
+     * Copy of the map with every oversized top-level value replaced by a reference to a file owned by
+     * {@code workflowId} (none when null). Returns the map itself when nothing exceeds the threshold.
+     */
+    public Mono<Map<String, Object>> offload(Map<String, Object> values, String workflowId) {
+        if (values == null || values.isEmpty()) {
+            return Mono.justOrEmpty(values);
+        }
+        Map<String, Object> offloaded = new LinkedHashMap<>(values);
+        return Flux.fromIterable(values.entrySet())
+                .filter(entry -> isCandidate(entry.getValue()))
+                .concatMap(entry -> offloadValue(entry.getKey(), entry.getValue(), workflowId)
+                        .doOnNext(reference -> offloaded.put(entry.getKey(), reference)))
+                .count()
+                .map(count -> count == 0 ? values : offloaded);
+    }
+
+    /**
+     * Copy of the map with every reference, at any depth, replaced by the stored value.
+     * Returns the map itself when it holds no reference.
+     */
+    @SuppressWarnings("unchecked")
+    public Mono<Map<String, Object>> load(Map<String, Object> values) {
+        if (values == null || values.isEmpty()) {
+            return Mono.justOrEmpty(values);
+        }
+        return withResolver(resolver -> Mono.fromCallable(() -> (Map<String, Object>) resolver.resolveAll(values)));
+    }
+
+    /**
+     * Run the work with a fresh resolver; whenever it fails because a reference was not loaded, load the missing
+     * values and run it again. The work must not have side effects before its reads.
+     */
+    public <T> Mono<T> withResolver(Function<LargeValueResolver, Mono<T>> work) {
+        LargeValueResolver resolver = new LargeValueResolver();
+        return Mono.defer(() -> work.apply(resolver))
+                .retryWhen(Retry.max(maxLoadRounds)
+                        .filter(LargeValueNotLoadedException.class::isInstance)
+                        .doBeforeRetryAsync(signal -> load(((LargeValueNotLoadedException) signal.failure()).getReferenceIds(), resolver))
+                        .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+    }
+
+    private static boolean isCandidate(Object value) {
+        return value != null && !(value instanceof Number) && !(value instanceof Boolean) && !LargeValueResolver.isReference(value);
+    }
+
+    /**
+     * Delete the files owned by the workflow, except the {@code retained} ones.
+     */
+    public Mono<Void> deleteOwnedBy(String workflowId, Collection<String> retained) {
+        List<ObjectId> retainedIds = retained.stream().filter(ObjectId::isValid).map(ObjectId::new).toList();
+        return gridFsTemplate.delete(query(where(METADATA_PREFIX + OWNER_KEY).is(workflowId).and(FILE_ID).nin(retainedIds)))
+                .doOnSuccess(v -> logger.debug("Large values of workflow deleted. workflowId={} retained={}", workflowId, retainedIds.size()));
+    }
+
+    /**
+     * Delete the files without an owner uploaded before the given time.
+     */
+    public Mono<Void> deleteUnowned(Instant uploadedBefore) {
+        return gridFsTemplate.delete(query(where(METADATA_PREFIX + OWNER_KEY).exists(false)
+                .and("uploadDate").lt(Date.from(uploadedBefore))));
+    }
+
+    /**
+     * Store the value in GridFS when it exceeds the threshold; empty when it stays inline.
+     */
+    private Mono<Map<String, Object>> offloadValue(String key, Object value, String workflowId) {
+        return Mono.fromCallable(() -> objectMapper.writeValueAsBytes(value))
+                .filter(json -> json.length > threshold)
+                .flatMap(json -> gridFsTemplate.store(Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(json)),
+                                key, CONTENT_TYPE, metadata(json.length, workflowId))
+                        .doOnNext(id -> logger.debug("Large value offloaded. key={} size={} fileId={}", key, json.length, id))
+                        .map(id -> reference(id, json.length)));
+    }
+
+    private Mono<Void> load(Collection<String> referenceIds, LargeValueResolver resolver) {
+        return Flux.fromIterable(referenceIds)
+                .flatMap(id -> gridFsTemplate.findOne(query(where(FILE_ID).is(new ObjectId(id))))
+                        .flatMap(gridFsTemplate::getResource)
+                        .flatMap(resource -> DataBufferUtils.join(resource.getDownloadStream()))
+                        .map(buffer -> {
+                            try (var input = buffer.asInputStream(true)) {
+                                return objectMapper.readValue(input, Object.class);
+                            } catch (IOException e) {
+                                throw new IllegalStateException("Failed to read large value " + id, e);
+                            }
+                        })
+                        .switchIfEmpty(Mono.error(new IllegalStateException("Large value not found: " + id)))
+                        .doOnNext(value -> resolver.put(id, value)))
+                .then();
+    }
+
+    private static Document metadata(int size, String workflowId) {
+        Document metadata = new Document(LargeValueResolver.SIZE_KEY, size);
+        if (workflowId != null) {
+            metadata.put(OWNER_KEY, workflowId);
+        }
+        return metadata;
+    }
+
+    private static Map<String, Object> reference(ObjectId id, int size) {
+        return Map.of(LargeValueResolver.REFERENCE_KEY, id.toHexString(), LargeValueResolver.SIZE_KEY, size);
+    }
+}
@@ -0,0 +1,62 @@
+package ir.msob.manak.workflow.largevalue;
+
+import ir.msob.jima.core.commons.logger.Logger;
+import ir.msob.jima.core.commons.logger.LoggerFactory;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Removes large values without an owning workflow, every {@code interval}, once they are older than
+ * {@code retention}. Those are files stored before ownership was recorded, or by a job whose workflow was unknown.
+ * Disabled by default: a file stored before ownership was recorded may still be referenced by a running workflow,
+ * so the retention has to exceed the longest workflow run.
+ */
+@Component
+@RequiredArgsConstructor
+public class LargeValueSweeper {
+    private static final Logger logger = LoggerFactory.getLogger(LargeValueSweeper.class);
+
+    private final LargeValueStore largeValueStore;
+
+    @Value("${manak.workflow.large-value.orphan-sweep.enabled:false}")
+    private boolean enabled;
+    @Value("${manak.workflow.large-value.orphan-sweep.interval:1h}")
+    private Duration interval;
+    @Value("${manak.workflow.large-value.orphan-sweep.retention:7d}")
+    private Duration retention;
+
+    private Disposable schedule;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        logger.info("Large value sweeper started. interval={} retention={}", interval, retention);
+        schedule = Flux.interval(interval, interval)
+                .onBackpressureDrop()
+                .concatMap(tick -> largeValueStore.deleteUnowned(Instant.now().minus(retention))
+                        .onErrorResume(ex -> {
+                            logger.error("Large value sweep failed. error={}", ex.getMessage(), ex);
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (schedule != null) {
+            schedule.dispose();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package ir.msob.manak.workflow.mongo;
+
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import ir.msob.jima.core.commons.logger.Logger;
+import ir.msob.jima.core.commons.logger.LoggerFactory;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Flags {@code find} queries that the server would answer with a collection scan.
+ * <p>
+ * Every distinct query shape (collection, filter fields and sort fields) on a watched collection is explained once,
+ * asynchronously on the bounded elastic scheduler, and a warning is logged when the winning plan contains a {@code COLLSCAN} stage.
+ * Values are never logged, only field names.
+ */
+public class CollscanDetector implements CommandListener {
+    private static final Logger logger = LoggerFactory.getLogger(CollscanDetector.class);
+    private static final String FIND = "find";
+    private static final List<String> EXPLAINED_FIELDS = List.of(FIND, "filter", "sort", "projection", "limit", "skip");
+
+    private final ObjectProvider<ReactiveMongoTemplate> reactiveMongoTemplate;
+    private final Set<String> collections;
+    private final Set<String> explainedShapes = ConcurrentHashMap.newKeySet();
+
+    public CollscanDetector(ObjectProvider<ReactiveMongoTemplate> reactiveMongoTemplate, Set<String> collections) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.collections = collections;
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        if (!FIND.equals(event.getCommandName())) {
+            return;
+        }
+        BsonDocument command = event.getCommand();
+        BsonValue collection = command.get(FIND);
+        if (collection == null || !collection.isString() || !collections.contains(collection.asString().getValue())) {
+            return;
+        }
+        BsonDocument filter = command.getDocument("filter", new BsonDocument());
+        if (filter.isEmpty()) {
+            return;
+        }
+        String shape = collection.asString().getValue() + " filter=" + new TreeSet<>(filter.keySet())
+                + " sort=" + command.getDocument("sort", new BsonDocument()).keySet();
+        if (!explainedShapes.add(shape)) {
+            return;
+        }
+
+        // the event command is only valid during the callback
+        BsonDocument copy = command.clone();
+        BsonDocument find = new BsonDocument();
+        EXPLAINED_FIELDS.stream()
+                .filter(copy::containsKey)
+                .forEach(field -> find.put(field, copy.get(field)));
+        String database = event.getDatabaseName();
+        // the listener runs on the driver's thread; the explain is sent from elsewhere so it never holds it up
+        Mono.defer(() -> reactiveMongoTemplate.getObject()
+                        .getMongoDatabaseFactory()
+                        .getMongoDatabase(database))
+                .flatMap(db -> Mono.from(db.runCommand(
+                        new BsonDocument("explain", find).append("verbosity", new BsonString("queryPlanner")))))
+                .subscribeOn(Schedulers.boundedElastic())
+                .publishOn(Schedulers.boundedElastic())
+                .subscribe(
+                        explain -> {
+                            if (containsCollscan(explain.get("queryPlanner", Document.class))) {
+                                logger.warn("Query would scan the whole collection, add an index. {}", shape);
+                            }
+                        },
+                        ex -> logger.debug("Failed to explain query. {} error={}", shape, ex.getMessage()));
+    }
+
+    private static boolean containsCollscan(Object node) {
+        if (node instanceof Map<?, ?> map) {
+            if ("COLLSCAN".equals(map.get("stage"))) {
+                return true;
+            }
+            return map.values().stream().anyMatch(CollscanDetector::containsCollscan);
+        }
+        if (node instanceof List<?> list) {
+            return list.stream().anyMatch(CollscanDetector::containsCollscan);
+        }
+        return false;
+    }
+}
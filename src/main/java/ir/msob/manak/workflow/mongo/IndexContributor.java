@@ -0,0 +1,11 @@
+package ir.msob.manak.workflow.mongo;
+
+import java.util.Collection;
+
+/**
+ * Implemented by repositories to declare the indexes their queries need.
+ * All contributions are ensured at startup by {@link MongoIndexManager}.
+ */
+public interface IndexContributor {
+    Collection<ManagedIndex> getIndexes();
+}
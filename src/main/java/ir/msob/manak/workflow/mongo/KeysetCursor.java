@@ -0,0 +1,79 @@
+package ir.msob.manak.workflow.mongo;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.web.server.ServerWebInputException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Position of a keyset page: the sort key and id of the last item already returned. Clients only see it as an
+ * opaque continuation token ({@link #encode()}); the next page is read with a range condition on an indexed
+ * sort key instead of skipping, so every page costs the same.
+ */
+@Getter
+@RequiredArgsConstructor
+public class KeysetCursor {
+    private static final String SEPARATOR = "|";
+
+    /**
+     * Sort key of the last item, null when paging by id only.
+     */
+    private final Instant sortValue;
+    private final String id;
+
+    public String encode() {
+        String raw = (sortValue == null ? "" : sortValue.toString()) + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return null for a missing token (first page)
+     * @throws ServerWebInputException when the token was not produced by {@link #encode()}
+     */
+    public static KeysetCursor decode(String token) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(SEPARATOR);
+            if (separator < 0 || separator == raw.length() - 1) {
+                throw new ServerWebInputException("Invalid page token");
+            }
+            String sortValue = raw.substring(0, separator);
+            return new KeysetCursor(sortValue.isEmpty() ? null : Instant.parse(sortValue), raw.substring(separator + 1));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new ServerWebInputException("Invalid page token");
+        }
+    }
+
+    /**
+     * Items after this cursor in {@code sortField} descending, {@code idField} descending order.
+     * Items without a sort key come last in that order, so they stay reachable once the dated items are exhausted.
+     */
+    public Criteria descendingAfter(String sortField, String idField) {
+        if (sortValue == null) {
+            return new Criteria().andOperator(
+                    Criteria.where(sortField).is(null),
+                    Criteria.where(idField).lt(id));
+        }
+        return new Criteria().orOperator(
+                Criteria.where(sortField).lt(sortValue),
+                Criteria.where(sortField).is(null),
+                new Criteria().andOperator(
+                        Criteria.where(sortField).is(sortValue),
+                        Criteria.where(idField).lt(id)));
+    }
+
+    /**
+     * Items after this cursor in {@code idField} ascending order.
+     */
+    public Criteria ascendingAfter(String idField) {
+        return Criteria.where(idField).gt(id);
+    }
+}
@@ -0,0 +1,37 @@
+package ir.msob.manak.workflow.mongo;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * One page of a keyset-paginated listing. {@code nextToken} is null on the last page.
+ */
+@Getter
+@RequiredArgsConstructor
+public class KeysetPage<T> {
+    public static final int MAX_SIZE = 500;
+
+    private final List<T> content;
+    private final String nextToken;
+
+    /**
+     * Clamp a requested page size into {@code [1, MAX_SIZE]}.
+     */
+    public static int size(int requested) {
+        return Math.max(1, Math.min(requested, MAX_SIZE));
+    }
+
+    /**
+     * Build a page from {@code size + 1} fetched items: the extra item only tells that another page exists.
+     */
+    public static <T> KeysetPage<T> of(List<T> fetched, int size, Function<T, KeysetCursor> cursorOf) {
+        if (fetched.size() <= size) {
+            return new KeysetPage<>(fetched, null);
+        }
+        List<T> content = fetched.subList(0, size);
+        return new KeysetPage<>(content, cursorOf.apply(content.get(size - 1)).encode());
+    }
+}
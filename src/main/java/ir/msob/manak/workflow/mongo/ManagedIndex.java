@@ -0,0 +1,24 @@
+package ir.msob.manak.workflow.mongo;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+
+/**
+ * An index the service relies on, declared next to the repository that issues the matching queries.
+ */
+@Getter
+@AllArgsConstructor
+public class ManagedIndex {
+    private final Class<?> entityClass;
+    /**
+     * Collection to build the index on when it is not the one the entity is mapped to (e.g. its archive);
+     * null for the mapped collection.
+     */
+    private final String collectionName;
+    private final IndexDefinition definition;
+
+    public ManagedIndex(Class<?> entityClass, IndexDefinition definition) {
+        this(entityClass, null, definition);
+    }
+}
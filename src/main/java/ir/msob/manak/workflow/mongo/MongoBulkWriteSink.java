@@ -0,0 +1,198 @@
+package ir.msob.manak.workflow.mongo;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.WriteModel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import ir.msob.jima.core.commons.logger.Logger;
+import ir.msob.jima.core.commons.logger.LoggerFactory;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * Batches small fire-and-acknowledge writes (history appends, status updates) from all workers.
+ * <p>
+ * Writes are gathered for up to {@code window} or {@code max-operations} operations, grouped per collection and
+ * sent as one unordered {@code bulkWrite} each. Every caller's {@link Mono} completes when its own operation is
+ * acknowledged, or fails with its own write error. Writes must already be in stored form (mapped field names and ids).
+ * At most {@code max-queued} writes wait for a flush; further writes fail right away and are counted as
+ * {@code manak.mongo.bulk-write.rejected}. A failed batch only fails its own callers, the pipeline keeps running.
+ * When disabled, each write is sent on its own.
+ */
+@Component
+public class MongoBulkWriteSink {
+    private static final Logger logger = LoggerFactory.getLogger(MongoBulkWriteSink.class);
+    private static final BulkWriteOptions UNORDERED = new BulkWriteOptions().ordered(false);
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final boolean enabled;
+    private final int maxQueued;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Counter rejected;
+    private final FluxSink<PendingWrite> pendingWrites;
+
+    public MongoBulkWriteSink(ReactiveMongoTemplate reactiveMongoTemplate,
+                              MeterRegistry meterRegistry,
+                              @Value("${manak.mongo.bulk-write.enabled:true}") boolean enabled,
+                              @Value("${manak.mongo.bulk-write.window:5ms}") Duration window,
+                              @Value("${manak.mongo.bulk-write.max-operations:500}") int maxOperations,
+                              @Value("${manak.mongo.bulk-write.max-in-flight:4}") int maxInFlight,
+                              @Value("${manak.mongo.bulk-write.max-queued:10000}") int maxQueued) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.enabled = enabled;
+        this.maxQueued = maxQueued;
+        this.rejected = Counter.builder("manak.mongo.bulk-write.rejected")
+                .description("Writes rejected because max-queued writes were already waiting for a flush")
+                .register(meterRegistry);
+        AtomicReference<FluxSink<PendingWrite>> sink = new AtomicReference<>();
+        // Flux.create hands out its (thread-safe) sink synchronously on subscribe
+        Flux.<PendingWrite>create(sink::set)
+                // fair backpressure: batches wait for flush demand instead of overflowing
+                .bufferTimeout(maxOperations, window, true)
+                .flatMap(this::flush, maxInFlight)
+                // writes dropped by an operator (e.g. on shutdown) must not leave their callers waiting
+                .doOnDiscard(PendingWrite.class, write -> write.fail(new IllegalStateException("Bulk write discarded")))
+                .subscribe(null, ex -> logger.error("Bulk write pipeline terminated. error={}", ex.getMessage(), ex));
+        this.pendingWrites = sink.get();
+    }
+
+    /**
+     * Queue a write against the collection and complete once it is acknowledged.
+     */
+    public Mono<Void> write(String collectionName, WriteModel<Document> write) {
+        if (!enabled) {
+            return reactiveMongoTemplate.getCollection(collectionName)
+                    .flatMap(collection -> Mono.from(collection.bulkWrite(List.of(write))))
+                    .then();
+        }
+        return Mono.defer(() -> {
+            if (queued.incrementAndGet() > maxQueued) {
+                queued.decrementAndGet();
+                rejected.increment();
+                logger.warn("Bulk write rejected, queue is full. collection={} maxQueued={}", collectionName, maxQueued);
+                return Mono.error(new IllegalStateException("Bulk write queue is full. collection=" + collectionName));
+            }
+            PendingWrite pending = new PendingWrite(collectionName, write);
+            pendingWrites.next(pending);
+            return pending.acknowledged.asMono();
+        });
+    }
+
+    /**
+     * Never fails: every write of the batch is acknowledged or failed, so the pipeline stays subscribed.
+     */
+    private Mono<Void> flush(List<PendingWrite> batch) {
+        return Mono.defer(() -> {
+                    Map<String, List<PendingWrite>> byCollection = batch.stream()
+                            .collect(Collectors.groupingBy(PendingWrite::collectionName));
+                    return Flux.fromIterable(byCollection.entrySet())
+                            .flatMap(entry -> flush(entry.getKey(), entry.getValue()))
+                            .then();
+                })
+                .onErrorResume(ex -> {
+                    logger.error("Bulk write batch failed. operations={} error={}", batch.size(), ex.getMessage(), ex);
+                    batch.forEach(write -> write.fail(ex));
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<Void> flush(String collectionName, List<PendingWrite> writes) {
+        List<WriteModel<Document>> models = writes.stream().map(PendingWrite::write).toList();
+        return reactiveMongoTemplate.getCollection(collectionName)
+                .flatMap(collection -> Mono.from(collection.bulkWrite(models, UNORDERED)))
+                .doOnNext(result -> {
+                    logger.debug("Bulk write flushed. collection={} operations={}", collectionName, writes.size());
+                    writes.forEach(PendingWrite::acknowledge);
+                })
+                .onErrorResume(ex -> {
+                    fail(collectionName, writes, ex);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    /**
+     * With an unordered bulk write the operations without a write error were applied; fail only the others.
+     */
+    private static void fail(String collectionName, List<PendingWrite> writes, Throwable ex) {
+        if (ex instanceof MongoBulkWriteException bulkWriteException && bulkWriteException.getWriteConcernError() == null) {
+            Map<Integer, BulkWriteError> errors = bulkWriteException.getWriteErrors().stream()
+                    .collect(Collectors.toMap(BulkWriteError::getIndex, error -> error, (a, b) -> a));
+            logger.warn("Bulk write partially failed. collection={} failed={}/{}", collectionName, errors.size(), writes.size());
+            for (int i = 0; i < writes.size(); i++) {
+                BulkWriteError error = errors.get(i);
+                if (error == null) {
+                    writes.get(i).acknowledge();
+                } else {
+                    writes.get(i).fail(new IllegalStateException(
+                            "Bulk write operation failed. collection=" + collectionName + " error=" + error.getMessage()));
+                }
+            }
+            return;
+        }
+        logger.error("Bulk write failed. collection={} operations={} error={}", collectionName, writes.size(), ex.getMessage());
+        writes.forEach(write -> write.fail(ex));
+    }
+
+    /**
+     * Flush what is still buffered before the application context goes away.
+     */
+    @PreDestroy
+    public void shutdown() {
+        pendingWrites.complete();
+    }
+
+    /**
+     * A queued write; it leaves the queue once, when it is acknowledged or failed.
+     */
+    private class PendingWrite {
+        private final String collectionName;
+        private final WriteModel<Document> write;
+        private final Sinks.Empty<Void> acknowledged = Sinks.empty();
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        private PendingWrite(String collectionName, WriteModel<Document> write) {
+            this.collectionName = collectionName;
+            this.write = write;
+        }
+
+        String collectionName() {
+            return collectionName;
+        }
+
+        WriteModel<Document> write() {
+            return write;
+        }
+
+        void acknowledge() {
+            if (done.compareAndSet(false, true)) {
+                queued.decrementAndGet();
+                acknowledged.tryEmitEmpty();
+            }
+        }
+
+        void fail(Throwable error) {
+            if (done.compareAndSet(false, true)) {
+                queued.decrementAndGet();
+                acknowledged.tryEmitError(error);
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package ir.msob.manak.workflow.mongo;
+
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Moves documents between collections in stored form, going straight to the driver so no load or save events
+ * re-encode them.
+ * <p>
+ * The matching documents are moved {@code batchSize} at a time: each batch is upserted into the target by id and,
+ * once that succeeded, deleted from the source by the same ids. A document written to the source during the move is
+ * either moved or left in place, never deleted uncopied, and an interrupted move can simply be run again. Deleting
+ * from a time-series collection by id requires MongoDB 7.0.
+ */
+@Component
+@RequiredArgsConstructor
+public class MongoDocumentMover {
+    private static final String ID_FIELD = "_id";
+    private static final ReplaceOptions UPSERT = new ReplaceOptions().upsert(true);
+    private static final BulkWriteOptions UNORDERED = new BulkWriteOptions().ordered(false);
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    /**
+     * @return number of documents moved
+     */
+    public Mono<Long> move(String sourceCollection, String targetCollection, Bson filter, int batchSize) {
+        return Mono.zip(reactiveMongoTemplate.getCollection(sourceCollection), reactiveMongoTemplate.getCollection(targetCollection))
+                .flatMap(collections -> Flux.from(collections.getT1().find(filter).batchSize(batchSize))
+                        .buffer(batchSize)
+                        .concatMap(batch -> moveBatch(collections.getT1(), collections.getT2(), batch))
+                        .reduce(0L, Long::sum));
+    }
+
+    private static Mono<Long> moveBatch(MongoCollection<Document> source, MongoCollection<Document> target, List<Document> batch) {
+        List<Object> ids = batch.stream().map(document -> document.get(ID_FIELD)).toList();
+        List<ReplaceOneModel<Document>> upserts = batch.stream()
+                .map(document -> new ReplaceOneModel<>(Filters.eq(ID_FIELD, document.get(ID_FIELD)), document, UPSERT))
+                .toList();
+        return Mono.from(target.bulkWrite(upserts, UNORDERED))
+                .then(Mono.from(source.deleteMany(Filters.in(ID_FIELD, ids))))
+                .thenReturn((long) batch.size());
+    }
+}
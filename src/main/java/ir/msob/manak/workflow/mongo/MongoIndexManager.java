@@ -0,0 +1,98 @@
+package ir.msob.manak.workflow.mongo;
+
+import ir.msob.jima.core.commons.logger.Logger;
+import ir.msob.jima.core.commons.logger.LoggerFactory;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.ReactiveIndexOperations;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ensures every {@link ManagedIndex} declared by an {@link IndexContributor} at startup.
+ * <p>
+ * Missing collections are created from the entity mapping first, so collection options such as time-series
+ * are applied before an index build would create the collection implicitly; collections named explicitly by an
+ * index (archives) are plain collections the build creates. Indexes are built one at a time
+ * and progress is logged per index; existing indexes with the same definition are a no-op.
+ * <p>
+ * Runs as an {@link ApplicationRunner}, so the readiness probe only reports the application ready once the indexes
+ * exist. Startup fails when they are not ensured within {@code manak.mongo.indexes.timeout}.
+ */
+@Component
+@RequiredArgsConstructor
+public class MongoIndexManager implements ApplicationRunner {
+    private static final Logger logger = LoggerFactory.getLogger(MongoIndexManager.class);
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final List<IndexContributor> contributors;
+
+    @Value("${manak.mongo.indexes.timeout:10m}")
+    private Duration timeout;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        ensureIndexes().block(timeout);
+    }
+
+    public Mono<Void> ensureIndexes() {
+        List<ManagedIndex> indexes = contributors.stream()
+                .map(IndexContributor::getIndexes)
+                .flatMap(Collection::stream)
+                .toList();
+        AtomicInteger done = new AtomicInteger();
+        long started = System.currentTimeMillis();
+
+        return Flux.fromIterable(indexes)
+                .filter(index -> index.getCollectionName() == null)
+                .map(ManagedIndex::getEntityClass)
+                .distinct()
+                .concatMap(this::ensureCollection)
+                .thenMany(Flux.fromIterable(indexes))
+                .concatMap(index -> ensureIndex(index, done.incrementAndGet(), indexes.size()))
+                .then()
+                .doOnError(ex -> logger.error("Failed to ensure mongo indexes. error={}", ex.getMessage(), ex))
+                .doOnSuccess(v -> logger.info("Mongo indexes ensured. count={} took={}ms",
+                        indexes.size(), System.currentTimeMillis() - started));
+    }
+
+    private Mono<Void> ensureCollection(Class<?> entityClass) {
+        return reactiveMongoTemplate.collectionExists(entityClass)
+                .flatMap(exists -> exists
+                        ? Mono.empty()
+                        : reactiveMongoTemplate.createCollection(entityClass)
+                        .doOnNext(c -> logger.info("Mongo collection created. collection={}",
+                                reactiveMongoTemplate.getCollectionName(entityClass)))
+                        .then());
+    }
+
+    private Mono<String> ensureIndex(ManagedIndex index, int position, int total) {
+        String collection = index.getCollectionName() != null
+                ? index.getCollectionName()
+                : reactiveMongoTemplate.getCollectionName(index.getEntityClass());
+        long started = System.currentTimeMillis();
+        logger.info("Ensuring mongo index [{}/{}]. collection={} keys={}",
+                position, total, collection, index.getDefinition().getIndexKeys().toJson());
+        ReactiveIndexOperations indexOps = index.getCollectionName() != null
+                ? reactiveMongoTemplate.indexOps(collection)
+                : reactiveMongoTemplate.indexOps(index.getEntityClass());
+        return indexOps.ensureIndex(index.getDefinition())
+                .doOnNext(name -> logger.info("Mongo index ensured [{}/{}]. collection={} index={} took={}ms",
+                        position, total, collection, name, System.currentTimeMillis() - started))
+                // one failing index (e.g. conflicting options) must not stop the others
+                .onErrorResume(ex -> {
+                    logger.error("Failed to ensure mongo index [{}/{}]. collection={} error={}",
+                            position, total, collection, ex.getMessage(), ex);
+                    return Mono.empty();
+                });
+    }
+}
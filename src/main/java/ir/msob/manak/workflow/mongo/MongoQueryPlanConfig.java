@@ -0,0 +1,35 @@
+package ir.msob.manak.workflow.mongo;
+
+import ir.msob.manak.domain.model.workflow.stage.Stage;
+import ir.msob.manak.domain.model.workflow.workflow.Workflow;
+import ir.msob.manak.domain.model.workflow.workflowspecification.WorkflowSpecification;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Registers the {@link CollscanDetector} on the mongo client when
+ * {@code manak.mongo.collscan-detection.enabled} is set. Meant for development and staging; each new query
+ * shape costs one extra explain round trip.
+ */
+@Configuration
+@ConditionalOnProperty(name = "manak.mongo.collscan-detection.enabled", havingValue = "true")
+public class MongoQueryPlanConfig {
+
+    @Bean
+    public MongoClientSettingsBuilderCustomizer collscanDetectorCustomizer(ObjectProvider<ReactiveMongoTemplate> reactiveMongoTemplate,
+                                                                          MongoMappingContext mappingContext) {
+        Set<String> collections = Stream.of(Workflow.class, WorkflowSpecification.class, Stage.class)
+                .map(type -> mappingContext.getRequiredPersistentEntity(type).getCollection())
+                .collect(Collectors.toSet());
+        return builder -> builder.addCommandListener(new CollscanDetector(reactiveMongoTemplate, collections));
+    }
+}
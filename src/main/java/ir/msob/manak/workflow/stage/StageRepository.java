@@ -3,13 +3,47 @@ package ir.msob.manak.workflow.stage;
 import ir.msob.jima.core.ral.mongo.commons.query.MongoQueryBuilder;
 import ir.msob.manak.core.service.jima.crud.base.domain.DomainCrudRepository;
 import ir.msob.manak.domain.model.workflow.stage.Stage;
+import ir.msob.manak.workflow.mongo.IndexContributor;
+import ir.msob.manak.workflow.mongo.KeysetCursor;
+import ir.msob.manak.workflow.mongo.ManagedIndex;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+import java.util.Collection;
+import java.util.List;
 
 @Repository
-public class StageRepository extends DomainCrudRepository<Stage> {
+public class StageRepository extends DomainCrudRepository<Stage> implements IndexContributor {
+    private static final String ID_FIELD = "id";
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
     protected StageRepository(MongoQueryBuilder queryBuilder, ReactiveMongoTemplate reactiveMongoTemplate) {
         super(queryBuilder, reactiveMongoTemplate);
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
     }
-}
 
+    @Override
+    public Collection<ManagedIndex> getIndexes() {
+        return List.of(
+                new ManagedIndex(Stage.class, new Index().on(Stage.FN.name, Sort.Direction.ASC)),
+                new ManagedIndex(Stage.class, new Index().on(Stage.FN.key, Sort.Direction.ASC)));
+    }
+
+    /**
+     * Read the stages after {@code after} (from the first when null) in id order, using the {@code _id} index.
+     */
+    public Flux<Stage> findPageAfter(KeysetCursor after, int limit) {
+        Query query = new Query()
+                .with(Sort.by(Sort.Direction.ASC, ID_FIELD))
+                .limit(limit);
+        if (after != null) {
+            query.addCriteria(after.ascendingAfter(ID_FIELD));
+        }
+        return reactiveMongoTemplate.find(query, Stage.class);
+    }
+}
@@ -11,6 +11,8 @@ import ir.msob.manak.core.service.jima.service.IdService;
 import ir.msob.manak.domain.model.workflow.stage.Stage;
 import ir.msob.manak.domain.model.workflow.stage.StageCriteria;
 import ir.msob.manak.domain.model.workflow.stage.StageDto;
+import ir.msob.manak.workflow.mongo.KeysetCursor;
+import ir.msob.manak.workflow.mongo.KeysetPage;
 import jakarta.validation.Valid;
 import org.modelmapper.ModelMapper;
 import org.springframework.stereotype.Service;
@@ -24,11 +26,13 @@ import java.util.Collections;
 public class StageService extends DomainCrudService<Stage, StageDto, StageCriteria, StageRepository>
         implements ChildDomainCrudService<StageDto> {
 
+    private final StageRepository stageRepository;
     private final ModelMapper modelMapper;
     private final IdService idService;
 
     protected StageService(BeforeAfterComponent beforeAfterComponent, ObjectMapper objectMapper, StageRepository repository, ModelMapper modelMapper, IdService idService) {
         super(beforeAfterComponent, objectMapper, repository);
+        this.stageRepository = repository;
         this.modelMapper = modelMapper;
         this.idService = idService;
     }
@@ -60,6 +64,16 @@ public class StageService extends DomainCrudService<Stage, StageDto, StageCriter
         return super.update(id, dto, user);
     }
 
+    /**
+     * Keyset page of stages in id order.
+     */
+    public Mono<KeysetPage<StageDto>> getKeysetPage(KeysetCursor after, int size, User user) {
+        return stageRepository.findPageAfter(after, size + 1)
+                .map(domain -> toDto(domain, user))
+                .collectList()
+                .map(dtos -> KeysetPage.of(dtos, size, last -> new KeysetCursor(null, last.getId())));
+    }
+
     @Override
     public BaseIdService getIdService() {
         return idService;
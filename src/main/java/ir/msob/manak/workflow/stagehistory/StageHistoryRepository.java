@@ -0,0 +1,159 @@
+package ir.msob.manak.workflow.stagehistory;
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.result.UpdateResult;
+import ir.msob.manak.domain.model.workflow.workflow.Workflow;
+import ir.msob.manak.workflow.compression.ContextCompressionCodec;
+import ir.msob.manak.workflow.mongo.IndexContributor;
+import ir.msob.manak.workflow.mongo.ManagedIndex;
+import ir.msob.manak.workflow.mongo.MongoBulkWriteSink;
+import ir.msob.manak.workflow.mongo.MongoDocumentMover;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Targeted reads and writes of single stage histories, keyed by workflowId/cycleId/stageHistoryId.
+ * <p>
+ * The stage histories of archived workflows are moved to {@link #ARCHIVE_COLLECTION_NAME}; reads fall through to it.
+ */
+@Repository
+public class StageHistoryRepository implements IndexContributor {
+    public static final String ARCHIVE_COLLECTION_NAME = WorkflowStageHistory.COLLECTION_NAME + "Archive";
+    private static final String STAGE_HISTORY_PREFIX = WorkflowStageHistory.FN.stageHistory + ".";
+    private static final String STAGE_OUTPUT = "stageOutput";
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final MongoBulkWriteSink bulkWriteSink;
+    private final ContextCompressionCodec compressionCodec;
+    private final MongoDocumentMover documentMover;
+
+    public StageHistoryRepository(ReactiveMongoTemplate reactiveMongoTemplate, MongoBulkWriteSink bulkWriteSink, ContextCompressionCodec compressionCodec, MongoDocumentMover documentMover) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.bulkWriteSink = bulkWriteSink;
+        this.compressionCodec = compressionCodec;
+        this.documentMover = documentMover;
+    }
+
+    /**
+     * Insert through the {@link MongoBulkWriteSink}, batched with the history writes of other jobs.
+     */
+    public Mono<Workflow.StageHistory> insert(String workflowId, String cycleId, Workflow.StageHistory stageHistory) {
+        WorkflowStageHistory document = WorkflowStageHistory.builder()
+                .workflowId(workflowId)
+                .cycleId(cycleId)
+                .stageHistoryId(stageHistory.getId())
+                .stageHistory(stageHistory)
+                .build();
+        Document stored = new Document();
+        reactiveMongoTemplate.getConverter().write(document, stored);
+        compressionCodec.compress(stored);
+        return bulkWriteSink.write(WorkflowStageHistory.COLLECTION_NAME, new InsertOneModel<>(stored))
+                .thenReturn(stageHistory);
+    }
+
+    public Mono<Workflow.StageHistory> findOne(String workflowId, String cycleId, String stageHistoryId) {
+        Query query = keyQuery(workflowId, cycleId, stageHistoryId);
+        return reactiveMongoTemplate.findOne(query, WorkflowStageHistory.class)
+                .switchIfEmpty(Mono.defer(() -> reactiveMongoTemplate.findOne(query, WorkflowStageHistory.class, ARCHIVE_COLLECTION_NAME)))
+                .map(WorkflowStageHistory::getStageHistory);
+    }
+
+    public Flux<Workflow.StageHistory> findByCycle(String workflowId, String cycleId) {
+        Query query = Query.query(Criteria.where(WorkflowStageHistory.FN.workflowId).is(workflowId)
+                        .and(WorkflowStageHistory.FN.cycleId).is(cycleId))
+                .with(Sort.by(STAGE_HISTORY_PREFIX + "startedAt"));
+        return reactiveMongoTemplate.find(query, WorkflowStageHistory.class)
+                .switchIfEmpty(Flux.defer(() -> reactiveMongoTemplate.find(query, WorkflowStageHistory.class, ARCHIVE_COLLECTION_NAME)))
+                .map(WorkflowStageHistory::getStageHistory);
+    }
+
+    /**
+     * The stage histories of a workflow in stored form (decompressed on load), from both the hot and the archive
+     * collection.
+     */
+    public Flux<Document> findDocuments(String workflowId) {
+        Query query = Query.query(Criteria.where(WorkflowStageHistory.FN.workflowId).is(workflowId));
+        return Flux.concat(reactiveMongoTemplate.find(query, Document.class, WorkflowStageHistory.COLLECTION_NAME),
+                reactiveMongoTemplate.find(query, Document.class, ARCHIVE_COLLECTION_NAME));
+    }
+
+    /**
+     * Move the stage histories of a workflow to {@link #ARCHIVE_COLLECTION_NAME}, unchanged (still compressed).
+     * Only for workflows that no longer run.
+     *
+     * @return number of moved stage histories
+     */
+    public Mono<Long> archive(String workflowId, int batchSize) {
+        return documentMover.move(WorkflowStageHistory.COLLECTION_NAME, ARCHIVE_COLLECTION_NAME,
+                Filters.eq(WorkflowStageHistory.FN.workflowId, workflowId), batchSize);
+    }
+
+    /**
+     * Record the outcome of a stage with a targeted {@code $set}.
+     *
+     * @return number of matched stage histories (0 when it does not exist in this collection)
+     */
+    public Mono<Long> complete(String workflowId,
+                               String cycleId,
+                               String stageHistoryId,
+                               Workflow.StageExecutionStatus executionStatus,
+                               String error,
+                               Map<String, Object> stageOutput,
+                               Instant endedAt) {
+        Update update = new Update()
+                .set(STAGE_HISTORY_PREFIX + "executionStatus", executionStatus)
+                .set(STAGE_HISTORY_PREFIX + "error", error)
+                .set(STAGE_HISTORY_PREFIX + STAGE_OUTPUT, compressedOutput(stageOutput))
+                .set(STAGE_HISTORY_PREFIX + "endedAt", endedAt);
+        return reactiveMongoTemplate.updateFirst(keyQuery(workflowId, cycleId, stageHistoryId), update, WorkflowStageHistory.class)
+                .map(UpdateResult::getMatchedCount);
+    }
+
+    @Override
+    public Collection<ManagedIndex> getIndexes() {
+        return List.of(
+                new ManagedIndex(WorkflowStageHistory.class, keyIndex()),
+                new ManagedIndex(WorkflowStageHistory.class, ARCHIVE_COLLECTION_NAME, keyIndex()));
+    }
+
+    private static Index keyIndex() {
+        return new Index()
+                .on(WorkflowStageHistory.FN.workflowId, Sort.Direction.ASC)
+                .on(WorkflowStageHistory.FN.cycleId, Sort.Direction.ASC)
+                .on(WorkflowStageHistory.FN.stageHistoryId, Sort.Direction.ASC)
+                .unique();
+    }
+
+    /**
+     * Stage output in stored form with the selected entries compressed; a targeted {@code $set} bypasses the
+     * template's save events.
+     */
+    private Object compressedOutput(Map<String, Object> stageOutput) {
+        if (stageOutput == null || !compressionCodec.isEnabled()) {
+            return stageOutput;
+        }
+        Document holder = new Document(STAGE_OUTPUT, reactiveMongoTemplate.getConverter().convertToMongoType(stageOutput));
+        compressionCodec.compress(holder);
+        return holder.get(STAGE_OUTPUT);
+    }
+
+    private static Query keyQuery(String workflowId, String cycleId, String stageHistoryId) {
+        return Query.query(Criteria.where(WorkflowStageHistory.FN.workflowId).is(workflowId)
+                .and(WorkflowStageHistory.FN.cycleId).is(cycleId)
+                .and(WorkflowStageHistory.FN.stageHistoryId).is(stageHistoryId));
+    }
+}
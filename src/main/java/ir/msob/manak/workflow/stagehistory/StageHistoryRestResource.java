@@ -0,0 +1,44 @@
+package ir.msob.manak.workflow.stagehistory;
+
+import ir.msob.manak.core.service.jima.security.UserService;
+import ir.msob.manak.domain.model.workflow.workflow.Workflow;
+import ir.msob.manak.workflow.workflow.WorkflowRestResource;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.security.Principal;
+import java.util.Optional;
+
+/**
+ * Read access to the stage histories of a workflow cycle, which are no longer embedded in the workflow document
+ * (legacy workflows that still embed them are served from the workflow).
+ */
+@RestController
+@RequestMapping(WorkflowRestResource.BASE_URI + "/{workflowId}/cycles/{cycleId}/stages-history")
+@RequiredArgsConstructor
+public class StageHistoryRestResource {
+
+    private final StageHistoryService stageHistoryService;
+    private final UserService userService;
+
+    @GetMapping
+    public Flux<Workflow.StageHistory> getStagesHistory(@PathVariable String workflowId, @PathVariable String cycleId,
+                                                        Principal principal) {
+        return Flux.defer(() -> stageHistoryService.getStagesHistory(workflowId, cycleId,
+                userService.getUser(Optional.ofNullable(principal))));
+    }
+
+    @GetMapping("/{stageHistoryId}")
+    public Mono<Workflow.StageHistory> getStageHistory(@PathVariable String workflowId,
+                                                       @PathVariable String cycleId,
+                                                       @PathVariable String stageHistoryId,
+                                                       Principal principal) {
+        return Mono.defer(() -> stageHistoryService.getStageHistory(workflowId, cycleId, stageHistoryId,
+                userService.getUser(Optional.ofNullable(principal))));
+    }
+}
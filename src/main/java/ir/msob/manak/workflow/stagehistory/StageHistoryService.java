@@ -0,0 +1,89 @@
+package ir.msob.manak.workflow.stagehistory;
+
+import ir.msob.manak.core.model.jima.security.User;
+import ir.msob.manak.domain.model.workflow.workflow.Workflow;
+import ir.msob.manak.workflow.worker.util.WorkflowUtil;
+import ir.msob.manak.workflow.workflow.WorkflowService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Stage histories of workflow cycles.
+ * <p>
+ * New stage histories live in the {@link WorkflowStageHistory} collection. Workflows started before it existed
+ * still carry them embedded in {@code Workflow.Cycle.stagesHistory}; reads fall back to the embedded copy.
+ */
+@Service
+@RequiredArgsConstructor
+public class StageHistoryService {
+
+    private final StageHistoryRepository repository;
+    private final WorkflowService workflowService;
+
+    public Mono<Workflow.StageHistory> save(String workflowId, String cycleId, Workflow.StageHistory stageHistory) {
+        return repository.insert(workflowId, cycleId, stageHistory);
+    }
+
+    /**
+     * Find a stage history, falling back to the copy embedded in the (already loaded) workflow.
+     *
+     * @return empty {@link Optional} when the stage history is in neither place
+     */
+    public Mono<Optional<Workflow.StageHistory>> findStageHistory(Workflow workflow, String cycleId, String stageHistoryId) {
+        return repository.findOne(workflow.getId(), cycleId, stageHistoryId)
+                .map(Optional::of)
+                .switchIfEmpty(Mono.fromSupplier(() -> findEmbedded(workflow, cycleId, stageHistoryId)));
+    }
+
+    private static Optional<Workflow.StageHistory> findEmbedded(Workflow workflow, String cycleId, String stageHistoryId) {
+        List<Workflow.StageHistory> embedded = WorkflowUtil.findCycle(workflow, cycleId).getStagesHistory();
+        return embedded == null
+                ? Optional.empty()
+                : embedded.stream().filter(stageHistory -> stageHistory.getId().equalsIgnoreCase(stageHistoryId)).findFirst();
+    }
+
+    /**
+     * Read a stage history, falling back to the copy embedded in the workflow as read by {@code user}.
+     */
+    public Mono<Workflow.StageHistory> getStageHistory(String workflowId, String cycleId, String stageHistoryId, User user) {
+        return repository.findOne(workflowId, cycleId, stageHistoryId)
+                .switchIfEmpty(Mono.defer(() -> workflowService.getOne(workflowId, user)
+                        .map(workflow -> WorkflowUtil.findStageHistory(workflow, cycleId, stageHistoryId))));
+    }
+
+    /**
+     * Read the stage histories of a cycle; a cycle with none in the collection is read from the workflow as read by
+     * {@code user}, where legacy workflows embed them.
+     */
+    public Flux<Workflow.StageHistory> getStagesHistory(String workflowId, String cycleId, User user) {
+        return repository.findByCycle(workflowId, cycleId)
+                .switchIfEmpty(Flux.defer(() -> workflowService.getOne(workflowId, user)
+                        .flatMapIterable(workflow -> {
+                            List<Workflow.StageHistory> embedded = WorkflowUtil.findCycle(workflow, cycleId).getStagesHistory();
+                            return embedded == null ? List.of() : embedded;
+                        })));
+    }
+
+    /**
+     * Record the outcome of a stage.
+     *
+     * @return true if the stage history was found in the stage history collection,
+     * false if it is a legacy embedded one the caller has to update inside the workflow
+     */
+    public Mono<Boolean> complete(String workflowId,
+                                  String cycleId,
+                                  String stageHistoryId,
+                                  Workflow.StageExecutionStatus executionStatus,
+                                  String error,
+                                  Map<String, Object> stageOutput) {
+        return repository.complete(workflowId, cycleId, stageHistoryId, executionStatus, error, stageOutput, Instant.now())
+                .map(matched -> matched > 0);
+    }
+}
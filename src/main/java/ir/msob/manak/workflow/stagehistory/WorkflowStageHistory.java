@@ -0,0 +1,29 @@
+package ir.msob.manak.workflow.stagehistory;
+
+import ir.msob.manak.domain.model.workflow.workflow.Workflow;
+import lombok.*;
+import lombok.experimental.FieldNameConstants;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * One stage execution of a workflow cycle, stored in its own collection instead of
+ * growing {@code Workflow.Cycle.stagesHistory} inside the workflow document.
+ */
+@Document(collection = WorkflowStageHistory.COLLECTION_NAME)
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldNameConstants(innerTypeName = "FN")
+public class WorkflowStageHistory {
+    public static final String COLLECTION_NAME = "WorkflowStageHistory";
+
+    @Id
+    private String id;
+    private String workflowId;
+    private String cycleId;
+    private String stageHistoryId;
+    private Workflow.StageHistory stageHistory;
+}
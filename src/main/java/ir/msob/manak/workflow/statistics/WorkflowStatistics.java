@@ -0,0 +1,46 @@
+package ir.msob.manak.workflow.statistics;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aggregated workflow figures for dashboards, computed server-side by {@link WorkflowStatisticsRepository}.
+ */
+@Getter
+@Builder
+public class WorkflowStatistics {
+    private final Instant generatedAt;
+    private final long total;
+    private final Map<String, Long> byStatus;
+    private final List<SpecificationStatistics> bySpecification;
+    private final List<StageStatistics> byStage;
+
+    @Getter
+    @Builder
+    public static class SpecificationStatistics {
+        private final String specificationId;
+        private final long total;
+        private final Map<String, Long> byStatus;
+        private final double averageCycles;
+    }
+
+    /**
+     * Executions of one stage in one execution status. Durations are in milliseconds over the executions
+     * that have ended, and null when none has.
+     */
+    @Getter
+    @Builder
+    public static class StageStatistics {
+        private final String stageKey;
+        private final String executionStatus;
+        private final long count;
+        private final Double averageDuration;
+        private final Double p50Duration;
+        private final Double p90Duration;
+        private final Double p99Duration;
+    }
+}
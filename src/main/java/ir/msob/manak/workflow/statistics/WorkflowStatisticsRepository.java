@@ -0,0 +1,94 @@
+package ir.msob.manak.workflow.statistics;
+
+import ir.msob.manak.domain.model.workflow.stage.Stage;
+import ir.msob.manak.domain.model.workflow.workflow.Workflow;
+import ir.msob.manak.workflow.stagehistory.StageHistoryRepository;
+import ir.msob.manak.workflow.stagehistory.WorkflowStageHistory;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+/**
+ * Aggregation pipelines behind {@link WorkflowStatistics}. Only the grouped rows leave the database;
+ * workflow and stage history documents are never sent to the service. Archived workflows are not counted; the stage
+ * histories of archived workflows are, except legacy ones embedded in a compressed archive copy.
+ */
+@Repository
+public class WorkflowStatisticsRepository {
+    static final String SPECIFICATION_ID = "specificationId";
+    static final String EXECUTION_STATUS = "executionStatus";
+    static final String STAGE_KEY = "stageKey";
+    static final String COUNT = "count";
+    static final String AVERAGE_CYCLES = "averageCycles";
+    static final String AVERAGE_DURATION = "averageDuration";
+    static final String PERCENTILES = "percentiles";
+    static final List<Double> PERCENTILE_RANKS = List.of(0.5, 0.9, 0.99);
+    private static final String DURATION = "duration";
+    private static final String STAGE_HISTORY = "$" + WorkflowStageHistory.FN.stageHistory + ".";
+    private static final String CYCLE = "$" + Workflow.FN.cycles;
+    private static final String EMBEDDED_STAGES_HISTORY = Workflow.FN.cycles + ".stagesHistory";
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    public WorkflowStatisticsRepository(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    /**
+     * One row per specification and execution status: {@code _id: {specificationId, executionStatus}},
+     * the workflow count and the average number of cycles.
+     */
+    public Flux<Document> countBySpecificationAndStatus() {
+        Document cycles = new Document("$size", new Document("$ifNull", List.of("$" + Workflow.FN.cycles, List.of())));
+        List<Document> pipeline = List.of(
+                new Document("$group", new Document("_id", new Document()
+                        .append(SPECIFICATION_ID, "$" + Workflow.FN.specification + "._id")
+                        .append(EXECUTION_STATUS, "$" + Workflow.FN.executionStatus))
+                        .append(COUNT, new Document("$sum", 1))
+                        .append(AVERAGE_CYCLES, new Document("$avg", cycles))));
+        return aggregate(reactiveMongoTemplate.getCollectionName(Workflow.class), pipeline);
+    }
+
+    /**
+     * One row per stage key and stage execution status: {@code _id: {stageKey, executionStatus}}, the execution
+     * count, the average duration and the {@link #PERCENTILE_RANKS} percentiles of the duration in milliseconds.
+     * Executions that have not ended have no duration and are ignored by the accumulators.
+     * <p>
+     * Covers the stage history collection, its archive and the stage histories still embedded in legacy workflows of
+     * the hot collection, reshaped to the {@link WorkflowStageHistory} form. {@code $percentile} requires MongoDB 7.0.
+     */
+    public Flux<Document> stageDurations() {
+        Document duration = new Document("$subtract", List.of(STAGE_HISTORY + "endedAt", STAGE_HISTORY + "startedAt"));
+        List<Document> embedded = List.of(
+                new Document("$match", new Document(EMBEDDED_STAGES_HISTORY + ".0", new Document("$exists", true))),
+                new Document("$unwind", CYCLE),
+                new Document("$unwind", "$" + EMBEDDED_STAGES_HISTORY),
+                new Document("$project", new Document(WorkflowStageHistory.FN.stageHistory, "$" + EMBEDDED_STAGES_HISTORY)));
+        List<Document> pipeline = List.of(
+                new Document("$unionWith", StageHistoryRepository.ARCHIVE_COLLECTION_NAME),
+                new Document("$unionWith", new Document("coll", reactiveMongoTemplate.getCollectionName(Workflow.class))
+                        .append("pipeline", embedded)),
+                new Document("$project", new Document()
+                        .append(STAGE_KEY, STAGE_HISTORY + "stage." + Stage.FN.key)
+                        .append(EXECUTION_STATUS, STAGE_HISTORY + "executionStatus")
+                        .append(DURATION, duration)),
+                new Document("$group", new Document("_id", new Document()
+                        .append(STAGE_KEY, "$" + STAGE_KEY)
+                        .append(EXECUTION_STATUS, "$" + EXECUTION_STATUS))
+                        .append(COUNT, new Document("$sum", 1))
+                        .append(AVERAGE_DURATION, new Document("$avg", "$" + DURATION))
+                        .append(PERCENTILES, new Document("$percentile", new Document()
+                                .append("input", "$" + DURATION)
+                                .append("p", PERCENTILE_RANKS)
+                                .append("method", "approximate")))));
+        return aggregate(WorkflowStageHistory.COLLECTION_NAME, pipeline);
+    }
+
+    private Flux<Document> aggregate(String collectionName, List<Document> pipeline) {
+        return reactiveMongoTemplate.getCollection(collectionName)
+                .flatMapMany(collection -> collection.aggregate(pipeline).allowDiskUse(true));
+    }
+}
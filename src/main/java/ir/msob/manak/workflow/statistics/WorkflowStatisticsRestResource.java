@@ -0,0 +1,29 @@
+package ir.msob.manak.workflow.statistics;
+
+import ir.msob.manak.core.service.jima.security.UserService;
+import ir.msob.manak.workflow.workflow.WorkflowRestResource;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.security.Principal;
+import java.util.Optional;
+
+/**
+ * Workflow counts per status and specification and stage duration percentiles, aggregated in the database.
+ */
+@RestController
+@RequestMapping(WorkflowRestResource.BASE_URI + "/statistics")
+@RequiredArgsConstructor
+public class WorkflowStatisticsRestResource {
+
+    private final WorkflowStatisticsService statisticsService;
+    private final UserService userService;
+
+    @GetMapping
+    public Mono<WorkflowStatistics> getStatistics(Principal principal) {
+        return Mono.defer(() -> statisticsService.getStatistics(userService.getUser(Optional.ofNullable(principal))));
+    }
+}
@@ -0,0 +1,125 @@
+package ir.msob.manak.workflow.statistics;
+
+import ir.msob.manak.core.model.jima.security.User;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Builds {@link WorkflowStatistics} from the aggregation rows and keeps the result for a short TTL, so concurrent
+ * dashboards share one computation. Failures are not cached. The figures span all workflows, so they are only
+ * served to callers with the {@code manak.workflow.statistics.role} role.
+ */
+@Service
+public class WorkflowStatisticsService {
+    private static final String UNKNOWN = "UNKNOWN";
+
+    private final WorkflowStatisticsRepository repository;
+    private final Mono<WorkflowStatistics> cached;
+    private final String role;
+
+    public WorkflowStatisticsService(WorkflowStatisticsRepository repository,
+                                     @Value("${manak.workflow.statistics.ttl:60s}") Duration ttl,
+                                     @Value("${manak.workflow.statistics.role:ADMIN}") String role) {
+        this.repository = repository;
+        this.role = role;
+        this.cached = Mono.defer(this::compute)
+                .cache(statistics -> ttl, error -> Duration.ZERO, () -> Duration.ZERO);
+    }
+
+    public Mono<WorkflowStatistics> getStatistics(User user) {
+        if (user == null || user.getRoles() == null || !user.getRoles().contains(role)) {
+            return Mono.error(new AccessDeniedException("Workflow statistics require the " + role + " role"));
+        }
+        return cached;
+    }
+
+    private Mono<WorkflowStatistics> compute() {
+        return Mono.zip(
+                        repository.countBySpecificationAndStatus().collectList(),
+                        repository.stageDurations().map(this::toStageStatistics).collectList())
+                .map(tuple -> toStatistics(tuple.getT1(), tuple.getT2()));
+    }
+
+    private WorkflowStatistics toStatistics(List<Document> specificationRows, List<WorkflowStatistics.StageStatistics> byStage) {
+        Map<String, Long> byStatus = new TreeMap<>();
+        Map<String, List<Document>> rowsBySpecification = new TreeMap<>();
+        long total = 0;
+        for (Document row : specificationRows) {
+            Document key = row.get("_id", Document.class);
+            long count = count(row);
+            total += count;
+            byStatus.merge(string(key.get(WorkflowStatisticsRepository.EXECUTION_STATUS)), count, Long::sum);
+            rowsBySpecification.computeIfAbsent(string(key.get(WorkflowStatisticsRepository.SPECIFICATION_ID)), k -> new ArrayList<>())
+                    .add(row);
+        }
+
+        List<WorkflowStatistics.SpecificationStatistics> bySpecification = new ArrayList<>();
+        rowsBySpecification.forEach((specificationId, rows) -> bySpecification.add(toSpecificationStatistics(specificationId, rows)));
+
+        byStage.sort(Comparator.comparing(WorkflowStatistics.StageStatistics::getStageKey)
+                .thenComparing(WorkflowStatistics.StageStatistics::getExecutionStatus));
+
+        return WorkflowStatistics.builder()
+                .generatedAt(Instant.now())
+                .total(total)
+                .byStatus(byStatus)
+                .bySpecification(bySpecification)
+                .byStage(byStage)
+                .build();
+    }
+
+    private WorkflowStatistics.SpecificationStatistics toSpecificationStatistics(String specificationId, List<Document> rows) {
+        Map<String, Long> byStatus = new TreeMap<>();
+        long total = 0;
+        double cycles = 0;
+        for (Document row : rows) {
+            long count = count(row);
+            total += count;
+            cycles += count * number(row.get(WorkflowStatisticsRepository.AVERAGE_CYCLES), 0d);
+            byStatus.merge(string(row.get("_id", Document.class).get(WorkflowStatisticsRepository.EXECUTION_STATUS)), count, Long::sum);
+        }
+        return WorkflowStatistics.SpecificationStatistics.builder()
+                .specificationId(specificationId)
+                .total(total)
+                .byStatus(byStatus)
+                .averageCycles(total == 0 ? 0 : cycles / total)
+                .build();
+    }
+
+    private WorkflowStatistics.StageStatistics toStageStatistics(Document row) {
+        Document key = row.get("_id", Document.class);
+        List<?> percentiles = row.get(WorkflowStatisticsRepository.PERCENTILES, List.class);
+        return WorkflowStatistics.StageStatistics.builder()
+                .stageKey(string(key.get(WorkflowStatisticsRepository.STAGE_KEY)))
+                .executionStatus(string(key.get(WorkflowStatisticsRepository.EXECUTION_STATUS)))
+                .count(count(row))
+                .averageDuration(number(row.get(WorkflowStatisticsRepository.AVERAGE_DURATION), null))
+                .p50Duration(percentile(percentiles, 0))
+                .p90Duration(percentile(percentiles, 1))
+                .p99Duration(percentile(percentiles, 2))
+                .build();
+    }
+
+    private static Double percentile(List<?> percentiles, int index) {
+        return percentiles == null || percentiles.size() <= index ? null : number(percentiles.get(index), null);
+    }
+
+    private static long count(Document row) {
+        return number(row.get(WorkflowStatisticsRepository.COUNT), 0d).longValue();
+    }
+
+    private static Double number(Object value, Double defaultValue) {
+        return value instanceof Number number ? number.doubleValue() : defaultValue;
+    }
+
+    private static String string(Object value) {
+        return value == null ? UNKNOWN : value.toString();
+    }
+}
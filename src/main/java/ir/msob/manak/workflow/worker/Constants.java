@@ -43,6 +43,7 @@ public class Constants {
     public static final String AI_RESPONSE_SCHEMA_KEY = "aiResponseSchema";
     public static final Pattern VAR_PATTERN = Pattern.compile("\\$\\{([^}]+)}");
     public static final String APPLY_PATCH_MESSAGE_KEY = "applyPatchMessage";
+    public static final String JOB_COMPLETED_AT_KEY = "jobCompletedAt";
 
     private Constants() {
     }
@@ -5,6 +5,8 @@ import io.camunda.client.api.response.ActivatedJob;
 import ir.msob.jima.core.commons.logger.Logger;
 import ir.msob.jima.core.commons.logger.LoggerFactory;
 import ir.msob.manak.workflow.camunda.CamundaService;
+import ir.msob.manak.workflow.camunda.JobExecutor;
+import ir.msob.manak.workflow.largevalue.LargeValueStore;
 import ir.msob.manak.workflow.worker.common.ActionWorker;
 import ir.msob.manak.workflow.workflow.WorkflowService;
 import lombok.Getter;
@@ -12,20 +14,26 @@ import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 import reactor.core.publisher.Mono;
 
+import static ir.msob.manak.workflow.worker.Constants.JOB_COMPLETED_AT_KEY;
+import static ir.msob.manak.workflow.worker.Constants.PARAMS_KEY;
+import static ir.msob.manak.workflow.worker.Constants.WORKFLOW_ID_KEY;
+
 @Component
 public class AiActionWorker extends ActionWorker {
     private static final Logger logger = LoggerFactory.getLogger(AiActionWorker.class);
     @Getter
     private final AiActionRegistry actionRegistry;
 
-    public AiActionWorker(CamundaService camundaService, WorkflowService workflowService, AiActionRegistry actionRegistry) {
-        super(camundaService, workflowService);
+    public AiActionWorker(CamundaService camundaService, WorkflowService workflowService, JobExecutor jobExecutor,
+                          LargeValueStore largeValueStore, AiActionRegistry actionRegistry) {
+        super(camundaService, workflowService, jobExecutor, largeValueStore);
         this.actionRegistry = actionRegistry;
     }
 
     @Transactional
     @Override
-    @JobWorker(type = "ai-execution", autoComplete = false)
+    @JobWorker(type = "ai-execution", autoComplete = false,
+            fetchVariables = {WORKFLOW_ID_KEY, PARAMS_KEY, JOB_COMPLETED_AT_KEY})
     public void execute(final ActivatedJob job) {
          super.execute(job);
     }
@@ -7,6 +7,8 @@ import ir.msob.manak.domain.model.util.VariableUtils;
 import ir.msob.manak.domain.model.worker.WorkerUtils;
 import ir.msob.manak.domain.model.workflow.WorkerExecutionStatus;
 import ir.msob.manak.workflow.camunda.CamundaService;
+import ir.msob.manak.workflow.camunda.JobExecutor;
+import ir.msob.manak.workflow.largevalue.LargeValueStore;
 import ir.msob.manak.workflow.workflow.WorkflowService;
 import lombok.RequiredArgsConstructor;
 import reactor.core.publisher.Mono;
@@ -23,6 +25,8 @@ public abstract class ActionWorker {
 
     private final CamundaService camundaService;
     private final WorkflowService workflowService;
+    private final JobExecutor jobExecutor;
+    private final LargeValueStore largeValueStore;
 
     protected abstract ActionRegistry getActionRegistry();
 
@@ -46,7 +50,11 @@ public abstract class ActionWorker {
 
         ActionHandler actionHandler = getActionRegistry().getActionHandler(action);
 
-        actionHandler.execute(params)
+        // parameters offloaded by the claim check are loaded only here, right before the handler needs them
+        jobExecutor.execute(job, () -> largeValueStore.load(params)
+                // handlers may do blocking or JSON-heavy work while assembling their pipeline (e.g. convert-json)
+                .flatMap(loadedParams -> Mono.defer(() -> actionHandler.execute(loadedParams))
+                        .subscribeOn(jobExecutor.getBlockingScheduler()))
                 .flatMap(result -> {
                     logger.info("Action completed successfully. jobKey={} workflowId={}", jobKey, workflowId);
                     return recordWorkerHistory(workflowId).thenReturn(result);
@@ -58,8 +66,7 @@ public abstract class ActionWorker {
                     logger.error("Action execution FAILED. jobKey={} workflowId={} msg={}", jobKey, workflowId, ex.getMessage(), ex);
                     return handleErrorAndReThrow(job, workflowId, ex)
                             .then(Mono.error(ex));
-                })
-                .subscribe();
+                }));
     }
 
     private Mono<Void> recordWorkerHistory(String workflowId) {
@@ -74,8 +81,7 @@ public abstract class ActionWorker {
                 ex.getMessage()
         );
 
-        return workflowService.recordWorkerHistory(workflowId, WorkerExecutionStatus.ERROR, msg)
-                .then(camundaService.complete(job, WorkerUtils.prepareErrorResult(ex.getMessage())))
-                .then(Mono.error(ex));
+        return camundaService.failJob(job, msg, ex, () -> workflowService.recordWorkerHistory(workflowId, WorkerExecutionStatus.ERROR, msg)
+                .then(camundaService.complete(job, WorkerUtils.prepareErrorResult(ex.getMessage()))));
     }
 }
@@ -4,13 +4,13 @@ import io.camunda.client.annotation.JobWorker;
 import io.camunda.client.api.response.ActivatedJob;
 import ir.msob.jima.core.commons.logger.Logger;
 import ir.msob.jima.core.commons.logger.LoggerFactory;
-import ir.msob.manak.core.service.jima.security.UserService;
 import ir.msob.manak.core.service.jima.service.IdService;
 import ir.msob.manak.domain.model.util.VariableUtils;
 import ir.msob.manak.domain.model.worker.WorkerUtils;
 import ir.msob.manak.domain.model.workflow.WorkerExecutionStatus;
 import ir.msob.manak.domain.model.workflow.workflow.Workflow;
 import ir.msob.manak.workflow.camunda.CamundaService;
+import ir.msob.manak.workflow.camunda.JobExecutor;
 import ir.msob.manak.workflow.workflow.WorkflowService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
@@ -28,8 +28,8 @@ public class CreateCycleWorker {
     private static final Logger logger = LoggerFactory.getLogger(CreateCycleWorker.class);
 
     private final WorkflowService workflowService;
-    private final UserService userService;
     private final CamundaService camundaService;
+    private final JobExecutor jobExecutor;
     private final IdService idService;
 
     /**
@@ -41,7 +41,8 @@ public class CreateCycleWorker {
      * - On error, records an ERROR worker history, completes the Camunda job with an error result,
      * and then rethrows the exception to propagate the error.
      */
-    @JobWorker(type = "create-cycle", autoComplete = false)
+    @JobWorker(type = "create-cycle", autoComplete = false,
+            fetchVariables = {WORKFLOW_ID_KEY, JOB_COMPLETED_AT_KEY})
     public void execute(final ActivatedJob job) {
         Map<String, Object> vars = job.getVariablesAsMap();
         String workflowId = VariableUtils.safeString(vars.get(WORKFLOW_ID_KEY));
@@ -51,21 +52,16 @@ public class CreateCycleWorker {
 
         Workflow.Cycle cycle = prepareCycle();
 
-        workflowService.getOne(workflowId, userService.getSystemUser())
-                .switchIfEmpty(Mono.error(new IllegalStateException("Workflow not found: " + workflowId)))
-                .flatMap(workflowDto -> {
+        jobExecutor.execute(job, () -> workflowService.updateWithWorkerHistory(workflowId, workflowDto -> {
                     workflowDto.getCycles().add(cycle); // Add the new cycle
-                    return workflowService.update(workflowDto, userService.getSystemUser());
+                    return cycle;
                 })
-                .doOnSuccess(saved -> logger.info("Cycle created and workflow saved successfully. workflowId={}", saved.getId()))
-                .flatMap(savedWorkflow -> recordWorkerHistory(savedWorkflow.getId())
-                        .then(Mono.just(cycle)))
+                .doOnSuccess(saved -> logger.info("Cycle created and workflow saved successfully. workflowId={} cycleId={}", workflowId, saved.getId()))
                 .flatMap(this::prepareResult)
                 .flatMap(result -> camundaService.complete(job, result))
                 .doOnSuccess(v -> logger.info("Job completed successfully. jobKey={}", job.getKey()))
                 .doOnError(ex -> logger.error("Job execution failed. jobKey={} error={}", job.getKey(), ex.getMessage(), ex))
-                .onErrorResume(ex -> handleErrorAndReThrow(job, workflowId, ex))
-                .subscribe();
+                .onErrorResume(ex -> handleErrorAndReThrow(job, workflowId, ex)));
     }
 
     private Workflow.Cycle prepareCycle() {
@@ -76,10 +72,6 @@ public class CreateCycleWorker {
                 .build();
     }
 
-    private Mono<Void> recordWorkerHistory(String workflowId) {
-        return workflowService.recordWorkerHistory(workflowId, WorkerExecutionStatus.SUCCESS, null);
-    }
-
     private Mono<Map<String, Object>> prepareResult(Workflow.Cycle cycle) {
         return Mono.just(Map.of(
                 CYCLE_ID_KEY, cycle.getId(),
@@ -89,9 +81,8 @@ public class CreateCycleWorker {
 
     private Mono<Void> handleErrorAndReThrow(ActivatedJob job, String workflowId, Throwable ex) {
         String errorMessage = "Create cycle job failed. jobKey=" + job.getKey() + " error=" + ex.getMessage();
-        return workflowService.recordWorkerHistory(workflowId, WorkerExecutionStatus.ERROR, errorMessage)
-                .then(camundaService.complete(job, WorkerUtils.prepareErrorResult(errorMessage)))
-                .then(Mono.error(ex));
+        return camundaService.failJob(job, errorMessage, ex, () -> workflowService.recordWorkerHistory(workflowId, WorkerExecutionStatus.ERROR, errorMessage)
+                .then(camundaService.complete(job, WorkerUtils.prepareErrorResult(errorMessage))));
     }
 }
 
@@ -12,6 +12,7 @@ import ir.msob.manak.domain.model.workflow.workflow.Workflow;
 import ir.msob.manak.domain.model.workflow.workflow.WorkflowDto;
 import ir.msob.manak.domain.model.workflow.workflowspecification.WorkflowSpecificationDto;
 import ir.msob.manak.workflow.camunda.CamundaService;
+import ir.msob.manak.workflow.camunda.JobExecutor;
 import ir.msob.manak.workflow.workflow.WorkflowService;
 import ir.msob.manak.workflow.workflowspecification.WorkflowSpecificationService;
 import lombok.RequiredArgsConstructor;
@@ -34,6 +35,7 @@ public class CreateWorkflowWorker {
     private final WorkflowService workflowService;
     private final UserService userService;
     private final CamundaService camundaService;
+    private final JobExecutor jobExecutor;
 
     /**
      * Main worker entry point for "create-workflow" jobs.
@@ -44,7 +46,8 @@ public class CreateWorkflowWorker {
      * - On error, records an ERROR worker history, completes the Camunda job with an error result,
      * and then rethrows the exception to propagate the error.
      */
-    @JobWorker(type = "create-workflow", autoComplete = false)
+    @JobWorker(type = "create-workflow", autoComplete = false,
+            fetchVariables = {WORKFLOW_SPECIFICATION_ID_KEY, CORRELATION_ID_KEY, JOB_COMPLETED_AT_KEY})
     public void execute(final ActivatedJob job) {
         Map<String, Object> vars = job.getVariablesAsMap();
         String workflowSpecificationId = VariableUtils.safeString(vars.get(WORKFLOW_SPECIFICATION_ID_KEY));
@@ -55,26 +58,19 @@ public class CreateWorkflowWorker {
         // Holder for workflow ID to use in error handling
         AtomicReference<String> workflowIdHolder = new AtomicReference<>();
 
-         workflowSpecificationService.getOne(workflowSpecificationId, userService.getSystemUser())
+        jobExecutor.execute(job, () -> workflowSpecificationService.getOne(workflowSpecificationId, userService.getSystemUser())
                 .switchIfEmpty(Mono.error(new IllegalStateException("WorkflowSpecification not found: " + workflowSpecificationId)))
                 .map(spec -> prepareWorkflow(spec, vars))
-                .flatMap(workflowDto -> workflowService.save(workflowDto, userService.getSystemUser()))
+                .flatMap(workflowService::saveWithWorkerHistory)
                 .doOnSuccess(saved -> {
                     logger.info("Workflow saved successfully. workflowId={}", saved.getId());
                     workflowIdHolder.set(saved.getId());
                 })
-                .flatMap(savedWorkflow -> recordWorkerHistory(savedWorkflow)
-                        .then(Mono.just(savedWorkflow)))
                 .flatMap(this::prepareResult)
                 .flatMap(result -> camundaService.complete(job, result))
                 .doOnSuccess(v -> logger.info("Create workflow job completed successfully. jobKey={}", job.getKey()))
                 .doOnError(ex -> logger.error("Create workflow job failed. jobKey={} error={}", job.getKey(), ex.getMessage(), ex))
-                .onErrorResume(ex -> handleErrorAndReThrow(job, workflowIdHolder.get(), ex))
-                .subscribe();
-    }
-
-    private Mono<Void> recordWorkerHistory(WorkflowDto workflowDto) {
-        return workflowService.recordWorkerHistory(workflowDto.getId(), WorkerExecutionStatus.SUCCESS, null);
+                .onErrorResume(ex -> handleErrorAndReThrow(job, workflowIdHolder.get(), ex)));
     }
 
     private Mono<Map<String, Object>> prepareResult(WorkflowDto workflowDto) {
@@ -95,9 +91,8 @@ public class CreateWorkflowWorker {
 
     private Mono<Void> handleErrorAndReThrow(ActivatedJob job, String workflowId, Throwable ex) {
         String errorMessage = "Create workflow job failed. jobKey=" + job.getKey() + " error=" + ex.getMessage();
-        return workflowService.recordWorkerHistory(workflowId, WorkerExecutionStatus.ERROR, errorMessage)
-                .then(camundaService.complete(job, WorkerUtils.prepareErrorResult(errorMessage)))
-                .then(Mono.error(ex));
+        return camundaService.failJob(job, errorMessage, ex, () -> workflowService.recordWorkerHistory(workflowId, WorkerExecutionStatus.ERROR, errorMessage)
+                .then(camundaService.complete(job, WorkerUtils.prepareErrorResult(errorMessage))));
     }
 }
 
@@ -2,16 +2,15 @@ package ir.msob.manak.workflow.worker.core;
 
 import io.camunda.client.annotation.JobWorker;
 import io.camunda.client.api.response.ActivatedJob;
-import ir.msob.jima.core.commons.exception.datanotfound.DataNotFoundException;
 import ir.msob.jima.core.commons.logger.Logger;
 import ir.msob.jima.core.commons.logger.LoggerFactory;
-import ir.msob.manak.core.service.jima.security.UserService;
 import ir.msob.manak.domain.model.util.VariableUtils;
 import ir.msob.manak.domain.model.worker.WorkerUtils;
 import ir.msob.manak.domain.model.workflow.WorkerExecutionStatus;
 import ir.msob.manak.domain.model.workflow.workflow.Workflow;
 import ir.msob.manak.domain.model.workflow.workflow.WorkflowDto;
 import ir.msob.manak.workflow.camunda.CamundaService;
+import ir.msob.manak.workflow.camunda.JobExecutor;
 import ir.msob.manak.workflow.worker.util.WorkflowUtil;
 import ir.msob.manak.workflow.workflow.WorkflowService;
 import lombok.RequiredArgsConstructor;
@@ -22,6 +21,7 @@ import java.time.Instant;
 import java.util.Map;
 
 import static ir.msob.manak.workflow.worker.Constants.CYCLE_ID_KEY;
+import static ir.msob.manak.workflow.worker.Constants.JOB_COMPLETED_AT_KEY;
 import static ir.msob.manak.workflow.worker.Constants.WORKFLOW_ID_KEY;
 
 @Component
@@ -31,8 +31,8 @@ public class CycleCompleteSuccessWorker {
     private static final Logger logger = LoggerFactory.getLogger(CycleCompleteSuccessWorker.class);
 
     private final WorkflowService workflowService;
-    private final UserService userService;
     private final CamundaService camundaService;
+    private final JobExecutor jobExecutor;
 
     /**
      * Worker entry point for "cycle-complete-success" jobs.
@@ -44,7 +44,8 @@ public class CycleCompleteSuccessWorker {
      * - On error, records an ERROR worker history, completes the Camunda job with error details,
      * and rethrows the exception.
      */
-    @JobWorker(type = "cycle-complete-success", autoComplete = false)
+    @JobWorker(type = "cycle-complete-success", autoComplete = false,
+            fetchVariables = {WORKFLOW_ID_KEY, CYCLE_ID_KEY, JOB_COMPLETED_AT_KEY})
     public void execute(final ActivatedJob job) {
         Map<String, Object> vars = job.getVariablesAsMap();
         String workflowId = VariableUtils.safeString(vars.get(WORKFLOW_ID_KEY));
@@ -53,23 +54,19 @@ public class CycleCompleteSuccessWorker {
         // Log the start of the job execution
         logger.info("Starting 'cycle-complete-success' job. jobKey={} workflowId={} cycleId={}", job.getKey(), workflowId, cycleId);
 
-         workflowService.getOne(workflowId, userService.getSystemUser())
-                .switchIfEmpty(Mono.error(new DataNotFoundException("Workflow not found: " + workflowId)))
-                .flatMap(workflowDto -> prepareCycle(workflowDto, cycleId))
-                .flatMap(workflow -> workflowService.update(workflow, userService.getSystemUser()))
+        jobExecutor.execute(job, () -> workflowService.updateWorkflow(workflowId, workflowDto -> prepareCycle(workflowDto, cycleId))
                 .flatMap(this::prepareResult)
                 .flatMap(result -> camundaService.complete(job, result))
                 .doOnSuccess(v -> logger.info("Cycle-complete-success job completed successfully. jobKey={} cycleId={}", job.getKey(), cycleId))
                 .doOnError(ex -> logger.error("Cycle-complete-success job failed. jobKey={} cycleId={} error={}", job.getKey(), cycleId, ex.getMessage(), ex))
-                .onErrorResume(ex -> handleErrorAndReThrow(job, workflowId, ex))
-                .subscribe();
+                .onErrorResume(ex -> handleErrorAndReThrow(job, workflowId, ex)));
     }
 
-    private Mono<WorkflowDto> prepareCycle(WorkflowDto workflow, String cycleId) {
+    private WorkflowDto prepareCycle(WorkflowDto workflow, String cycleId) {
         Workflow.Cycle cycle = WorkflowUtil.findCycle(workflow, cycleId);
         cycle.setFinishedAt(Instant.now());
         cycle.setExecutionStatus(Workflow.CycleExecutionStatus.COMPLETED);
-        return Mono.just(workflow);
+        return workflow;
     }
 
     private Mono<Map<String, Object>> prepareResult(WorkflowDto workflow) {
@@ -79,8 +76,7 @@ public class CycleCompleteSuccessWorker {
 
     private Mono<Void> handleErrorAndReThrow(ActivatedJob job, String workflowId, Throwable ex) {
         String errorMessage = "Cycle-complete-success job failed. jobKey=" + job.getKey() + " error=" + ex.getMessage();
-        return workflowService.recordWorkerHistory(workflowId, WorkerExecutionStatus.ERROR, errorMessage)
-                .then(camundaService.complete(job, WorkerUtils.prepareErrorResult(errorMessage)))
-                .then(Mono.error(ex));
+        return camundaService.failJob(job, errorMessage, ex, () -> workflowService.recordWorkerHistory(workflowId, WorkerExecutionStatus.ERROR, errorMessage)
+                .then(camundaService.complete(job, WorkerUtils.prepareErrorResult(errorMessage))));
     }
 }
@@ -5,14 +5,17 @@ import io.camunda.client.api.response.ActivatedJob;
 import ir.msob.jima.core.commons.exception.datanotfound.DataNotFoundException;
 import ir.msob.jima.core.commons.logger.Logger;
 import ir.msob.jima.core.commons.logger.LoggerFactory;
-import ir.msob.manak.core.service.jima.security.UserService;
 import ir.msob.manak.domain.model.util.VariableUtils;
 import ir.msob.manak.domain.model.worker.WorkerUtils;
 import ir.msob.manak.domain.model.workflow.WorkerExecutionStatus;
 import ir.msob.manak.domain.model.workflow.workflow.Workflow;
-import ir.msob.manak.domain.model.workflow.workflow.WorkflowDto;
 import ir.msob.manak.domain.model.workflow.workflowspecification.WorkflowSpecification;
 import ir.msob.manak.workflow.camunda.CamundaService;
+import ir.msob.manak.workflow.camunda.JobExecutor;
+import ir.msob.manak.workflow.largevalue.LargeValueNotLoadedException;
+import ir.msob.manak.workflow.largevalue.LargeValueResolver;
+import ir.msob.manak.workflow.largevalue.LargeValueStore;
+import ir.msob.manak.workflow.stagehistory.StageHistoryService;
 import ir.msob.manak.workflow.worker.util.ConditionEvaluator;
 import ir.msob.manak.workflow.worker.util.WorkflowUtil;
 import ir.msob.manak.workflow.workflow.WorkflowService;
@@ -33,11 +36,14 @@ public class StageDecisionWorker {
     private static final Logger logger = LoggerFactory.getLogger(StageDecisionWorker.class);
 
     private final WorkflowService workflowService;
-    private final UserService userService;
+    private final StageHistoryService stageHistoryService;
     private final CamundaService camundaService;
+    private final JobExecutor jobExecutor;
     private final ConditionEvaluator conditionEvaluator;
+    private final LargeValueStore largeValueStore;
 
-    @JobWorker(type = "stage-decision", autoComplete = false)
+    @JobWorker(type = "stage-decision", autoComplete = false,
+            fetchVariables = {WORKFLOW_ID_KEY, CYCLE_ID_KEY, STAGE_HISTORY_ID_KEY, STAGE_KEY_KEY, JOB_COMPLETED_AT_KEY})
     public void execute(final ActivatedJob job) {
         Map<String, Object> vars = job.getVariablesAsMap();
         String workflowId = VariableUtils.safeString(vars.get(WORKFLOW_ID_KEY));
@@ -47,17 +53,16 @@ public class StageDecisionWorker {
 
         logger.info("Starting 'stage-decision' job. jobKey={} workflowId={} previousStageKey={}", job.getKey(), workflowId, previousStageKey);
 
-         workflowService.getOne(workflowId, userService.getSystemUser())
-                .switchIfEmpty(Mono.error(new DataNotFoundException("Workflow not found: " + workflowId)))
-                .flatMap(workflowDto -> determineNextStage(workflowDto, cycleId, previousStageHistoryId, previousStageKey, vars))
+        jobExecutor.execute(job, () -> workflowService.getCycleSlice(workflowId, cycleId)
+                .flatMap(workflow -> largeValueStore.withResolver(resolver ->
+                        determineNextStage(workflow, cycleId, previousStageHistoryId, previousStageKey, vars, resolver)))
                 .flatMap(nextStage -> workflowService.recordWorkerHistory(workflowId, WorkerExecutionStatus.SUCCESS, null)
                         .then(Mono.just(nextStage)))
                 .flatMap(this::prepareResult)
                 .flatMap(result -> camundaService.complete(job, result))
                 .doOnSuccess(v -> logger.info("Stage-decision job completed successfully. jobKey={} previousStageKey={}", job.getKey(), previousStageKey))
                 .doOnError(ex -> logger.error("Stage-decision job failed. jobKey={} error={}", job.getKey(), ex.getMessage(), ex))
-                .onErrorResume(ex -> handleErrorAndReThrow(job, workflowId, ex))
-                .subscribe();
+                .onErrorResume(ex -> handleErrorAndReThrow(job, workflowId, ex)));
     }
 
     private Mono<Map<String, Object>> prepareResult(WorkflowSpecification.StageSpec stageSpec) {
@@ -67,23 +72,33 @@ public class StageDecisionWorker {
         ));
     }
 
-    private Mono<WorkflowSpecification.StageSpec> determineNextStage(WorkflowDto workflowDto, String cycleId, String previousStageHistoryId, String previousStageKey, Map<String, Object> processVars) {
+    /**
+     * A previous stage without a stage history (not recorded, or recorded elsewhere) is decided on an empty stage
+     * output, so the transitions still run and the job completes or fails instead of timing out.
+     */
+    Mono<WorkflowSpecification.StageSpec> determineNextStage(Workflow workflow, String cycleId, String previousStageHistoryId, String previousStageKey, Map<String, Object> processVars, LargeValueResolver resolver) {
         if (previousStageKey == null || previousStageKey.isBlank()) {
-            return Mono.just(WorkflowUtil.findFirstStageSpec(workflowDto));
+            return Mono.just(WorkflowUtil.findFirstStageSpec(workflow));
         } else {
-            return Mono.just(findNextStage(workflowDto, cycleId, previousStageHistoryId, previousStageKey, processVars));
+            return stageHistoryService.findStageHistory(workflow, cycleId, previousStageHistoryId)
+                    .map(stageHistory -> {
+                        if (stageHistory.isEmpty()) {
+                            logger.warn("Stage history not found, deciding on an empty stage output. workflowId={} cycleId={} stageHistoryId={}",
+                                    workflow.getId(), cycleId, previousStageHistoryId);
+                        }
+                        return findNextStage(workflow, cycleId, stageHistory.orElse(null), previousStageKey, processVars, resolver);
+                    });
         }
     }
 
-    private WorkflowSpecification.StageSpec findNextStage(WorkflowDto workflowDto, String cycleId, String previousStageHistoryId, String previousStageKey, Map<String, Object> processVars) {
-        WorkflowSpecification.StageSpec currentStage = WorkflowUtil.findStageSpecByKey(workflowDto, previousStageKey);
-        Workflow.StageHistory stageHistory = WorkflowUtil.findStageHistory(workflowDto, cycleId, previousStageHistoryId);
-        return getNextStage(workflowDto, currentStage.getTransitions(), stageHistory, cycleId, processVars);
+    private WorkflowSpecification.StageSpec findNextStage(Workflow workflow, String cycleId, Workflow.StageHistory stageHistory, String previousStageKey, Map<String, Object> processVars, LargeValueResolver resolver) {
+        WorkflowSpecification.StageSpec currentStage = WorkflowUtil.findStageSpecByKey(workflow, previousStageKey);
+        return getNextStage(workflow, currentStage.getTransitions(), stageHistory, cycleId, processVars, resolver);
     }
 
-    private WorkflowSpecification.StageSpec getNextStage(WorkflowDto workflowDto, List<WorkflowSpecification.Transition> transitions, Workflow.StageHistory stageHistory, String cycleId, Map<String, Object> processVars) {
-        Workflow.Cycle cycle = WorkflowUtil.findCycle(workflowDto, cycleId);
-        Map<String, Object> workflowContext = workflowDto.getContext();
+    private WorkflowSpecification.StageSpec getNextStage(Workflow workflow, List<WorkflowSpecification.Transition> transitions, Workflow.StageHistory stageHistory, String cycleId, Map<String, Object> processVars, LargeValueResolver resolver) {
+        Workflow.Cycle cycle = WorkflowUtil.findCycle(workflow, cycleId);
+        Map<String, Object> workflowContext = workflow.getContext();
         Map<String, Object> cycleContext = cycle != null ? cycle.getContext() : null;
         Map<String, Object> stageOutput = stageHistory != null ? stageHistory.getStageOutput() : Map.of();
 
@@ -92,12 +107,15 @@ public class StageDecisionWorker {
         for (WorkflowSpecification.Transition transition : transitions) {
             Map<String, Object> conds = transition.getOn();
             try {
-                boolean match = conditionEvaluator.evaluateConditions(conds, workflowContext, cycleContext, processVars, stageOutput);
+                boolean match = conditionEvaluator.evaluateConditions(conds, workflowContext, cycleContext, processVars, stageOutput, resolver);
                 if (match) {
-                    return WorkflowUtil.findStageSpecByKey(workflowDto, transition.getGoTo());
+                    return WorkflowUtil.findStageSpecByKey(workflow, transition.getGoTo());
                 } else {
                     failedReasons.add("transition to '" + transition.getGoTo() + "' didn't match");
                 }
+            } catch (LargeValueNotLoadedException ex) {
+                // not a failed transition: load the offloaded values and evaluate again
+                throw ex;
             } catch (Exception ex) {
                 logger.warn("Error evaluating transition to '{}': {}", transition.getGoTo(), ex.getMessage(), ex);
                 failedReasons.add("transition to '" + transition.getGoTo() + "' error: " + ex.getMessage());
@@ -110,8 +128,7 @@ public class StageDecisionWorker {
 
     private Mono<Void> handleErrorAndReThrow(ActivatedJob job, String workflowId, Throwable ex) {
         String errorMessage = "Stage-decision job failed. jobKey=" + job.getKey() + " error=" + ex.getMessage();
-        return workflowService.recordWorkerHistory(workflowId, WorkerExecutionStatus.ERROR, errorMessage)
-                .then(camundaService.complete(job, WorkerUtils.prepareErrorResult(errorMessage)))
-                .then(Mono.error(ex));
+        return camundaService.failJob(job, errorMessage, ex, () -> workflowService.recordWorkerHistory(workflowId, WorkerExecutionStatus.ERROR, errorMessage)
+                .then(camundaService.complete(job, WorkerUtils.prepareErrorResult(errorMessage))));
     }
 }
@@ -2,10 +2,8 @@ package ir.msob.manak.workflow.worker.core;
 
 import io.camunda.client.annotation.JobWorker;
 import io.camunda.client.api.response.ActivatedJob;
-import ir.msob.jima.core.commons.exception.datanotfound.DataNotFoundException;
 import ir.msob.jima.core.commons.logger.Logger;
 import ir.msob.jima.core.commons.logger.LoggerFactory;
-import ir.msob.manak.core.service.jima.security.UserService;
 import ir.msob.manak.domain.model.util.VariableUtils;
 import ir.msob.manak.domain.model.worker.WorkerUtils;
 import ir.msob.manak.domain.model.workflow.WorkerExecutionStatus;
@@ -13,16 +11,22 @@ import ir.msob.manak.domain.model.workflow.workflow.Workflow;
 import ir.msob.manak.domain.model.workflow.workflow.WorkflowDto;
 import ir.msob.manak.domain.model.workflow.workflowspecification.WorkflowSpecification;
 import ir.msob.manak.workflow.camunda.CamundaService;
+import ir.msob.manak.workflow.camunda.JobExecutor;
+import ir.msob.manak.workflow.largevalue.LargeValueResolver;
+import ir.msob.manak.workflow.largevalue.LargeValueStore;
+import ir.msob.manak.workflow.stagehistory.StageHistoryService;
 import ir.msob.manak.workflow.worker.util.WorkflowUtil;
+import ir.msob.manak.workflow.workflow.WorkflowContextDelta;
 import ir.msob.manak.workflow.workflow.WorkflowService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Mono;
-import reactor.util.function.Tuple2;
-import reactor.util.function.Tuples;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
@@ -35,10 +39,13 @@ public class StagePostProcessingWorker {
     private static final Logger logger = LoggerFactory.getLogger(StagePostProcessingWorker.class);
 
     private final WorkflowService workflowService;
-    private final UserService userService;
+    private final StageHistoryService stageHistoryService;
     private final CamundaService camundaService;
+    private final JobExecutor jobExecutor;
+    private final LargeValueStore largeValueStore;
 
-    @JobWorker(type = "stage-post-processing", autoComplete = false)
+    @JobWorker(type = "stage-post-processing", autoComplete = false,
+            fetchVariables = {WORKFLOW_ID_KEY, CYCLE_ID_KEY, STAGE_KEY_KEY, STAGE_HISTORY_ID_KEY, STAGE_EXECUTION_STATUS_KEY, STAGE_EXECUTION_ERROR_KEY, STAGE_OUTPUT_KEY, JOB_COMPLETED_AT_KEY})
     public void execute(final ActivatedJob job) {
         Map<String, Object> vars = job.getVariablesAsMap();
         String workflowId = VariableUtils.safeString(vars.get(WORKFLOW_ID_KEY));
@@ -51,73 +58,159 @@ public class StagePostProcessingWorker {
 
         logger.info("Starting stage post-processing job. jobKey={}, workflowId={}, stageKey={}", job.getKey(), workflowId, stageKey);
 
-         workflowService.getOne(workflowId, userService.getSystemUser())
-                .switchIfEmpty(Mono.error(new DataNotFoundException("Workflow not found: " + workflowId)))
-                .flatMap(workflow -> prepareStageHistory(workflow, stageHistoryId, cycleId, stageExecutionStatus, stageExecutionError, stageOutput))
-                .flatMap(workflow -> updateContext(workflow, stageKey, cycleId, stageOutput, vars))
-                .flatMap(tuple -> {
-                    WorkflowDto wf = tuple.getT1();
-                    Map<String, Object> processVarsToSet = tuple.getT2();
-                    return workflowService.update(wf, userService.getSystemUser())
-                            .thenReturn(processVarsToSet);
-                })
+        jobExecutor.execute(job, () -> Mono.fromSupplier(() -> Workflow.StageExecutionStatus.valueOf(stageExecutionStatus))
+                .flatMap(status -> largeValueStore.offload(stageOutput, workflowId)
+                        .defaultIfEmpty(new HashMap<>())
+                        .flatMap(storedOutput -> stageHistoryService.complete(workflowId, cycleId, stageHistoryId, status, stageExecutionError, storedOutput)
+                                .flatMap(stored -> stored
+                                        ? applyOutputMapping(workflowId, cycleId, stageKey, stageOutput, storedOutput, vars)
+                                        // stage history of a workflow started before stage histories had their own collection
+                                        : updateLegacyStageHistory(workflowId, cycleId, stageKey, stageHistoryId, stageExecutionStatus,
+                                        stageExecutionError, stageOutput, storedOutput, vars))))
                 .flatMap(this::prepareResult)
                 .flatMap(result -> camundaService.complete(job, result))
                 .doOnSuccess(v -> logger.info("Stage post-processing job completed successfully. jobKey={}", job.getKey()))
                 .doOnError(ex -> logger.error("Stage post-processing job failed. jobKey={}, error={}", job.getKey(), ex.getMessage(), ex))
-                .onErrorResume(ex -> handleErrorAndReThrow(job, workflowId, ex))
-                .subscribe();
+                .onErrorResume(ex -> handleErrorAndReThrow(job, workflowId, ex)));
     }
 
-    private Mono<WorkflowDto> prepareStageHistory(WorkflowDto workflow, String stageHistoryId, String cycleId, String stageExecutionStatus, String stageExecutionError, Map<String, Object> outputData) {
+    /**
+     * Apply the output mapping to a slice of the workflow and write back only the context paths it changed.
+     */
+    private Mono<Map<String, Object>> applyOutputMapping(String workflowId,
+                                                         String cycleId,
+                                                         String stageKey,
+                                                         Map<String, Object> stageOutput,
+                                                         Map<String, Object> storedOutput,
+                                                         Map<String, Object> processVariable) {
+        return largeValueStore.withResolver(resolver -> workflowService.getCycleSlice(workflowId, cycleId)
+                .flatMap(workflow -> {
+                    WorkflowContextDelta delta = new WorkflowContextDelta(workflow.getContext(),
+                            WorkflowUtil.findCycle(workflow, cycleId).getContext());
+                    Map<String, Object> processVars = updateContext(workflow, stageKey, cycleId, stageOutput, storedOutput,
+                            processVariable, resolver, delta);
+                    return workflowService.updateContextWithWorkerHistory(workflowId, cycleId, delta)
+                            .thenReturn(processVars);
+                }));
+    }
+
+    /**
+     * Apply the output mapping and update the stage history embedded in the workflow document. The mapped values are
+     * read, and offloaded ones loaded, from a slice first, so the mutation itself only assigns them.
+     */
+    private Mono<Map<String, Object>> updateLegacyStageHistory(String workflowId,
+                                                               String cycleId,
+                                                               String stageKey,
+                                                               String stageHistoryId,
+                                                               String stageExecutionStatus,
+                                                               String stageExecutionError,
+                                                               Map<String, Object> stageOutput,
+                                                               Map<String, Object> storedOutput,
+                                                               Map<String, Object> processVariable) {
+        return largeValueStore.withResolver(resolver -> workflowService.getCycleSlice(workflowId, cycleId)
+                        .map(slice -> resolveAssignments(slice, stageKey, cycleId, stageOutput, storedOutput, processVariable, resolver)))
+                .flatMap(assignments -> workflowService.updateWithWorkerHistory(workflowId, workflow -> {
+                    Map<String, Object> processVars = applyAssignments(workflow, stageKey, cycleId, assignments, null);
+                    prepareStageHistory(workflow, stageHistoryId, cycleId, stageExecutionStatus, stageExecutionError, storedOutput);
+                    return processVars;
+                }));
+    }
+
+    /**
+     * Update a legacy stage history embedded in the workflow document.
+     */
+    private void prepareStageHistory(WorkflowDto workflow, String stageHistoryId, String cycleId, String stageExecutionStatus, String stageExecutionError, Map<String, Object> outputData) {
         Workflow.StageHistory stageHistory = WorkflowUtil.findStageHistory(workflow, cycleId, stageHistoryId);
         stageHistory.setStageOutput(outputData);
         stageHistory.setExecutionStatus(Workflow.StageExecutionStatus.valueOf(stageExecutionStatus));
         stageHistory.setError(stageExecutionError);
         stageHistory.setEndedAt(Instant.now());
         logger.debug("Stage history prepared. stageHistoryId={}, status={}, error={}", stageHistoryId, stageExecutionStatus, stageExecutionError);
-        return Mono.just(workflow);
     }
 
     /**
-     * Update workflow and cycle contexts based on stage output mapping, and collect process variables to return to the process.
+     * Update workflow and cycle contexts (in place) based on stage output mapping, and collect process variables to return to the process.
+     * All source values are read before anything is changed, so a read that needs an offloaded value to be loaded
+     * leaves the workflow untouched. Offloaded values copied into a context stay references.
      *
-     * @return Tuple2:
-     * - T1 = updated WorkflowDto
-     * - T2 = Map of process variables to return (keys are variable names without "processVariable." prefix)
+     * @param storedOutput stage output as stored in the stage history (oversized values replaced by references)
+     * @param delta        records the changed context paths for a targeted write; null when the whole workflow is saved
+     * @return Map of process variables to return (keys are variable names without "processVariable." prefix)
+     */
+    private Map<String, Object> updateContext(Workflow workflow,
+                                              String stageKey,
+                                              String cycleId,
+                                              Map<String, Object> stageOutput,
+                                              Map<String, Object> storedOutput,
+                                              Map<String, Object> processVariable,
+                                              LargeValueResolver resolver,
+                                              WorkflowContextDelta delta) {
+        List<Map.Entry<String, Object>> assignments = resolveAssignments(workflow, stageKey, cycleId, stageOutput, storedOutput, processVariable, resolver);
+        return applyAssignments(workflow, stageKey, cycleId, assignments, delta);
+    }
+
+    /**
+     * Read the value of every output mapping of the stage, as destination expression and value pairs; the workflow
+     * is not changed.
      */
-    private Mono<Tuple2<WorkflowDto, Map<String, Object>>> updateContext(WorkflowDto workflow,
-                                                                         String stageKey,
-                                                                         String cycleId,
-                                                                         Map<String, Object> stageOutput,
-                                                                         Map<String, Object> processVariable) {
+    private List<Map.Entry<String, Object>> resolveAssignments(Workflow workflow,
+                                                               String stageKey,
+                                                               String cycleId,
+                                                               Map<String, Object> stageOutput,
+                                                               Map<String, Object> storedOutput,
+                                                               Map<String, Object> processVariable,
+                                                               LargeValueResolver resolver) {
         Workflow.Cycle cycle = WorkflowUtil.findCycle(workflow, cycleId);
         WorkflowSpecification.StageSpec stageSpec = WorkflowUtil.findStageSpecByKey(workflow, stageKey);
 
         Map<String, Object> outputMapping = stageSpec.getOutputMapping();
         if (outputMapping == null || outputMapping.isEmpty()) {
             logger.debug("No output mapping defined for stage '{}', skipping context update.", stageKey);
-            return Mono.just(Tuples.of(workflow, Map.of()));
+            return List.of();
         }
 
-        Map<String, Object> processVarsToReturn = new HashMap<>();
-
+        List<Map.Entry<String, Object>> assignments = new ArrayList<>();
         outputMapping.forEach((destObj, srcObj) -> {
             String destExpr = Objects.toString(destObj, null);
             if (destExpr == null) return;
 
-            Object value = resolveSourceValue(srcObj, workflow.getContext(), cycle.getContext(), processVariable, stageOutput);
+            String dest = destExpr.startsWith(VARIABLE_START_CHAR) ? destExpr.substring(1) : destExpr;
+            // values copied into a context may stay references; values returned to the process only with the claim check
+            boolean toProcessVariable = dest.startsWith(PROCESS_VARIABLE_KEY + VARIABLE_SEPARATOR_CHAR_CHAR);
+            Object value = resolveSourceValue(srcObj, workflow.getContext(), cycle.getContext(), processVariable, stageOutput, storedOutput,
+                    resolver, !toProcessVariable || camundaService.isClaimCheckEnabled());
             if (value == null) return;
 
+            assignments.add(Map.entry(destExpr, value));
+        });
+
+        return assignments;
+    }
+
+    /**
+     * Write the assignments into the workflow and cycle contexts and collect the process variables to return.
+     */
+    private Map<String, Object> applyAssignments(Workflow workflow,
+                                                 String stageKey,
+                                                 String cycleId,
+                                                 List<Map.Entry<String, Object>> assignments,
+                                                 WorkflowContextDelta delta) {
+        Workflow.Cycle cycle = WorkflowUtil.findCycle(workflow, cycleId);
+        Map<String, Object> processVarsToReturn = new HashMap<>();
+        assignments.forEach(assignment -> {
+            String destExpr = assignment.getKey();
+            Object value = assignment.getValue();
             String dest = destExpr.startsWith(VARIABLE_START_CHAR) ? destExpr.substring(1) : destExpr;
 
             if (dest.startsWith(CYCLE_CONTEXT_KEY + VARIABLE_SEPARATOR_CHAR_CHAR)) {
                 String path = dest.substring((CYCLE_CONTEXT_KEY + VARIABLE_SEPARATOR_CHAR_CHAR).length());
-                setValueByPath(cycle.getContext(), path, value);
+                String changed = setValueByPath(cycle.getContext(), path, value);
+                if (delta != null && changed != null) delta.cycleContextChanged(changed);
 
             } else if (dest.startsWith(WORKFLOW_CONTEXT_KEY + VARIABLE_SEPARATOR_CHAR_CHAR)) {
                 String path = dest.substring((WORKFLOW_CONTEXT_KEY + VARIABLE_SEPARATOR_CHAR_CHAR).length());
-                setValueByPath(workflow.getContext(), path, value);
+                String changed = setValueByPath(workflow.getContext(), path, value);
+                if (delta != null && changed != null) delta.workflowContextChanged(changed);
 
             } else if (dest.startsWith(PROCESS_VARIABLE_KEY + VARIABLE_SEPARATOR_CHAR_CHAR)) {
                 String varName = dest.substring((PROCESS_VARIABLE_KEY + VARIABLE_SEPARATOR_CHAR_CHAR).length());
@@ -129,7 +222,7 @@ public class StagePostProcessingWorker {
         });
 
         logger.debug("Context update complete for stage '{}'. Process variables to return: {}", stageKey, processVarsToReturn.keySet());
-        return Mono.just(Tuples.of(workflow, processVarsToReturn));
+        return processVarsToReturn;
     }
 
     /**
@@ -141,12 +234,16 @@ public class StagePostProcessingWorker {
      * - $cycleContext.<path> -> read from cycle context
      * - $processVariable.<path> -> read from incoming process variables
      * - $<path-without-prefix> -> read from stageOutput
+     * When keepReferences is set, a value that is an offloaded reference is returned as is instead of being loaded.
      */
     private Object resolveSourceValue(Object srcObj,
                                       Map<String, Object> workflowContext,
                                       Map<String, Object> cycleContext,
                                       Map<String, Object> processVariable,
-                                      Map<String, Object> stageOutput) {
+                                      Map<String, Object> stageOutput,
+                                      Map<String, Object> storedOutput,
+                                      LargeValueResolver resolver,
+                                      boolean keepReferences) {
 
         if (!(srcObj instanceof String srcStr)) {
             // literal object (Map, List, Number, etc.)
@@ -162,19 +259,24 @@ public class StagePostProcessingWorker {
 
         if (expr.startsWith(WORKFLOW_CONTEXT_KEY + VARIABLE_SEPARATOR_CHAR_CHAR)) {
             String path = expr.substring((WORKFLOW_CONTEXT_KEY + VARIABLE_SEPARATOR_CHAR_CHAR).length());
-            return getValueByPath(workflowContext, path);
+            return keepReferences ? resolver.readReference(workflowContext, path) : resolver.read(workflowContext, path);
 
         } else if (expr.startsWith(CYCLE_CONTEXT_KEY + VARIABLE_SEPARATOR_CHAR_CHAR)) {
             String path = expr.substring((CYCLE_CONTEXT_KEY + VARIABLE_SEPARATOR_CHAR_CHAR).length());
-            return getValueByPath(cycleContext, path);
+            return keepReferences ? resolver.readReference(cycleContext, path) : resolver.read(cycleContext, path);
 
         } else if (expr.startsWith(PROCESS_VARIABLE_KEY + VARIABLE_SEPARATOR_CHAR_CHAR)) {
             String path = expr.substring((PROCESS_VARIABLE_KEY + VARIABLE_SEPARATOR_CHAR_CHAR).length());
-            return getValueByPath(processVariable, path);
+            return keepReferences ? resolver.readReference(processVariable, path) : resolver.read(processVariable, path);
 
         } else {
-            // No prefix -> treat as lookup into stageOutput
-            return getValueByPath(stageOutput, expr);
+            // No prefix -> treat as lookup into stageOutput; the output is in memory except for values the action
+            // passed as claim check references, the stored one may hold more references
+            Object stored = getValueByPath(storedOutput, expr);
+            if (keepReferences && LargeValueResolver.isReference(stored)) {
+                return stored;
+            }
+            return keepReferences ? resolver.readReference(stageOutput, expr) : resolver.read(stageOutput, expr);
         }
     }
 
@@ -197,27 +299,35 @@ public class StagePostProcessingWorker {
 
     /**
      * Put value into a nested map by dot-delimited path. Creates intermediate maps when needed.
+     *
+     * @return the path of the outermost entry that was written: the given path, or a shorter prefix when an
+     * intermediate map had to be created or replaced there; null when nothing was written
      */
     @SuppressWarnings("unchecked")
-    private void setValueByPath(Map<String, Object> context, String path, Object value) {
-        if (context == null) return;
+    private String setValueByPath(Map<String, Object> context, String path, Object value) {
+        if (context == null) return null;
         String[] keys = path.split("\\.");
         Map<String, Object> current = context;
+        String changed = null;
         for (int i = 0; i < keys.length; i++) {
             String k = keys[i];
             if (i == keys.length - 1) {
                 current.put(k, value);
-                return;
+                return changed != null ? changed : path;
             }
             Object next = current.get(k);
             if (!(next instanceof Map)) {
                 Map<String, Object> newMap = new HashMap<>();
                 current.put(k, newMap);
                 current = newMap;
+                if (changed == null) {
+                    changed = String.join(".", Arrays.copyOfRange(keys, 0, i + 1));
+                }
             } else {
                 current = (Map<String, Object>) next;
             }
         }
+        return changed;
     }
 
     /**
@@ -230,8 +340,7 @@ public class StagePostProcessingWorker {
 
     private Mono<Void> handleErrorAndReThrow(ActivatedJob job, String workflowId, Throwable ex) {
         String errorMessage = "Post-processing job failed. jobKey=" + job.getKey() + " error=" + ex.getMessage();
-        return workflowService.recordWorkerHistory(workflowId, WorkerExecutionStatus.ERROR, errorMessage)
-                .then(camundaService.complete(job, WorkerUtils.prepareErrorResult(errorMessage)))
-                .then(Mono.error(ex));
+        return camundaService.failJob(job, errorMessage, ex, () -> workflowService.recordWorkerHistory(workflowId, WorkerExecutionStatus.ERROR, errorMessage)
+                .then(camundaService.complete(job, WorkerUtils.prepareErrorResult(errorMessage))));
     }
 }
@@ -4,18 +4,19 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.camunda.client.annotation.JobWorker;
 import io.camunda.client.api.response.ActivatedJob;
-import ir.msob.jima.core.commons.exception.datanotfound.DataNotFoundException;
 import ir.msob.jima.core.commons.logger.Logger;
 import ir.msob.jima.core.commons.logger.LoggerFactory;
-import ir.msob.manak.core.service.jima.security.UserService;
 import ir.msob.manak.core.service.jima.service.IdService;
 import ir.msob.manak.domain.model.util.VariableUtils;
 import ir.msob.manak.domain.model.worker.WorkerUtils;
 import ir.msob.manak.domain.model.workflow.WorkerExecutionStatus;
 import ir.msob.manak.domain.model.workflow.workflow.Workflow;
-import ir.msob.manak.domain.model.workflow.workflow.WorkflowDto;
 import ir.msob.manak.domain.model.workflow.workflowspecification.WorkflowSpecification;
 import ir.msob.manak.workflow.camunda.CamundaService;
+import ir.msob.manak.workflow.camunda.JobExecutor;
+import ir.msob.manak.workflow.largevalue.LargeValueResolver;
+import ir.msob.manak.workflow.largevalue.LargeValueStore;
+import ir.msob.manak.workflow.stagehistory.StageHistoryService;
 import ir.msob.manak.workflow.worker.util.WorkflowUtil;
 import ir.msob.manak.workflow.workflow.WorkflowService;
 import lombok.RequiredArgsConstructor;
@@ -36,21 +37,24 @@ public class StagePreProcessingWorker {
     private static final Logger logger = LoggerFactory.getLogger(StagePreProcessingWorker.class);
 
     private final WorkflowService workflowService;
-    private final UserService userService;
+    private final StageHistoryService stageHistoryService;
     private final CamundaService camundaService;
+    private final JobExecutor jobExecutor;
     private final IdService idService;
     private final ObjectMapper objectMapper;
+    private final LargeValueStore largeValueStore;
 
     /**
      * Executes the pre-processing stage of a workflow.
      * Steps:
      * 1. Load workflow by ID
-     * 2. Determine input data for the stage
-     * 3. Create stage history with input data
-     * 4. Update workflow in DB
-     * 5. Record worker history and prepare process variables for Camunda
+     * 2. Determine input data for the stage, loading offloaded context values only where a mapping reads them
+     * 3. Create stage history with input data, offloading oversized values
+     * 4. Insert the stage history into its own collection (the workflow document is not rewritten)
+     * 5. Record worker history and prepare process variables for Camunda (oversized inputs as references with the claim check)
      */
-    @JobWorker(type = "stage-pre-processing", autoComplete = false)
+    @JobWorker(type = "stage-pre-processing", autoComplete = false,
+            fetchVariables = {WORKFLOW_ID_KEY, CYCLE_ID_KEY, STAGE_KEY_KEY, JOB_COMPLETED_AT_KEY})
     public void execute(final ActivatedJob job) {
         Map<String, Object> vars = job.getVariablesAsMap();
         String workflowId = VariableUtils.safeString(vars.get(WORKFLOW_ID_KEY));
@@ -59,70 +63,63 @@ public class StagePreProcessingWorker {
 
         logger.info("Starting stage pre-processing job. jobKey={}, workflowId={}, stageKey={}", job.getKey(), workflowId, stageKey);
 
-        workflowService.getOne(workflowId, userService.getSystemUser())
-                .switchIfEmpty(Mono.error(new DataNotFoundException("Workflow not found: " + workflowId)))
-                .flatMap(workflow -> determineInputData(workflow, cycleId, stageKey, vars)
-                        .flatMap(inputData -> createStageHistory(workflow, stageKey, inputData)
-                                .flatMap(stageHistory -> {
-                                    // Add stage history to the corresponding cycle
-                                    WorkflowUtil.findCycle(workflow, cycleId)
-                                            .getStagesHistory()
-                                            .add(stageHistory);
-
-                                    return workflowService.update(workflow, userService.getSystemUser())
-                                            .thenReturn(stageHistory);
-                                })))
-                .doOnSuccess(stage -> logger.info("Pre-processing stage saved successfully. stageId={}", stage.getId()))
-                .flatMap(stageHistory -> recordWorkerHistory(workflowId)
-                        .then(prepareResult(stageHistory)))
+        jobExecutor.execute(job, () -> workflowService.getCycleSlice(workflowId, cycleId)
+                .flatMap(workflow -> largeValueStore.withResolver(resolver ->
+                                // the JSON round trips of the context clones run off the mongo driver's event loop
+                                Mono.fromCallable(() -> determineInputData(workflow, cycleId, stageKey, vars, resolver))
+                                        .subscribeOn(jobExecutor.getBlockingScheduler()))
+                        // the stage history keeps oversized inputs as references; with the claim check Camunda gets the same
+                        // references and the action worker loads them, otherwise Camunda gets the full input
+                        .flatMap(inputData -> largeValueStore.offload(inputData, workflowId)
+                                .flatMap(storedInput -> stageHistoryService.save(workflowId, cycleId, createStageHistory(workflow, stageKey, storedInput))
+                                        .doOnSuccess(stage -> logger.info("Pre-processing stage saved successfully. stageId={}", stage.getId()))
+                                        .flatMap(stageHistory -> recordWorkerHistory(workflowId)
+                                                .then(prepareResult(stageHistory, camundaService.isClaimCheckEnabled() ? storedInput : inputData))))))
                 .flatMap(result -> camundaService.complete(job, result))
                 .doOnSuccess(v -> logger.info("Pre-processing job completed successfully. jobKey={}", job.getKey()))
                 .doOnError(ex -> logger.error("Pre-processing job failed. jobKey={}, error={}", job.getKey(), ex.getMessage(), ex))
-                .onErrorResume(ex -> handleErrorAndReThrow(job, workflowId, ex))
-                .subscribe();
+                .onErrorResume(ex -> handleErrorAndReThrow(job, workflowId, ex)));
     }
 
     /**
      * Creates a new StageHistory object for the stage.
      */
-    private Mono<Workflow.StageHistory> createStageHistory(WorkflowDto workflow, String stageKey, Map<String, Object> inputData) {
+    private Workflow.StageHistory createStageHistory(Workflow workflow, String stageKey, Map<String, Object> inputData) {
         WorkflowSpecification.StageSpec stageSpec = WorkflowUtil.findStageSpecByKey(workflow, stageKey);
-        return Mono.just(Workflow.StageHistory.builder()
+        return Workflow.StageHistory.builder()
                 .id(idService.newId())
                 .stage(stageSpec.getStage())
                 .executionStatus(Workflow.StageExecutionStatus.INITIALIZED)
                 .stageInput(inputData)
                 .startedAt(Instant.now())
-                .build());
+                .build();
     }
 
     /**
      * Determines input data for a stage according to stage input mappings.
      */
-    private Mono<Map<String, Object>> determineInputData(Workflow workflow, String cycleId, String stageKey, Map<String, Object> processVariable) {
-        return Mono.fromSupplier(() -> {
-            Map<String, Object> workflowContext = workflow.getContext();
-            Workflow.Cycle cycle = WorkflowUtil.findCycle(workflow, cycleId);
-            Map<String, Object> cycleContext = cycle.getContext();
-            Map<String, Object> specificationContext = clone(workflow.getSpecification().getContext());
-            WorkflowSpecification.StageSpec stageSpec = WorkflowUtil.findStageSpecByKey(workflow, stageKey);
-            Map<String, Object> stageContext = clone(stageSpec.getStage().getContext());
-
-            Map<String, Object> inputData = new HashMap<>();
-            inputData.putAll(specificationContext);
-            inputData.putAll(stageContext);
-
-            if (stageSpec.getInputMapping() != null) {
-                stageSpec.getInputMapping().forEach((inputKey, mappingValue) -> {
-                    Object value = resolveMapping(mappingValue, workflowContext, cycleContext, processVariable);
-                    if (value != null) {
-                        inputData.put(inputKey, value);
-                    }
-                });
-            }
-            logger.debug("Determined input data for stage '{}': {}", stageKey, inputData.keySet());
-            return inputData;
-        });
+    private Map<String, Object> determineInputData(Workflow workflow, String cycleId, String stageKey, Map<String, Object> processVariable, LargeValueResolver resolver) {
+        Map<String, Object> workflowContext = workflow.getContext();
+        Workflow.Cycle cycle = WorkflowUtil.findCycle(workflow, cycleId);
+        Map<String, Object> cycleContext = cycle.getContext();
+        Map<String, Object> specificationContext = clone(workflow.getSpecification().getContext());
+        WorkflowSpecification.StageSpec stageSpec = WorkflowUtil.findStageSpecByKey(workflow, stageKey);
+        Map<String, Object> stageContext = clone(stageSpec.getStage().getContext());
+
+        Map<String, Object> inputData = new HashMap<>();
+        inputData.putAll(specificationContext);
+        inputData.putAll(stageContext);
+
+        if (stageSpec.getInputMapping() != null) {
+            stageSpec.getInputMapping().forEach((inputKey, mappingValue) -> {
+                Object value = resolveMapping(mappingValue, workflowContext, cycleContext, processVariable, resolver);
+                if (value != null) {
+                    inputData.put(inputKey, value);
+                }
+            });
+        }
+        logger.debug("Determined input data for stage '{}': {}", stageKey, inputData.keySet());
+        return inputData;
     }
 
     @SneakyThrows
@@ -141,7 +138,8 @@ public class StagePreProcessingWorker {
     private Object resolveMapping(Object mappingValue,
                                   Map<String, Object> workflowContext,
                                   Map<String, Object> cycleContext,
-                                  Map<String, Object> processVariable) {
+                                  Map<String, Object> processVariable,
+                                  LargeValueResolver resolver) {
         if (!(mappingValue instanceof String mappingStr)) {
             return mappingValue; // literal value
         }
@@ -152,30 +150,15 @@ public class StagePreProcessingWorker {
 
         String expr = mappingStr.substring(1);
         if (expr.startsWith(WORKFLOW_CONTEXT_KEY + VARIABLE_SEPARATOR_CHAR_CHAR)) {
-            return getValueByPath(workflowContext, expr.substring((WORKFLOW_CONTEXT_KEY + VARIABLE_SEPARATOR_CHAR_CHAR).length()));
+            return resolver.read(workflowContext, expr.substring((WORKFLOW_CONTEXT_KEY + VARIABLE_SEPARATOR_CHAR_CHAR).length()));
         } else if (expr.startsWith(CYCLE_CONTEXT_KEY + VARIABLE_SEPARATOR_CHAR_CHAR)) {
-            return getValueByPath(cycleContext, expr.substring((CYCLE_CONTEXT_KEY + VARIABLE_SEPARATOR_CHAR_CHAR).length()));
+            return resolver.read(cycleContext, expr.substring((CYCLE_CONTEXT_KEY + VARIABLE_SEPARATOR_CHAR_CHAR).length()));
         } else if (expr.startsWith(PROCESS_VARIABLE_KEY + VARIABLE_SEPARATOR_CHAR_CHAR)) {
-            return getValueByPath(processVariable, expr.substring((PROCESS_VARIABLE_KEY + VARIABLE_SEPARATOR_CHAR_CHAR).length()));
+            return resolver.read(processVariable, expr.substring((PROCESS_VARIABLE_KEY + VARIABLE_SEPARATOR_CHAR_CHAR).length()));
         }
         return null;
     }
 
-    /**
-     * Reads a nested value from a Map using a dot-delimited path.
-     */
-    @SuppressWarnings("unchecked")
-    private Object getValueByPath(Map<String, Object> context, String path) {
-        String[] keys = path.split("\\.");
-        Object current = context;
-        for (String key : keys) {
-            if (!(current instanceof Map)) return null;
-            current = ((Map<String, Object>) current).get(key);
-            if (current == null) return null;
-        }
-        return current;
-    }
-
     /**
      * Records worker history for the stage.
      */
@@ -186,12 +169,12 @@ public class StagePreProcessingWorker {
     /**
      * Prepares the result map to be returned to Camunda.
      */
-    private Mono<Map<String, Object>> prepareResult(Workflow.StageHistory stageHistory) {
+    private Mono<Map<String, Object>> prepareResult(Workflow.StageHistory stageHistory, Map<String, Object> inputData) {
         return Mono.just(Map.of(
                 STAGE_HISTORY_ID_KEY, stageHistory.getId(),
                 STAGE_EXECUTION_STATUS_KEY, Workflow.StageExecutionStatus.INITIALIZED,
                 STAGE_EXECUTION_ERROR_KEY, "",
-                PARAMS_KEY, stageHistory.getStageInput()
+                PARAMS_KEY, inputData
         ));
     }
 
@@ -200,8 +183,7 @@ public class StagePreProcessingWorker {
      */
     private Mono<Void> handleErrorAndReThrow(ActivatedJob job, String workflowId, Throwable ex) {
         String errorMessage = "Pre-processing job failed. jobKey=" + job.getKey() + " error=" + ex.getMessage();
-        return workflowService.recordWorkerHistory(workflowId, WorkerExecutionStatus.ERROR, errorMessage)
-                .then(camundaService.complete(job, WorkerUtils.prepareErrorResult(errorMessage)))
-                .then(Mono.error(ex));
+        return camundaService.failJob(job, errorMessage, ex, () -> workflowService.recordWorkerHistory(workflowId, WorkerExecutionStatus.ERROR, errorMessage)
+                .then(camundaService.complete(job, WorkerUtils.prepareErrorResult(errorMessage))));
     }
 }
@@ -2,16 +2,15 @@ package ir.msob.manak.workflow.worker.core;
 
 import io.camunda.client.annotation.JobWorker;
 import io.camunda.client.api.response.ActivatedJob;
-import ir.msob.jima.core.commons.exception.datanotfound.DataNotFoundException;
 import ir.msob.jima.core.commons.logger.Logger;
 import ir.msob.jima.core.commons.logger.LoggerFactory;
-import ir.msob.manak.core.service.jima.security.UserService;
 import ir.msob.manak.domain.model.util.VariableUtils;
 import ir.msob.manak.domain.model.worker.WorkerUtils;
 import ir.msob.manak.domain.model.workflow.WorkerExecutionStatus;
 import ir.msob.manak.domain.model.workflow.workflow.Workflow;
 import ir.msob.manak.domain.model.workflow.workflow.WorkflowDto;
 import ir.msob.manak.workflow.camunda.CamundaService;
+import ir.msob.manak.workflow.camunda.JobExecutor;
 import ir.msob.manak.workflow.workflow.WorkflowService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
@@ -20,6 +19,7 @@ import reactor.core.publisher.Mono;
 import java.time.Instant;
 import java.util.Map;
 
+import static ir.msob.manak.workflow.worker.Constants.JOB_COMPLETED_AT_KEY;
 import static ir.msob.manak.workflow.worker.Constants.WORKFLOW_ID_KEY;
 
 @Component
@@ -29,41 +29,38 @@ public class WorkflowCompleteSuccessWorker {
     private static final Logger logger = LoggerFactory.getLogger(WorkflowCompleteSuccessWorker.class);
 
     private final WorkflowService workflowService;
-    private final UserService userService;
     private final CamundaService camundaService;
+    private final JobExecutor jobExecutor;
 
     /**
      * Executes the workflow completion post-processing.
      * Marks workflow as COMPLETED and updates the DB.
      * Sends empty result map back to Camunda process.
      */
-    @JobWorker(type = "workflow-complete-success", autoComplete = false)
+    @JobWorker(type = "workflow-complete-success", autoComplete = false,
+            fetchVariables = {WORKFLOW_ID_KEY, JOB_COMPLETED_AT_KEY})
     public void execute(final ActivatedJob job) {
         Map<String, Object> vars = job.getVariablesAsMap();
         String workflowId = VariableUtils.safeString(vars.get(WORKFLOW_ID_KEY));
 
         logger.info("Starting workflow completion job. jobKey={}, workflowId={}", job.getKey(), workflowId);
 
-         workflowService.getOne(workflowId, userService.getSystemUser())
-                .switchIfEmpty(Mono.error(new DataNotFoundException("Workflow not found: " + workflowId)))
-                .flatMap(this::prepareWorkflow)
-                .flatMap(workflow -> workflowService.update(workflow, userService.getSystemUser()))
+        jobExecutor.execute(job, () -> workflowService.updateWorkflow(workflowId, this::prepareWorkflow)
                 .flatMap(this::prepareResult)
                 .flatMap(result -> camundaService.complete(job, result))
                 .doOnSuccess(v -> logger.info("Workflow completion job finished successfully. jobKey={}", job.getKey()))
                 .doOnError(ex -> logger.error("Workflow completion job failed. jobKey={}, error={}", job.getKey(), ex.getMessage(), ex))
-                .onErrorResume(ex -> handleErrorAndReThrow(job, workflowId, ex))
-                .subscribe();
+                .onErrorResume(ex -> handleErrorAndReThrow(job, workflowId, ex)));
     }
 
     /**
      * Marks the workflow as COMPLETED and sets endedAt timestamp.
      */
-    private Mono<WorkflowDto> prepareWorkflow(WorkflowDto workflow) {
+    private WorkflowDto prepareWorkflow(WorkflowDto workflow) {
         workflow.setEndedAt(Instant.now());
         workflow.setExecutionStatus(Workflow.WorkflowExecutionStatus.COMPLETED);
         logger.debug("Workflow marked as COMPLETED. workflowId={}", workflow.getId());
-        return Mono.just(workflow);
+        return workflow;
     }
 
     /**
@@ -79,8 +76,7 @@ public class WorkflowCompleteSuccessWorker {
      */
     private Mono<Void> handleErrorAndReThrow(ActivatedJob job, String workflowId, Throwable ex) {
         String errorMessage = "Workflow completion job failed. jobKey=" + job.getKey() + " error=" + ex.getMessage();
-        return workflowService.recordWorkerHistory(workflowId, WorkerExecutionStatus.ERROR, errorMessage)
-                .then(camundaService.complete(job, WorkerUtils.prepareErrorResult(errorMessage)))
-                .then(Mono.error(ex));
+        return camundaService.failJob(job, errorMessage, ex, () -> workflowService.recordWorkerHistory(workflowId, WorkerExecutionStatus.ERROR, errorMessage)
+                .then(camundaService.complete(job, WorkerUtils.prepareErrorResult(errorMessage))));
     }
 }
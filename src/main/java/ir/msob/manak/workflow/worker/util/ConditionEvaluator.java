@@ -2,7 +2,7 @@ package ir.msob.manak.workflow.worker.util;
 
 import ir.msob.jima.core.commons.logger.Logger;
 import ir.msob.jima.core.commons.logger.LoggerFactory;
-import org.apache.logging.log4j.util.Strings;
+import ir.msob.manak.workflow.largevalue.LargeValueResolver;
 import org.springframework.stereotype.Component;
 
 import java.util.*;
@@ -17,12 +17,14 @@ public class ConditionEvaluator {
 
     /**
      * Evaluate all conditions in the "on" map. All must be true (logical AND).
+     * Values are read through the resolver, so offloaded values are loaded only when a condition touches them.
      */
     public boolean evaluateConditions(Map<String, Object> conditions,
                                       Map<String, Object> workflowContext,
                                       Map<String, Object> cycleContext,
                                       Map<String, Object> processVars,
-                                      Map<String, Object> stageOutput) {
+                                      Map<String, Object> stageOutput,
+                                      LargeValueResolver resolver) {
 
         if (conditions == null || conditions.isEmpty()) return false;
 
@@ -30,8 +32,8 @@ public class ConditionEvaluator {
             String rawKey = e.getKey();
             Object expected = e.getValue();
 
-            Object actual = resolveValueFromConditionKey(rawKey, workflowContext, cycleContext, processVars, stageOutput);
-            boolean ok = evaluateComparison(actual, expected, workflowContext, cycleContext, processVars, stageOutput);
+            Object actual = resolveValueFromConditionKey(rawKey, workflowContext, cycleContext, processVars, stageOutput, resolver);
+            boolean ok = evaluateComparison(actual, expected, workflowContext, cycleContext, processVars, stageOutput, resolver);
             if (!ok) {
                 logger.debug("Condition failed. key='{}' actual='{}' expected='{}'", rawKey, actual, expected);
                 return false;
@@ -54,22 +56,23 @@ public class ConditionEvaluator {
                                                Map<String, Object> workflowContext,
                                                Map<String, Object> cycleContext,
                                                Map<String, Object> processVars,
-                                               Map<String, Object> stageOutput) {
+                                               Map<String, Object> stageOutput,
+                                               LargeValueResolver resolver) {
         if (rawKey == null) return null;
         String key = rawKey.startsWith(VARIABLE_START_CHAR) ? rawKey.substring(1) : rawKey;
 
         if (key.startsWith(WORKFLOW_CONTEXT_KEY + VARIABLE_SEPARATOR_CHAR_CHAR)) {
             String path = key.substring((WORKFLOW_CONTEXT_KEY + VARIABLE_SEPARATOR_CHAR_CHAR).length());
-            return getValueByPath(workflowContext, path);
+            return resolver.read(workflowContext, path);
         } else if (key.startsWith(CYCLE_CONTEXT_KEY + VARIABLE_SEPARATOR_CHAR_CHAR)) {
             String path = key.substring((CYCLE_CONTEXT_KEY + VARIABLE_SEPARATOR_CHAR_CHAR).length());
-            return getValueByPath(cycleContext, path);
+            return resolver.read(cycleContext, path);
         } else if (key.startsWith(PROCESS_VARIABLE_KEY + VARIABLE_SEPARATOR_CHAR_CHAR)) {
             String path = key.substring((PROCESS_VARIABLE_KEY + VARIABLE_SEPARATOR_CHAR_CHAR).length());
-            return getValueByPath(processVars, path);
+            return resolver.read(processVars, path);
         } else {
             // no prefix -> treat as stageOutput
-            return getValueByPath(stageOutput, key);
+            return resolver.read(stageOutput, key);
         }
     }
 
@@ -89,7 +92,8 @@ public class ConditionEvaluator {
                                        Map<String, Object> workflowContext,
                                        Map<String, Object> cycleContext,
                                        Map<String, Object> processVars,
-                                       Map<String, Object> stageOutput) {
+                                       Map<String, Object> stageOutput,
+                                       LargeValueResolver resolver) {
         // null handling
         if (expected == null) {
             return actual == null;
@@ -101,7 +105,7 @@ public class ConditionEvaluator {
             for (Map.Entry<String, Object> op : opMap.entrySet()) {
                 String operator = op.getKey();
                 Object operand = op.getValue();
-                boolean res = evaluateOperator(actual, operator, operand, workflowContext, cycleContext, processVars, stageOutput);
+                boolean res = evaluateOperator(actual, operator, operand, workflowContext, cycleContext, processVars, stageOutput, resolver);
                 if (!res) return false;
             }
             return true;
@@ -109,8 +113,8 @@ public class ConditionEvaluator {
 
         // If expected is a String reference like "$workflowContext.x" -> resolve it
         if (expected instanceof String expectedString && expectedString.startsWith(VARIABLE_START_CHAR)) {
-            Object resolved = resolveValueFromConditionKey(expectedString, workflowContext, cycleContext, processVars, stageOutput);
-            return evaluateComparison(actual, resolved, workflowContext, cycleContext, processVars, stageOutput);
+            Object resolved = resolveValueFromConditionKey(expectedString, workflowContext, cycleContext, processVars, stageOutput, resolver);
+            return evaluateComparison(actual, resolved, workflowContext, cycleContext, processVars, stageOutput, resolver);
         }
 
         // primitive comparison
@@ -132,10 +136,11 @@ public class ConditionEvaluator {
                                      Map<String, Object> workflowContext,
                                      Map<String, Object> cycleContext,
                                      Map<String, Object> processVars,
-                                     Map<String, Object> stageOutput) {
+                                     Map<String, Object> stageOutput,
+                                     LargeValueResolver resolver) {
         // If operand is a reference string like "$workflowContext.x", resolve it first
         if (operand instanceof String operandString && (operandString).startsWith(VARIABLE_START_CHAR)) {
-            operand = resolveValueFromConditionKey(operandString, workflowContext, cycleContext, processVars, stageOutput);
+            operand = resolveValueFromConditionKey(operandString, workflowContext, cycleContext, processVars, stageOutput, resolver);
         }
 
         switch (operator) {
@@ -218,22 +223,4 @@ public class ConditionEvaluator {
         double db = b.doubleValue();
         return Double.compare(da, db);
     }
-
-    /**
-     * Read nested value from a Map using dot-delimited path.
-     * Returns null if any path segment is missing or non-map encountered.
-     */
-    @SuppressWarnings("unchecked")
-    private Object getValueByPath(Map<String, Object> context, String path) {
-        if (context == null) return null;
-        if (Strings.isBlank(path)) return null;
-        String[] keys = path.split("\\.");
-        Object current = context;
-        for (String key : keys) {
-            if (!(current instanceof Map)) return null;
-            current = ((Map<String, Object>) current).get(key);
-            if (current == null) return null;
-        }
-        return current;
-    }
 }
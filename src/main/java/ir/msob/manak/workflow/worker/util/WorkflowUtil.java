@@ -30,6 +30,10 @@ public class WorkflowUtil {
                 .orElseThrow(() -> new DataNotFoundException("First stage not found in workflow specification"));
     }
 
+    /**
+     * Find a stage history embedded in the workflow document. Only workflows started before stage histories
+     * moved to their own collection have them; use {@code StageHistoryService} for everything else.
+     */
     public static Workflow.StageHistory findStageHistory(Workflow workflowDto, String cycleId, String stageHistoryId) {
         return findCycle(workflowDto, cycleId)
                 .getStagesHistory()
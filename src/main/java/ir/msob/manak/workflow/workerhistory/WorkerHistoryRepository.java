@@ -0,0 +1,93 @@
+package ir.msob.manak.workflow.workerhistory;
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertOneModel;
+import ir.msob.manak.workflow.mongo.IndexContributor;
+import ir.msob.manak.workflow.mongo.ManagedIndex;
+import ir.msob.manak.workflow.mongo.MongoBulkWriteSink;
+import ir.msob.manak.workflow.mongo.MongoDocumentMover;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The worker history of archived workflows is moved to {@link #ARCHIVE_COLLECTION_NAME}, a plain collection;
+ * reads fall through to it.
+ */
+@Repository
+public class WorkerHistoryRepository implements IndexContributor {
+    public static final String ARCHIVE_COLLECTION_NAME = WorkflowWorkerHistory.COLLECTION_NAME + "Archive";
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final MongoBulkWriteSink bulkWriteSink;
+    private final MongoDocumentMover documentMover;
+
+    public WorkerHistoryRepository(ReactiveMongoTemplate reactiveMongoTemplate, MongoBulkWriteSink bulkWriteSink, MongoDocumentMover documentMover) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.bulkWriteSink = bulkWriteSink;
+        this.documentMover = documentMover;
+    }
+
+    /**
+     * Insert through the {@link MongoBulkWriteSink}, batched with the history writes of other jobs.
+     */
+    public Mono<Void> insert(WorkflowWorkerHistory workerHistory) {
+        Document document = new Document();
+        reactiveMongoTemplate.getConverter().write(workerHistory, document);
+        return bulkWriteSink.write(reactiveMongoTemplate.getCollectionName(WorkflowWorkerHistory.class),
+                new InsertOneModel<>(document));
+    }
+
+    /**
+     * Page through the worker history of one workflow, newest first. The archiver moves the history of a workflow as
+     * a whole, so all pages are read from one collection: the hot one while it holds any entry of the workflow,
+     * the archive otherwise.
+     */
+    public Flux<WorkflowWorkerHistory> findPage(String workflowId, int page, int size) {
+        Query byWorkflow = Query.query(Criteria.where(WorkflowWorkerHistory.FN.workflowId).is(workflowId));
+        Query query = Query.of(byWorkflow)
+                .with(Sort.by(Sort.Direction.DESC, WorkflowWorkerHistory.FN.timestamp))
+                .skip((long) page * size)
+                .limit(size);
+        return reactiveMongoTemplate.exists(byWorkflow, WorkflowWorkerHistory.class)
+                .flatMapMany(hot -> hot
+                        ? reactiveMongoTemplate.find(query, WorkflowWorkerHistory.class)
+                        : reactiveMongoTemplate.find(query, WorkflowWorkerHistory.class, ARCHIVE_COLLECTION_NAME));
+    }
+
+    /**
+     * Move the worker history of a workflow to {@link #ARCHIVE_COLLECTION_NAME}. Only for workflows that no
+     * longer run; entries written during the move stay in the hot collection until the next one.
+     *
+     * @return number of moved entries
+     */
+    public Mono<Long> archive(String workflowId, int batchSize) {
+        return documentMover.move(WorkflowWorkerHistory.COLLECTION_NAME, ARCHIVE_COLLECTION_NAME,
+                Filters.eq(WorkflowWorkerHistory.FN.workflowId, workflowId), batchSize);
+    }
+
+    /**
+     * The time-series collection itself is created from the entity mapping by the index manager before this index.
+     */
+    @Override
+    public Collection<ManagedIndex> getIndexes() {
+        return List.of(
+                new ManagedIndex(WorkflowWorkerHistory.class, pageIndex()),
+                new ManagedIndex(WorkflowWorkerHistory.class, ARCHIVE_COLLECTION_NAME, pageIndex()));
+    }
+
+    private static Index pageIndex() {
+        return new Index()
+                .on(WorkflowWorkerHistory.FN.workflowId, Sort.Direction.ASC)
+                .on(WorkflowWorkerHistory.FN.timestamp, Sort.Direction.DESC);
+    }
+}
@@ -0,0 +1,38 @@
+package ir.msob.manak.workflow.workerhistory;
+
+import ir.msob.manak.core.service.jima.security.UserService;
+import ir.msob.manak.domain.model.workflow.workflow.Workflow;
+import ir.msob.manak.workflow.workflow.WorkflowRestResource;
+import ir.msob.manak.workflow.workflow.WorkflowService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.security.Principal;
+import java.util.Optional;
+
+/**
+ * Pages through the full worker history of a workflow; the workflow document only keeps the latest entries.
+ * The caller must be able to read the workflow itself.
+ */
+@RestController
+@RequestMapping(WorkflowRestResource.BASE_URI + "/{workflowId}/workers-history")
+@RequiredArgsConstructor
+public class WorkerHistoryRestResource {
+    private static final int MAX_PAGE_SIZE = 500;
+
+    private final WorkerHistoryService workerHistoryService;
+    private final WorkflowService workflowService;
+    private final UserService userService;
+
+    @GetMapping
+    public Flux<Workflow.WorkerHistory> getPage(@PathVariable String workflowId,
+                                                @RequestParam(defaultValue = "0") int page,
+                                                @RequestParam(defaultValue = "50") int size,
+                                                Principal principal) {
+        return Mono.defer(() -> workflowService.getOne(workflowId, userService.getUser(Optional.ofNullable(principal))))
+                .thenMany(Flux.defer(() -> workerHistoryService.getPage(workflowId, Math.max(page, 0),
+                        Math.min(Math.max(size, 1), MAX_PAGE_SIZE))));
+    }
+}
@@ -0,0 +1,32 @@
+package ir.msob.manak.workflow.workerhistory;
+
+import ir.msob.manak.domain.model.workflow.workflow.Workflow;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@Service
+@RequiredArgsConstructor
+public class WorkerHistoryService {
+
+    private final WorkerHistoryRepository repository;
+
+    public Mono<Void> record(String workflowId, Workflow.WorkerHistory workerHistory) {
+        return repository.insert(WorkflowWorkerHistory.builder()
+                        .workflowId(workflowId)
+                        .executionStatus(workerHistory.getExecutionStatus())
+                        .error(workerHistory.getError())
+                        .timestamp(workerHistory.getTimestamp())
+                        .build());
+    }
+
+    public Flux<Workflow.WorkerHistory> getPage(String workflowId, int page, int size) {
+        return repository.findPage(workflowId, page, size)
+                .map(history -> Workflow.WorkerHistory.builder()
+                        .executionStatus(history.getExecutionStatus())
+                        .error(history.getError())
+                        .timestamp(history.getTimestamp())
+                        .build());
+    }
+}
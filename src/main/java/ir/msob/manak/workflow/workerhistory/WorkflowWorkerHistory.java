@@ -0,0 +1,34 @@
+package ir.msob.manak.workflow.workerhistory;
+
+import ir.msob.manak.domain.model.workflow.WorkerExecutionStatus;
+import lombok.*;
+import lombok.experimental.FieldNameConstants;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.TimeSeries;
+import org.springframework.data.mongodb.core.timeseries.Granularity;
+
+import java.time.Instant;
+
+/**
+ * Full, append-only worker history of all workflows, kept in a time-series collection.
+ * The workflow document itself only retains the most recent entries.
+ */
+@Document(collection = WorkflowWorkerHistory.COLLECTION_NAME)
+@TimeSeries(timeField = "timestamp", metaField = "workflowId", granularity = Granularity.SECONDS)
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldNameConstants(innerTypeName = "FN")
+public class WorkflowWorkerHistory {
+    public static final String COLLECTION_NAME = "WorkflowWorkerHistory";
+
+    @Id
+    private String id;
+    private String workflowId;
+    private WorkerExecutionStatus executionStatus;
+    private String error;
+    private Instant timestamp;
+}
@@ -0,0 +1,71 @@
+package ir.msob.manak.workflow.workflow;
+
+import ir.msob.manak.domain.model.workflow.workflow.WorkflowDto;
+import lombok.Getter;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.function.Function;
+
+/**
+ * A workflow mutation waiting to be written, together with the outcome reported back to its caller.
+ * The outcome of the last application wins, because a conflicting write applies the mutation again.
+ */
+class PendingMutation<R> {
+    private final Function<WorkflowDto, R> mutation;
+    @Getter
+    private final boolean recordWorkerHistory;
+    private final Sinks.One<R> sink = Sinks.one();
+    private R result;
+    private Throwable failure;
+
+    PendingMutation(Function<WorkflowDto, R> mutation, boolean recordWorkerHistory) {
+        this.mutation = mutation;
+        this.recordWorkerHistory = recordWorkerHistory;
+    }
+
+    /**
+     * Apply the mutation to the loaded workflow, capturing its result or failure.
+     *
+     * @return true when the mutation succeeded
+     */
+    boolean apply(WorkflowDto workflowDto) {
+        try {
+            result = mutation.apply(workflowDto);
+            failure = null;
+            return true;
+        } catch (RuntimeException e) {
+            result = null;
+            failure = e;
+            return false;
+        }
+    }
+
+    /**
+     * Outcome of the last application; call only after the write it belongs to is durable.
+     */
+    Mono<R> outcome() {
+        return failure != null ? Mono.error(failure) : Mono.justOrEmpty(result);
+    }
+
+    /**
+     * Report the outcome to a caller waiting on {@link #asMono()}.
+     */
+    void complete() {
+        if (failure != null) {
+            sink.tryEmitError(failure);
+        } else if (result != null) {
+            sink.tryEmitValue(result);
+        } else {
+            sink.tryEmitEmpty();
+        }
+    }
+
+    void fail(Throwable error) {
+        sink.tryEmitError(error);
+    }
+
+    Mono<R> asMono() {
+        return sink.asMono();
+    }
+}
@@ -0,0 +1,18 @@
+package ir.msob.manak.workflow.workflow;
+
+import ir.msob.manak.domain.model.workflow.workflow.Workflow;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * A workflow together with the storage metadata kept outside the domain model: the optimistic-lock version
+ * it was read at ({@link WorkflowRepository#VERSION_FIELD}) and the specification snapshot it references
+ * ({@link WorkflowRepository#SPECIFICATION_SNAPSHOT_FIELD}, null for workflows with an embedded specification).
+ */
+@Getter
+@RequiredArgsConstructor
+public class VersionedWorkflow {
+    private final Workflow workflow;
+    private final long version;
+    private final String specificationSnapshotId;
+}
@@ -0,0 +1,102 @@
+package ir.msob.manak.workflow.workflow;
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOptions;
+import ir.msob.manak.domain.model.workflow.workflow.Workflow;
+import ir.msob.manak.workflow.compression.ContextCompressionCodec;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.BasicQuery;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.Date;
+
+/**
+ * Cold storage for completed workflows, outside the hot {@code Workflow} collection.
+ * <p>
+ * An archived workflow keeps its id. It is stored either as the plain document or, when compressed, as
+ * {@code {_id, endedAt, archivedAt, payload: <deflated document>}}.
+ */
+@Repository
+public class WorkflowArchiveRepository {
+    public static final String COLLECTION_NAME = "WorkflowArchive";
+    private static final String PAYLOAD_FIELD = "payload";
+    private static final String ARCHIVED_AT_FIELD = "archivedAt";
+    private static final ReplaceOptions UPSERT = new ReplaceOptions().upsert(true);
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final WorkflowRepository workflowRepository;
+    private final ContextCompressionCodec compressionCodec;
+
+    public WorkflowArchiveRepository(ReactiveMongoTemplate reactiveMongoTemplate, WorkflowRepository workflowRepository, ContextCompressionCodec compressionCodec) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.workflowRepository = workflowRepository;
+        this.compressionCodec = compressionCodec;
+    }
+
+    /**
+     * Completed workflows in the hot collection that ended before the cutoff, oldest first, in stored form.
+     */
+    public Flux<Document> findArchivable(Instant endedBefore, int limit) {
+        Query query = Query.query(Criteria.where(Workflow.FN.executionStatus).is(Workflow.WorkflowExecutionStatus.COMPLETED)
+                .and(Workflow.FN.endedAt).lt(endedBefore));
+        BasicQuery mapped = new BasicQuery(workflowRepository.mapQuery(query));
+        mapped.setSortObject(new Document(Workflow.FN.endedAt, 1));
+        mapped.limit(limit);
+        return reactiveMongoTemplate.find(mapped, Document.class, workflowRepository.getWorkflowCollectionName());
+    }
+
+    /**
+     * Copy the workflow to the archive and remove it from the hot collection, as long as it was not changed since it
+     * was read. A changed workflow keeps living in the hot collection and its archive copy is dropped.
+     *
+     * @return true when the workflow was moved
+     */
+    public Mono<Boolean> archive(Document workflow, boolean compress) {
+        Object id = workflow.get(WorkflowRepository.MONGO_ID);
+        Document archived = compress
+                ? new Document(WorkflowRepository.MONGO_ID, id)
+                .append(Workflow.FN.endedAt, workflow.get(Workflow.FN.endedAt))
+                .append(PAYLOAD_FIELD, compressionCodec.pack(workflow))
+                : new Document(workflow);
+        archived.put(ARCHIVED_AT_FIELD, new Date());
+
+        Document unchanged = new Document(WorkflowRepository.MONGO_ID, id);
+        unchanged.putAll(workflowRepository.mapQuery(Query.query(
+                WorkflowRepository.versionCriteria(WorkflowRepository.versionOf(workflow)))));
+
+        return reactiveMongoTemplate.getCollection(COLLECTION_NAME)
+                .flatMap(archive -> Mono.from(archive.replaceOne(Filters.eq(WorkflowRepository.MONGO_ID, id), archived, UPSERT))
+                        .then(reactiveMongoTemplate.getCollection(workflowRepository.getWorkflowCollectionName()))
+                        .flatMap(hot -> Mono.from(hot.deleteOne(unchanged))
+                                .flatMap(deleted -> deleted.getDeletedCount() > 0
+                                        ? Mono.just(true)
+                                        // changed in between (still there) -> drop the copy; already moved by another instance -> keep it
+                                        : Mono.from(hot.countDocuments(Filters.eq(WorkflowRepository.MONGO_ID, id)))
+                                        .flatMap(remaining -> remaining > 0
+                                                ? Mono.from(archive.deleteOne(Filters.eq(WorkflowRepository.MONGO_ID, id))).thenReturn(false)
+                                                : Mono.just(false)))));
+    }
+
+    /**
+     * Read an archived workflow, decoded back to the form it had in the hot collection.
+     */
+    public Mono<VersionedWorkflow> findById(String workflowId) {
+        return reactiveMongoTemplate.getCollection(COLLECTION_NAME)
+                .flatMap(archive -> Mono.from(archive.find(Filters.eq(WorkflowRepository.MONGO_ID, WorkflowRepository.toStoredId(workflowId))).first()))
+                .map(archived -> {
+                    Document workflow = archived.get(PAYLOAD_FIELD) instanceof Binary payload
+                            ? compressionCodec.unpack(payload)
+                            : archived;
+                    workflow.remove(ARCHIVED_AT_FIELD);
+                    compressionCodec.decompress(workflow);
+                    return workflowRepository.toVersionedWorkflow(workflow);
+                });
+    }
+}
@@ -0,0 +1,124 @@
+package ir.msob.manak.workflow.workflow;
+
+import ir.msob.jima.core.commons.logger.Logger;
+import ir.msob.jima.core.commons.logger.LoggerFactory;
+import ir.msob.manak.workflow.largevalue.LargeValueResolver;
+import ir.msob.manak.workflow.largevalue.LargeValueStore;
+import ir.msob.manak.workflow.stagehistory.StageHistoryRepository;
+import ir.msob.manak.workflow.workerhistory.WorkerHistoryRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Moves completed workflows older than {@code manak.workflow.archive.age} from the hot collection to
+ * {@link WorkflowArchiveRepository#COLLECTION_NAME}, in batches, every {@code interval}. Disabled by default.
+ * <p>
+ * Their stage and worker histories are moved first, to {@link StageHistoryRepository#ARCHIVE_COLLECTION_NAME} and
+ * {@link WorkerHistoryRepository#ARCHIVE_COLLECTION_NAME}; a workflow whose move is interrupted stays in the hot
+ * collection and is picked up again by a later batch. Reads by id, of stage histories and of worker history fall
+ * through to the archive (see {@link WorkflowService#getOne}); GET_PAGE, the keyset page and the export only cover
+ * the hot collection. Large values the workflow no longer references (overwritten ones) are deleted once it is
+ * archived; the referenced ones stay for the archived copy.
+ */
+@Component
+@RequiredArgsConstructor
+public class WorkflowArchiver {
+    private static final Logger logger = LoggerFactory.getLogger(WorkflowArchiver.class);
+
+    private final WorkflowArchiveRepository archiveRepository;
+    private final StageHistoryRepository stageHistoryRepository;
+    private final WorkerHistoryRepository workerHistoryRepository;
+    private final LargeValueStore largeValueStore;
+
+    @Value("${manak.workflow.archive.enabled:false}")
+    private boolean enabled;
+    @Value("${manak.workflow.archive.age:30d}")
+    private Duration age;
+    @Value("${manak.workflow.archive.interval:10m}")
+    private Duration interval;
+    @Value("${manak.workflow.archive.batch-size:100}")
+    private int batchSize;
+    @Value("${manak.workflow.archive.compress:true}")
+    private boolean compress;
+
+    private Disposable schedule;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        logger.info("Workflow archiver started. age={} interval={} batchSize={} compress={}", age, interval, batchSize, compress);
+        schedule = Flux.interval(interval, interval)
+                .onBackpressureDrop()
+                .concatMap(tick -> archiveBatch()
+                        .onErrorResume(ex -> {
+                            logger.error("Workflow archiving failed. error={}", ex.getMessage(), ex);
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    /**
+     * Archive one batch of eligible workflows.
+     *
+     * @return number of workflows moved
+     */
+    public Mono<Long> archiveBatch() {
+        Instant cutoff = Instant.now().minus(age);
+        return archiveRepository.findArchivable(cutoff, batchSize)
+                .concatMap(this::archive)
+                .filter(Boolean::booleanValue)
+                .count()
+                .doOnNext(moved -> {
+                    if (moved > 0) {
+                        logger.info("Workflows archived. count={} endedBefore={}", moved, cutoff);
+                    }
+                });
+    }
+
+    private Mono<Boolean> archive(Document workflow) {
+        String workflowId = workflow.get(WorkflowRepository.MONGO_ID).toString();
+        return stageHistoryRepository.archive(workflowId, batchSize)
+                .then(workerHistoryRepository.archive(workflowId, batchSize))
+                .then(archiveRepository.archive(workflow, compress))
+                .flatMap(moved -> moved ? releaseLargeValues(workflow).thenReturn(true) : Mono.just(false));
+    }
+
+    /**
+     * Delete the large values owned by the workflow that neither it nor its stage histories reference any more.
+     * Best effort: values left behind are only wasted space.
+     */
+    private Mono<Void> releaseLargeValues(Document workflow) {
+        String workflowId = workflow.get(WorkflowRepository.MONGO_ID).toString();
+        Set<String> referenced = new HashSet<>();
+        LargeValueResolver.collectReferenceIds(workflow, referenced);
+        return stageHistoryRepository.findDocuments(workflowId)
+                .doOnNext(stageHistory -> LargeValueResolver.collectReferenceIds(stageHistory, referenced))
+                .then(Mono.defer(() -> largeValueStore.deleteOwnedBy(workflowId, referenced)))
+                .onErrorResume(ex -> {
+                    logger.warn("Failed to delete unreferenced large values of archived workflow. workflowId={} error={}", workflowId, ex.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (schedule != null) {
+            schedule.dispose();
+        }
+    }
+}
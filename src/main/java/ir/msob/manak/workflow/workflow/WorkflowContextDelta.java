@@ -0,0 +1,85 @@
+package ir.msob.manak.workflow.workflow;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Paths changed in the workflow context and in one cycle context while a worker mutates them in memory.
+ * {@link WorkflowService#updateContextWithWorkerHistory} persists only these paths with a targeted {@code $set},
+ * reading their final values from the same context maps, so the write scales with the number of changed paths
+ * rather than with the size of the workflow.
+ */
+public class WorkflowContextDelta {
+    private static final String SEPARATOR = ".";
+
+    private final Map<String, Object> workflowContext;
+    private final Map<String, Object> cycleContext;
+    private final Set<String> workflowPaths = new LinkedHashSet<>();
+    private final Set<String> cyclePaths = new LinkedHashSet<>();
+
+    public WorkflowContextDelta(Map<String, Object> workflowContext, Map<String, Object> cycleContext) {
+        this.workflowContext = workflowContext;
+        this.cycleContext = cycleContext;
+    }
+
+    public void workflowContextChanged(String path) {
+        workflowPaths.add(path);
+    }
+
+    public void cycleContextChanged(String path) {
+        cyclePaths.add(path);
+    }
+
+    public boolean isEmpty() {
+        return workflowPaths.isEmpty() && cyclePaths.isEmpty();
+    }
+
+    /**
+     * Final values of the changed workflow context paths; see {@link #collapse}.
+     */
+    Map<String, Object> workflowContextValues(Predicate<String> wholeEntry) {
+        return collapse(workflowContext, workflowPaths, wholeEntry);
+    }
+
+    /**
+     * Final values of the changed cycle context paths; see {@link #collapse}.
+     */
+    Map<String, Object> cycleContextValues(Predicate<String> wholeEntry) {
+        return collapse(cycleContext, cyclePaths, wholeEntry);
+    }
+
+    /**
+     * Reduce the changed paths to a conflict-free set for one update: a path below another changed path is
+     * covered by the value of its ancestor, and a path inside a top-level entry matched by {@code wholeEntry}
+     * (stored as a single value, e.g. compressed) is widened to that entry.
+     */
+    private static Map<String, Object> collapse(Map<String, Object> context, Set<String> paths, Predicate<String> wholeEntry) {
+        List<String> widened = paths.stream()
+                .map(path -> {
+                    int separator = path.indexOf(SEPARATOR);
+                    String entry = separator < 0 ? path : path.substring(0, separator);
+                    return wholeEntry.test(entry) ? entry : path;
+                })
+                .distinct()
+                .toList();
+
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (String path : widened) {
+            boolean covered = widened.stream().anyMatch(other -> path.startsWith(other + SEPARATOR));
+            if (!covered) {
+                values.put(path, valueAt(context, path));
+            }
+        }
+        return values;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object valueAt(Map<String, Object> context, String path) {
+        Object current = context;
+        for (String key : path.split("\\.")) {
+            if (!(current instanceof Map)) return null;
+            current = ((Map<String, Object>) current).get(key);
+        }
+        return current;
+    }
+}
@@ -0,0 +1,47 @@
+package ir.msob.manak.workflow.workflow;
+
+import ir.msob.jima.core.commons.logger.Logger;
+import ir.msob.jima.core.commons.logger.LoggerFactory;
+import ir.msob.manak.domain.model.workflow.workflow.Workflow;
+import ir.msob.manak.workflow.largevalue.LargeValueStore;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Deletes the large values owned by workflows deleted through the template (DELETE_BY_ID and the like).
+ * Deletes by id ({@code _id} or {@code _id: {$in: [...]}}) are followed; other filters are left to
+ * {@code manak.workflow.large-value.orphan-sweep}.
+ */
+@Component
+public class WorkflowDeleteListener extends AbstractMongoEventListener<Object> {
+    private static final Logger logger = LoggerFactory.getLogger(WorkflowDeleteListener.class);
+
+    private final LargeValueStore largeValueStore;
+    private final String collection;
+
+    public WorkflowDeleteListener(LargeValueStore largeValueStore, MongoMappingContext mappingContext) {
+        this.largeValueStore = largeValueStore;
+        this.collection = mappingContext.getRequiredPersistentEntity(Workflow.class).getCollection();
+    }
+
+    @Override
+    public void onAfterDelete(AfterDeleteEvent<Object> event) {
+        Object id = event.getDocument() == null ? null : event.getDocument().get(WorkflowRepository.MONGO_ID);
+        if (!collection.equals(event.getCollectionName()) || id == null) {
+            return;
+        }
+        List<?> ids = id instanceof Document operator && operator.get("$in") instanceof List<?> in ? in : List.of(id);
+        ids.stream()
+                .filter(workflowId -> workflowId != null && !(workflowId instanceof Document))
+                .map(Object::toString)
+                .forEach(workflowId -> largeValueStore.deleteOwnedBy(workflowId, Set.of())
+                        .subscribe(null, ex -> logger.warn("Failed to delete large values of deleted workflow. workflowId={} error={}",
+                                workflowId, ex.getMessage())));
+    }
+}
@@ -0,0 +1,59 @@
+package ir.msob.manak.workflow.workflow;
+
+import ir.msob.manak.domain.model.workflow.workflow.Workflow;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Query parameters of the workflow export: filters on the indexed workflow fields and an optional projection.
+ * All filters are optional; an empty filter exports every workflow.
+ */
+@Getter
+@Setter
+public class WorkflowExportFilter {
+    private List<Workflow.WorkflowExecutionStatus> executionStatus;
+    private String specificationId;
+    private String correlationId;
+    private Instant startedFrom;
+    private Instant startedTo;
+    /**
+     * Fields to include, in domain (dot) notation. Empty means the whole workflow; fields left out are exported
+     * as null.
+     */
+    private List<String> fields;
+
+    Query toQuery() {
+        Query query = new Query();
+        if (executionStatus != null && !executionStatus.isEmpty()) {
+            query.addCriteria(Criteria.where(Workflow.FN.executionStatus).in(executionStatus));
+        }
+        if (specificationId != null) {
+            query.addCriteria(Criteria.where(Workflow.FN.specification + "." + WorkflowRepository.ID_FIELD).is(specificationId));
+        }
+        if (correlationId != null) {
+            query.addCriteria(Criteria.where(Workflow.FN.correlationId).is(correlationId));
+        }
+        if (startedFrom != null || startedTo != null) {
+            Criteria startedAt = Criteria.where(Workflow.FN.startedAt);
+            if (startedFrom != null) {
+                startedAt.gte(startedFrom);
+            }
+            if (startedTo != null) {
+                startedAt.lt(startedTo);
+            }
+            query.addCriteria(startedAt);
+        }
+        if (fields != null && !fields.isEmpty()) {
+            query.fields().include(fields.toArray(String[]::new));
+            if (fields.stream().anyMatch(field -> field.startsWith(Workflow.FN.specification))) {
+                query.fields().include(WorkflowRepository.SPECIFICATION_SNAPSHOT_FIELD);
+            }
+        }
+        return query;
+    }
+}
@@ -1,15 +1,293 @@
 package ir.msob.manak.workflow.workflow;
 
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.result.UpdateResult;
 import ir.msob.jima.core.ral.mongo.commons.query.MongoQueryBuilder;
 import ir.msob.manak.core.service.jima.crud.base.domain.DomainCrudRepository;
 import ir.msob.manak.domain.model.workflow.workflow.Workflow;
+import ir.msob.manak.workflow.compression.ContextCompressionCodec;
+import ir.msob.manak.workflow.mongo.IndexContributor;
+import ir.msob.manak.workflow.mongo.KeysetCursor;
+import ir.msob.manak.workflow.mongo.MongoBulkWriteSink;
+import ir.msob.manak.workflow.mongo.ManagedIndex;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.convert.UpdateMapper;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.BasicQuery;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
 
 @Repository
-public class WorkflowRepository extends DomainCrudRepository<Workflow> {
-    protected WorkflowRepository(MongoQueryBuilder queryBuilder, ReactiveMongoTemplate reactiveMongoTemplate) {
+public class WorkflowRepository extends DomainCrudRepository<Workflow> implements IndexContributor {
+    static final String ID_FIELD = "id";
+    /**
+     * Optimistic-lock version of the workflow document. It is not part of the domain model:
+     * every targeted update increments it and every full replace is a compare-and-set on it.
+     * The framework's saves carry it over and bump it, see {@link WorkflowStorageCallback}.
+     * A missing field is treated as version 0.
+     */
+    public static final String VERSION_FIELD = "_version";
+    /**
+     * Id of the {@code WorkflowSpecificationSnapshot} the workflow was started from. When present, the stored
+     * {@code specification} is only a stub holding the specification id; the content lives in the snapshot.
+     * Workflows stored before snapshots existed keep the full embedded specification and no such field.
+     * Reads into the domain model resolve the snapshot, see {@link WorkflowStorageCallback}.
+     */
+    public static final String SPECIFICATION_SNAPSHOT_FIELD = "specificationSnapshotId";
+    static final String MONGO_ID = "_id";
+    private static final String CYCLE_CONTEXT = Workflow.FN.cycles + ".$.context.";
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final MongoBulkWriteSink bulkWriteSink;
+    private final ContextCompressionCodec compressionCodec;
+
+    protected WorkflowRepository(MongoQueryBuilder queryBuilder, ReactiveMongoTemplate reactiveMongoTemplate, MongoBulkWriteSink bulkWriteSink, ContextCompressionCodec compressionCodec) {
         super(queryBuilder, reactiveMongoTemplate);
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.bulkWriteSink = bulkWriteSink;
+        this.compressionCodec = compressionCodec;
     }
-}
 
+    /**
+     * Indexes behind the criteria of GET_PAGE, keyset paging, the workers' lookups and the archiver's candidate query.
+     */
+    @Override
+    public Collection<ManagedIndex> getIndexes() {
+        return List.of(
+                new ManagedIndex(Workflow.class, new Index().on(Workflow.FN.correlationId, Sort.Direction.ASC)),
+                new ManagedIndex(Workflow.class, new Index()
+                        .on(Workflow.FN.executionStatus, Sort.Direction.ASC)
+                        .on(Workflow.FN.startedAt, Sort.Direction.DESC)),
+                new ManagedIndex(Workflow.class, new Index()
+                        .on(Workflow.FN.specification + "." + ID_FIELD, Sort.Direction.ASC)
+                        .on(Workflow.FN.startedAt, Sort.Direction.DESC)),
+                new ManagedIndex(Workflow.class, new Index()
+                        .on(Workflow.FN.startedAt, Sort.Direction.DESC)
+                        .on(ID_FIELD, Sort.Direction.DESC)),
+                new ManagedIndex(Workflow.class, new Index()
+                        .on(Workflow.FN.executionStatus, Sort.Direction.ASC)
+                        .on(Workflow.FN.endedAt, Sort.Direction.ASC)));
+    }
+
+    /**
+     * Append a single worker history entry with an atomic {@code $push}, keeping only the latest
+     * {@code retained} entries in the document ({@code $slice}). The workflow document is neither read nor decoded.
+     * The update goes through the {@link MongoBulkWriteSink}, so appends from concurrent jobs share one bulk write.
+     */
+    public Mono<Void> pushWorkerHistory(String workflowId, Workflow.WorkerHistory workerHistory, int retained) {
+        Update update = new Update().inc(VERSION_FIELD, 1);
+        update.push(Workflow.FN.workersHistory).slice(-retained).each(workerHistory);
+        return bulkWriteSink.write(getWorkflowCollectionName(),
+                new UpdateOneModel<>(mapQuery(idQuery(workflowId)), mapUpdate(update)));
+    }
+
+    /**
+     * Read the workflows after {@code after} (all from the newest when null), newest first by {@code startedAt}
+     * with the id as tie-breaker. The range condition and sort are covered by the {@code startedAt, id} index.
+     */
+    public Flux<Workflow> findPageAfter(KeysetCursor after, int limit) {
+        Query query = new Query()
+                .with(Sort.by(Sort.Direction.DESC, Workflow.FN.startedAt, ID_FIELD))
+                .limit(limit);
+        if (after != null) {
+            query.addCriteria(after.descendingAfter(Workflow.FN.startedAt, ID_FIELD));
+        }
+        return reactiveMongoTemplate.find(query, Workflow.class);
+    }
+
+    /**
+     * Stream the stored documents matching {@code query}, with its projection, as a driver cursor fetched
+     * {@code batchSize} documents at a time on demand. Documents are not decoded into the domain model.
+     */
+    public Flux<Document> streamDocuments(Query query, int batchSize) {
+        Query mapped = new BasicQuery(mapQuery(query), mapFields(query)).cursorBatchSize(batchSize);
+        return reactiveMongoTemplate.find(mapped, Document.class, getWorkflowCollectionName());
+    }
+
+    /**
+     * Write the changed context paths of {@code delta} with one targeted update: {@code $set} on each path of the
+     * workflow context and, through the positional operator, of the cycle context, the worker history
+     * {@code $push} and the version increment. Unchanged parts of the document are neither read nor rewritten.
+     *
+     * @return the number of matched workflows (0 when the workflow or the cycle does not exist)
+     */
+    public Mono<Long> updateContextPaths(String workflowId, String cycleId, WorkflowContextDelta delta,
+                                         Workflow.WorkerHistory workerHistory, int retained) {
+        Update update = new Update().inc(VERSION_FIELD, 1);
+        delta.workflowContextValues(compressionCodec::isSelected)
+                .forEach((path, value) -> update.set(Workflow.FN.context + "." + path, storedContextValue(path, value)));
+        delta.cycleContextValues(compressionCodec::isSelected)
+                .forEach((path, value) -> update.set(CYCLE_CONTEXT + path, storedContextValue(path, value)));
+        update.push(Workflow.FN.workersHistory).slice(-retained).each(workerHistory);
+
+        Query query = idQuery(workflowId)
+                .addCriteria(Criteria.where(Workflow.FN.cycles + "." + ID_FIELD).is(cycleId));
+        return reactiveMongoTemplate.updateFirst(query, update, Workflow.class)
+                .map(UpdateResult::getMatchedCount);
+    }
+
+    /**
+     * Read a workflow together with its current optimistic-lock version.
+     */
+    public Mono<VersionedWorkflow> findVersionedById(String workflowId) {
+        return reactiveMongoTemplate.findOne(new BasicQuery(mapQuery(idQuery(workflowId))), Document.class, getWorkflowCollectionName())
+                .map(this::toVersionedWorkflow);
+    }
+
+    /**
+     * Read only the storage-only fields of a workflow: version and specification snapshot id.
+     */
+    public Mono<Document> findStorageFields(String workflowId) {
+        Query query = idQuery(workflowId);
+        query.fields().include(VERSION_FIELD, SPECIFICATION_SNAPSHOT_FIELD);
+        return reactiveMongoTemplate.findOne(new BasicQuery(mapQuery(query), mapFields(query)), Document.class, getWorkflowCollectionName());
+    }
+
+    /**
+     * Carry the storage-only fields of the {@code stored} document over to a full {@code replacement} of it:
+     * the version is bumped and a snapshotted specification is stored as a stub again.
+     */
+    static void carryStorageFields(Document stored, Document replacement) {
+        replacement.put(VERSION_FIELD, versionOf(stored) + 1);
+        String snapshotId = stored.getString(SPECIFICATION_SNAPSHOT_FIELD);
+        if (snapshotId != null) {
+            referenceSpecificationSnapshot(replacement, snapshotId);
+        }
+    }
+
+    /**
+     * Replace the specification embedded in {@code document} with a stub holding its id and point the document at
+     * the specification snapshot.
+     */
+    static void referenceSpecificationSnapshot(Document document, String snapshotId) {
+        Object specificationId = document.get(Workflow.FN.specification) instanceof Document specification
+                ? specification.get(MONGO_ID)
+                : null;
+        document.put(Workflow.FN.specification, specificationStub(specificationId));
+        document.put(SPECIFICATION_SNAPSHOT_FIELD, snapshotId);
+    }
+
+    /**
+     * Read only a slice of a workflow: the given fields plus the single cycle with {@code cycleId}
+     * (positional projection on {@code cycles}), the version and the specification snapshot id.
+     * The result is decoded straight into the domain model, so a worker pays for the fields it asked for
+     * instead of the whole document.
+     *
+     * @return empty when the workflow or the cycle does not exist
+     */
+    public Mono<VersionedWorkflow> findSlice(String workflowId, String cycleId, String... fields) {
+        Query query = idQuery(workflowId)
+                .addCriteria(Criteria.where(Workflow.FN.cycles + "." + ID_FIELD).is(cycleId));
+        query.fields().include(fields).include(VERSION_FIELD, SPECIFICATION_SNAPSHOT_FIELD).position(Workflow.FN.cycles, 1);
+        return reactiveMongoTemplate.findOne(new BasicQuery(mapQuery(query), mapFields(query)), Document.class, getWorkflowCollectionName())
+                .map(this::toVersionedWorkflow);
+    }
+
+    /**
+     * Replace the whole workflow document only if it is still at {@code expectedVersion}, bumping the version by one.
+     * When {@code specificationSnapshotId} is given, the specification is stored as a stub next to the snapshot id
+     * instead of being embedded again.
+     *
+     * @throws OptimisticLockingFailureException (as error signal) when the workflow was changed concurrently
+     */
+    public Mono<Void> replaceIfVersion(Workflow workflow, long expectedVersion, String specificationSnapshotId) {
+        Document replacement = new Document();
+        converter().write(workflow, replacement);
+        // the replace goes straight to the driver, so the template's save events (and compression) do not run
+        compressionCodec.compress(replacement);
+        replacement.put(VERSION_FIELD, expectedVersion + 1);
+        if (specificationSnapshotId != null) {
+            referenceSpecificationSnapshot(replacement, specificationSnapshotId);
+        }
+
+        Query query = idQuery(workflow.getId()).addCriteria(versionCriteria(expectedVersion));
+        Document filter = mapQuery(query);
+
+        return reactiveMongoTemplate.getCollection(getWorkflowCollectionName())
+                .flatMap(collection -> Mono.from(collection.replaceOne(filter, replacement)))
+                .flatMap(result -> result.getMatchedCount() == 0
+                        ? Mono.error(new OptimisticLockingFailureException(
+                        "Workflow was modified concurrently. id=" + workflow.getId() + " expectedVersion=" + expectedVersion))
+                        : Mono.empty());
+    }
+
+    public String getWorkflowCollectionName() {
+        return reactiveMongoTemplate.getCollectionName(Workflow.class);
+    }
+
+    /**
+     * Translate a property-based query into the stored document form (field names, id conversion),
+     * for operations that go directly to the driver collection.
+     */
+    Document mapQuery(Query query) {
+        MongoConverter converter = converter();
+        return new QueryMapper(converter).getMappedObject(query.getQueryObject(),
+                converter.getMappingContext().getPersistentEntity(Workflow.class));
+    }
+
+    private Document mapUpdate(Update update) {
+        MongoConverter converter = converter();
+        return new UpdateMapper(converter).getMappedObject(update.getUpdateObject(),
+                converter.getMappingContext().getPersistentEntity(Workflow.class));
+    }
+
+    private Document mapFields(Query query) {
+        MongoConverter converter = converter();
+        return new QueryMapper(converter).getMappedFields(query.getFieldsObject(),
+                converter.getMappingContext().getPersistentEntity(Workflow.class));
+    }
+
+    VersionedWorkflow toVersionedWorkflow(Document document) {
+        return new VersionedWorkflow(converter().read(Workflow.class, document), versionOf(document),
+                document.getString(SPECIFICATION_SNAPSHOT_FIELD));
+    }
+
+    /**
+     * A context entry in stored form, compressed when it is selected for compression.
+     */
+    private Object storedContextValue(String path, Object value) {
+        return path.contains(".") || !compressionCodec.isEnabled()
+                ? value
+                : compressionCodec.compressEntry(path, converter().convertToMongoType(value));
+    }
+
+    private static Document specificationStub(Object specificationId) {
+        return new Document(MONGO_ID, specificationId);
+    }
+
+    static Object toStoredId(String id) {
+        return ObjectId.isValid(id) ? new ObjectId(id) : id;
+    }
+
+    static Query idQuery(String workflowId) {
+        return Query.query(Criteria.where(ID_FIELD).is(workflowId));
+    }
+
+    static Criteria versionCriteria(long expectedVersion) {
+        return expectedVersion == 0
+                ? Criteria.where(VERSION_FIELD).in(0L, null)
+                : Criteria.where(VERSION_FIELD).is(expectedVersion);
+    }
+
+    static long versionOf(Document document) {
+        Object version = document.get(VERSION_FIELD);
+        return version instanceof Number number ? number.longValue() : 0L;
+    }
+
+    private MongoConverter converter() {
+        return reactiveMongoTemplate.getConverter();
+    }
+}
@@ -8,8 +8,19 @@ import ir.msob.manak.core.service.jima.security.UserService;
 import ir.msob.manak.domain.model.workflow.workflow.Workflow;
 import ir.msob.manak.domain.model.workflow.workflow.WorkflowCriteria;
 import ir.msob.manak.domain.model.workflow.workflow.WorkflowDto;
+import ir.msob.manak.workflow.mongo.KeysetCursor;
+import ir.msob.manak.workflow.mongo.KeysetPage;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.security.Principal;
+import java.util.Map;
+import java.util.Optional;
 
 import static ir.msob.jima.core.commons.operation.Operations.*;
 
@@ -20,7 +31,36 @@ import static ir.msob.jima.core.commons.operation.Operations.*;
 public class WorkflowRestResource extends DomainCrudRestResource<Workflow, WorkflowDto, WorkflowCriteria, WorkflowRepository, WorkflowService> {
     public static final String BASE_URI = "/api/v1/" + Workflow.DOMAIN_NAME_WITH_HYPHEN;
 
+    private final WorkflowService workflowService;
+    private final UserService userService;
+
     protected WorkflowRestResource(UserService userService, WorkflowService service) {
         super(userService, service);
+        this.userService = userService;
+        this.workflowService = service;
+    }
+
+    /**
+     * Cursor-based alternative to GET_PAGE: pass the {@code nextToken} of a page as {@code token} to read the next one.
+     * Unlike offset paging, deep pages cost the same as the first. Like GET_PAGE, it only lists workflows that are not
+     * archived ({@link WorkflowArchiver}); archived ones are read by id.
+     */
+    @GetMapping("/keyset")
+    public Mono<KeysetPage<WorkflowDto>> getKeysetPage(@RequestParam(required = false) String token,
+                                                       @RequestParam(defaultValue = "20") int size,
+                                                       Principal principal) {
+        return Mono.defer(() -> workflowService.getKeysetPage(KeysetCursor.decode(token), KeysetPage.size(size),
+                userService.getUser(Optional.ofNullable(principal))));
+    }
+
+    /**
+     * Export the workflows matching {@code filter} as newline-delimited JSON, one workflow per line in the same
+     * form as GET_BY_ID (specification snapshot and large values resolved). Workflows are read from the Mongo
+     * cursor as the client consumes the lines, so a full export runs in constant memory on both sides.
+     * Archived workflows ({@link WorkflowArchiver}) are not exported.
+     */
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Map<String, Object>> export(WorkflowExportFilter filter, Principal principal) {
+        return Flux.defer(() -> workflowService.export(filter, userService.getUser(Optional.ofNullable(principal))));
     }
 }
@@ -1,6 +1,8 @@
 package ir.msob.manak.workflow.workflow;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import ir.msob.jima.core.commons.exception.datanotfound.DataNotFoundException;
 import ir.msob.jima.core.commons.id.BaseIdService;
 import ir.msob.jima.core.commons.logger.Logger;
 import ir.msob.jima.core.commons.logger.LoggerFactory;
@@ -15,33 +17,69 @@ import ir.msob.manak.domain.model.workflow.WorkerExecutionStatus;
 import ir.msob.manak.domain.model.workflow.workflow.Workflow;
 import ir.msob.manak.domain.model.workflow.workflow.WorkflowCriteria;
 import ir.msob.manak.domain.model.workflow.workflow.WorkflowDto;
+import ir.msob.manak.workflow.largevalue.LargeValueStore;
+import ir.msob.manak.workflow.mongo.KeysetCursor;
+import ir.msob.manak.workflow.mongo.KeysetPage;
 import ir.msob.manak.workflow.worker.util.WorkflowUtil;
+import ir.msob.manak.workflow.workerhistory.WorkerHistoryService;
+import ir.msob.manak.workflow.workflowspecification.WorkflowSpecificationSnapshotService;
 import jakarta.validation.Valid;
+import org.bson.Document;
 import org.modelmapper.ModelMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
 
+import java.time.Duration;
 import java.time.Instant;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.function.Function;
 
 @Service
 public class WorkflowService extends DomainCrudService<Workflow, WorkflowDto, WorkflowCriteria, WorkflowRepository>
         implements ChildDomainCrudService<WorkflowDto> {
     private static final Logger logger = LoggerFactory.getLogger(WorkflowService.class);
+    private static final TypeReference<Map<String, Object>> EXPORT_TYPE = new TypeReference<>() {
+    };
 
+    private final WorkflowRepository workflowRepository;
     private final ModelMapper modelMapper;
     private final IdService idService;
     private final UserService userService;
+    private final WorkerHistoryService workerHistoryService;
+    private final WorkflowSpecificationSnapshotService specificationSnapshotService;
+    private final WorkflowWriteCoalescer writeCoalescer;
+    private final WorkflowArchiveRepository archiveRepository;
+    private final LargeValueStore largeValueStore;
+    private final ObjectMapper objectMapper;
 
-    protected WorkflowService(BeforeAfterComponent beforeAfterComponent, ObjectMapper objectMapper, WorkflowRepository repository, ModelMapper modelMapper, IdService idService, UserService userService) {
+    @Value("${manak.workflow.worker-history.retained:50}")
+    private int retainedWorkerHistory;
+    @Value("${manak.workflow.update.max-retries:5}")
+    private int updateMaxRetries;
+    @Value("${manak.workflow.update.min-backoff:20ms}")
+    private Duration updateMinBackoff;
+    @Value("${manak.workflow.update.max-backoff:500ms}")
+    private Duration updateMaxBackoff;
+    @Value("${manak.workflow.export.batch-size:500}")
+    private int exportBatchSize;
+
+    protected WorkflowService(BeforeAfterComponent beforeAfterComponent, ObjectMapper objectMapper, WorkflowRepository repository, ModelMapper modelMapper, IdService idService, UserService userService, WorkerHistoryService workerHistoryService, WorkflowSpecificationSnapshotService specificationSnapshotService, WorkflowWriteCoalescer writeCoalescer, WorkflowArchiveRepository archiveRepository, LargeValueStore largeValueStore) {
         super(beforeAfterComponent, objectMapper, repository);
+        this.workflowRepository = repository;
         this.modelMapper = modelMapper;
         this.idService = idService;
         this.userService = userService;
+        this.workerHistoryService = workerHistoryService;
+        this.specificationSnapshotService = specificationSnapshotService;
+        this.writeCoalescer = writeCoalescer;
+        this.archiveRepository = archiveRepository;
+        this.largeValueStore = largeValueStore;
+        this.objectMapper = objectMapper;
     }
 
     @Override
@@ -62,7 +100,62 @@ public class WorkflowService extends DomainCrudService<Workflow, WorkflowDto, Wo
     @Transactional
     @Override
     public Mono<WorkflowDto> getDto(String id, User user) {
-        return super.getOne(id, user);
+        return getOne(id, user);
+    }
+
+    /**
+     * Read a workflow by id with its specification snapshot resolved ({@link WorkflowStorageCallback}). Workflows
+     * moved to the archive by {@link WorkflowArchiver} are read from there, so callers do not need to know where a
+     * workflow lives.
+     */
+    @Override
+    public Mono<WorkflowDto> getOne(String id, User user) {
+        return super.getOne(id, user)
+                .onErrorResume(DataNotFoundException.class, e -> Mono.empty())
+                .switchIfEmpty(Mono.defer(() -> getArchived(id, user)))
+                .switchIfEmpty(Mono.error(new DataNotFoundException("Workflow not found: " + id)));
+    }
+
+    private Mono<WorkflowDto> getArchived(String id, User user) {
+        return archiveRepository.findById(id)
+                .flatMap(archived -> {
+                    WorkflowDto workflowDto = toDto(archived.getWorkflow(), user);
+                    return specificationSnapshotService.resolve(archived.getSpecificationSnapshotId())
+                            .doOnNext(workflowDto::setSpecification)
+                            .thenReturn(workflowDto);
+                });
+    }
+
+    /**
+     * Keyset page of workflows, newest first, with specification snapshots resolved as in GET_PAGE. As GET_PAGE,
+     * it only covers the hot collection, not archived workflows.
+     */
+    public Mono<KeysetPage<WorkflowDto>> getKeysetPage(KeysetCursor after, int size, User user) {
+        return workflowRepository.findPageAfter(after, size + 1)
+                .map(workflow -> toDto(workflow, user))
+                .collectList()
+                .map(workflows -> KeysetPage.of(workflows, size,
+                        last -> new KeysetCursor(last.getStartedAt(), last.getId())));
+    }
+
+    /**
+     * Stream the workflows matching {@code filter} in their API form, for exports that should not hold pages in
+     * memory: each stored document is mapped to a {@link WorkflowDto} as in GET_BY_ID, with the specification
+     * snapshot resolved and offloaded large values loaded. Only one workflow is mapped at a time. Archived
+     * workflows are not included.
+     */
+    public Flux<Map<String, Object>> export(WorkflowExportFilter filter, User user) {
+        return workflowRepository.streamDocuments(filter.toQuery(), exportBatchSize)
+                .concatMap(document -> exportOne(document, user));
+    }
+
+    private Mono<Map<String, Object>> exportOne(Document document, User user) {
+        VersionedWorkflow versioned = workflowRepository.toVersionedWorkflow(document);
+        WorkflowDto workflowDto = toDto(versioned.getWorkflow(), user);
+        return specificationSnapshotService.resolve(versioned.getSpecificationSnapshotId())
+                .doOnNext(workflowDto::setSpecification)
+                .then(Mono.fromCallable(() -> objectMapper.convertValue(workflowDto, EXPORT_TYPE)))
+                .flatMap(largeValueStore::load);
     }
 
     @Transactional
@@ -77,27 +170,174 @@ public class WorkflowService extends DomainCrudService<Workflow, WorkflowDto, Wo
     }
 
 
+    /**
+     * Slice read by the stage workers: workflow context, the cycle and the specification. Other cycles and the
+     * worker history are not read. The specification is projected whole: for a workflow referencing a snapshot it is
+     * only the stub and the resolved snapshot replaces it, for an older workflow it is the embedded one.
+     */
+    public Mono<Workflow> getCycleSlice(String workflowId, String cycleId) {
+        return workflowRepository.findSlice(workflowId, cycleId, Workflow.FN.context, Workflow.FN.specification)
+                .switchIfEmpty(Mono.error(new DataNotFoundException(
+                        "Workflow or cycle not found. workflowId=" + workflowId + ", cycleId=" + cycleId)))
+                .flatMap(versioned -> specificationSnapshotService.resolve(versioned.getSpecificationSnapshotId())
+                        .doOnNext(versioned.getWorkflow()::setSpecification)
+                        .thenReturn(versioned.getWorkflow()));
+    }
+
     /**
      * Record worker history for the given workflow id.
+     * The entry is appended with a single atomic {@code $push}, so the workflow document is not loaded.
+     * The document keeps only the latest entries; the full history goes to the worker history collection.
      * If workflowId is null or empty, this method completes without doing anything.
      */
-    @Transactional
     public Mono<Void> recordWorkerHistory(String workflowId, WorkerExecutionStatus status, String error) {
         if (workflowId == null || workflowId.isBlank()) {
             logger.warn("No workflow id available to record worker history. skipping history write.");
             return Mono.empty();
         }
 
-        return this.getOne(workflowId, userService.getSystemUser())
-                .flatMap(workflowDto -> {
-                    workflowDto.getWorkersHistory().add(prepareWorkerHistory(status, error));
-                    return this.update(workflowDto, userService.getSystemUser()).then();
-                })
+        Workflow.WorkerHistory workerHistory = prepareWorkerHistory(status, error);
+        // both writes are independent, so they can land in the same bulk write flush
+        return Mono.when(workflowRepository.pushWorkerHistory(workflowId, workerHistory, retainedWorkerHistory),
+                        workerHistoryService.record(workflowId, workerHistory))
                 .doOnSuccess(v -> logger.info("Worker history updated for workflowId={} status={}", workflowId, status))
                 .doOnError(ex -> logger.error("Failed to update worker history for workflowId={} error={}", workflowId, ex.getMessage(), ex))
                 .onErrorResume(e -> Mono.empty()); // don't fail main flow just because history write failed
     }
 
+    /**
+     * Unit of work for a single job: load the workflow, apply the mutation, append a SUCCESS worker history entry
+     * and persist both with one update, instead of an update followed by a separate history write.
+     * The write is a versioned compare-and-set; see {@link #updateWorkflow(String, Function)}.
+     *
+     * @param mutation in-memory change applied to the loaded workflow; its (non-null) return value is emitted
+     */
+    public <R> Mono<R> updateWithWorkerHistory(String workflowId, Function<WorkflowDto, R> mutation) {
+        return mutate(workflowId, mutation, true);
+    }
+
+    /**
+     * Load the workflow, apply the mutation and replace the document only if nobody changed it in between.
+     * On a version conflict the workflow is re-read and the mutation is applied again, with a bounded and
+     * jittered backoff, so concurrent jobs of the same workflow never silently drop each other's changes.
+     *
+     * When write coalescing is enabled, mutations of the same workflow arriving close together share one
+     * read and one write (see {@link WorkflowWriteCoalescer}); the caller is acknowledged after that write.
+     *
+     * @param mutation in-memory change applied to the loaded workflow; must be safe to apply more than once
+     */
+    public <R> Mono<R> updateWorkflow(String workflowId, Function<WorkflowDto, R> mutation) {
+        return mutate(workflowId, mutation, false);
+    }
+
+    /**
+     * Persist the context paths recorded in {@code delta} together with a SUCCESS worker history entry in one
+     * targeted update, instead of replacing the whole workflow. Only the changed paths are written, so concurrent
+     * jobs changing other parts of the same workflow do not conflict with it.
+     */
+    public Mono<Void> updateContextWithWorkerHistory(String workflowId, String cycleId, WorkflowContextDelta delta) {
+        Workflow.WorkerHistory workerHistory = prepareWorkerHistory(WorkerExecutionStatus.SUCCESS, null);
+        return workflowRepository.updateContextPaths(workflowId, cycleId, delta, workerHistory, retainedWorkerHistory)
+                .flatMap(matched -> matched == 0
+                        ? Mono.error(new DataNotFoundException(
+                        "Workflow or cycle not found. workflowId=" + workflowId + ", cycleId=" + cycleId))
+                        : workerHistoryService.record(workflowId, workerHistory));
+    }
+
+    /**
+     * Save a new workflow together with its first SUCCESS worker history entry in a single insert.
+     * The specification is stored once as a content-hashed snapshot first and the insert keeps only a reference to it,
+     * so workflows started from the same specification share it. The specification stays frozen at start.
+     */
+    @Transactional
+    public Mono<WorkflowDto> saveWithWorkerHistory(WorkflowDto workflowDto) {
+        Workflow.WorkerHistory workerHistory = appendWorkerHistory(workflowDto, WorkerExecutionStatus.SUCCESS, null);
+        Mono<WorkflowDto> save = Mono.defer(() -> this.save(workflowDto, userService.getSystemUser()));
+        return (workflowDto.getSpecification() == null
+                ? save
+                : specificationSnapshotService.snapshot(workflowDto.getSpecification())
+                .flatMap(snapshotId -> save.contextWrite(WorkflowStorageCallback.withSpecificationSnapshot(snapshotId))))
+                .flatMap(saved -> workerHistoryService.record(saved.getId(), workerHistory)
+                        .thenReturn(saved));
+    }
+
+    private <R> Mono<R> mutate(String workflowId, Function<WorkflowDto, R> mutation, boolean recordWorkerHistory) {
+        PendingMutation<R> pending = new PendingMutation<>(mutation, recordWorkerHistory);
+        if (writeCoalescer.isEnabled()) {
+            return writeCoalescer.submit(workflowId, pending, this::writeBatch);
+        }
+        return writeBatch(workflowId, List.of(pending))
+                .then(Mono.defer(pending::outcome));
+    }
+
+    /**
+     * Apply the mutations in order to one read of the workflow and persist them with a single compare-and-set replace.
+     * A failing mutation is reported to its own caller only. Since it may have changed the workflow before failing,
+     * nothing of that read is written: the mutations that succeeded are applied again to a fresh read.
+     */
+    private Mono<Void> writeBatch(String workflowId, List<PendingMutation<?>> mutations) {
+        return Mono.defer(() -> workflowRepository.findVersionedById(workflowId)
+                        .switchIfEmpty(Mono.error(new DataNotFoundException("Workflow not found: " + workflowId)))
+                        .flatMap(versioned -> {
+                            User systemUser = userService.getSystemUser();
+                            WorkflowDto workflowDto = toDto(versioned.getWorkflow(), systemUser);
+                            // the shared snapshot is set after mapping, so it is not copied on every job
+                            return specificationSnapshotService.resolve(versioned.getSpecificationSnapshotId())
+                                    .doOnNext(workflowDto::setSpecification)
+                                    .then(Mono.defer(() -> {
+                                        List<Workflow.WorkerHistory> workersHistory = new ArrayList<>();
+                                        List<PendingMutation<?>> succeeded = new ArrayList<>();
+                                        for (PendingMutation<?> mutation : mutations) {
+                                            if (mutation.apply(workflowDto)) {
+                                                succeeded.add(mutation);
+                                                if (mutation.isRecordWorkerHistory()) {
+                                                    workersHistory.add(appendWorkerHistory(workflowDto, WorkerExecutionStatus.SUCCESS, null));
+                                                }
+                                            }
+                                        }
+                                        if (succeeded.size() < mutations.size()) {
+                                            return Mono.just(succeeded);
+                                        }
+                                        return workflowRepository.replaceIfVersion(toDomain(workflowDto, systemUser),
+                                                        versioned.getVersion(), versioned.getSpecificationSnapshotId())
+                                                .thenMany(Flux.fromIterable(workersHistory))
+                                                .flatMap(workerHistory -> workerHistoryService.record(workflowId, workerHistory))
+                                                .then(Mono.just(List.<PendingMutation<?>>of()));
+                                    }));
+                        }))
+                .retryWhen(conflictRetry(workflowId, updateMaxRetries, updateMinBackoff, updateMaxBackoff))
+                .flatMap(survivors -> survivors.isEmpty() ? Mono.<Void>empty() : writeBatch(workflowId, survivors));
+    }
+
+    /**
+     * Retry on version conflicts only, with a jittered backoff; once exhausted the last conflict is rethrown as is.
+     */
+    static Retry conflictRetry(String workflowId, int maxRetries, Duration minBackoff, Duration maxBackoff) {
+        return Retry.backoff(maxRetries, minBackoff)
+                .maxBackoff(maxBackoff)
+                .jitter(0.5)
+                .filter(OptimisticLockingFailureException.class::isInstance)
+                .doBeforeRetry(signal -> logger.debug("Workflow update conflict, retrying. workflowId={} attempt={}",
+                        workflowId, signal.totalRetries() + 1))
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure());
+    }
+
+    /**
+     * Append a worker history entry to the in-memory workflow, dropping the oldest entries beyond the retained size.
+     */
+    private Workflow.WorkerHistory appendWorkerHistory(Workflow workflow, WorkerExecutionStatus status, String error) {
+        if (workflow.getWorkersHistory() == null) {
+            workflow.setWorkersHistory(new ArrayList<>());
+        }
+        Workflow.WorkerHistory workerHistory = prepareWorkerHistory(status, error);
+        List<Workflow.WorkerHistory> workersHistory = workflow.getWorkersHistory();
+        workersHistory.add(workerHistory);
+        if (workersHistory.size() > retainedWorkerHistory) {
+            workersHistory.subList(0, workersHistory.size() - retainedWorkerHistory).clear();
+        }
+        return workerHistory;
+    }
+
     private Workflow.WorkerHistory prepareWorkerHistory(WorkerExecutionStatus workerExecutionStatus, String error) {
         return Workflow.WorkerHistory.builder()
                 .executionStatus(workerExecutionStatus)
@@ -106,21 +346,12 @@ public class WorkflowService extends DomainCrudService<Workflow, WorkflowDto, Wo
                 .build();
     }
 
-    @Transactional
     public Mono<WorkflowDto> updateCycleContext(String workflowId,
                                                 String cycleId,
                                                 Map<String, Object> params) {
 
-        return this.getOne(workflowId, userService.getSystemUser())
-                .switchIfEmpty(Mono.error(new IllegalStateException(
-                        "Workflow not found. Id=" + workflowId)))
-                .flatMap(workflowDto -> {
-
+        return this.updateWorkflow(workflowId, workflowDto -> {
                     Workflow.Cycle cycle = WorkflowUtil.findCycle(workflowDto, cycleId);
-                    if (cycle == null) {
-                        return Mono.error(new IllegalStateException(
-                                "Cycle not found. workflowId=" + workflowId + ", cycleId=" + cycleId));
-                    }
 
                     // Ensure context is initialized
                     Map<String, Object> context = cycle.getContext();
@@ -132,8 +363,7 @@ public class WorkflowService extends DomainCrudService<Workflow, WorkflowDto, Wo
                     if (params != null && !params.isEmpty()) {
                         context.putAll(params);
                     }
-
-                    return this.update(workflowDto, userService.getSystemUser());
+                    return workflowDto;
                 })
                 .doOnError(e ->
                         logger.warn("Failed to update cycle context: workflowId={}, cycleId={}, error={}",
@@ -141,4 +371,4 @@ public class WorkflowService extends DomainCrudService<Workflow, WorkflowDto, Wo
                 );
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,69 @@
+package ir.msob.manak.workflow.workflow;
+
+import ir.msob.manak.domain.model.workflow.workflow.Workflow;
+import ir.msob.manak.workflow.workflowspecification.WorkflowSpecificationSnapshotService;
+import org.bson.Document;
+import org.reactivestreams.Publisher;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.mongodb.core.mapping.event.ReactiveAfterConvertCallback;
+import org.springframework.data.mongodb.core.mapping.event.ReactiveBeforeSaveCallback;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+/**
+ * Keeps the storage-only fields of a workflow document ({@link WorkflowRepository#VERSION_FIELD} and
+ * {@link WorkflowRepository#SPECIFICATION_SNAPSHOT_FIELD}) consistent on the framework's save and read paths,
+ * since the domain model does not carry them.
+ * <p>
+ * A save of an existing workflow (UPDATE, EDIT, save) carries the stored snapshot id over, stores the specification
+ * as a stub again and bumps the version. A new workflow saved within {@link #withSpecificationSnapshot} is inserted
+ * with the snapshot reference right away. Every workflow read into the domain model through the template (GET_BY_ID,
+ * GET_PAGE, keyset pages) gets its specification resolved from the snapshot. Writes and reads that go straight to
+ * the driver handle the fields themselves.
+ */
+@Component
+public class WorkflowStorageCallback implements ReactiveBeforeSaveCallback<Workflow>, ReactiveAfterConvertCallback<Workflow> {
+    private static final String SNAPSHOT_CONTEXT_KEY = WorkflowStorageCallback.class.getName() + ".snapshotId";
+
+    private final WorkflowRepository workflowRepository;
+    private final WorkflowSpecificationSnapshotService specificationSnapshotService;
+
+    // the repository is built on the template that invokes this callback
+    public WorkflowStorageCallback(@Lazy WorkflowRepository workflowRepository,
+                                   WorkflowSpecificationSnapshotService specificationSnapshotService) {
+        this.workflowRepository = workflowRepository;
+        this.specificationSnapshotService = specificationSnapshotService;
+    }
+
+    /**
+     * Context under which a save of a new workflow stores its specification as a reference to {@code snapshotId}.
+     */
+    public static Context withSpecificationSnapshot(String snapshotId) {
+        return Context.of(SNAPSHOT_CONTEXT_KEY, snapshotId);
+    }
+
+    @Override
+    public Publisher<Workflow> onBeforeSave(Workflow entity, Document document, String collection) {
+        return Mono.deferContextual(context -> {
+            String snapshotId = context.getOrDefault(SNAPSHOT_CONTEXT_KEY, null);
+            if (snapshotId != null) {
+                WorkflowRepository.referenceSpecificationSnapshot(document, snapshotId);
+                return Mono.just(entity);
+            }
+            if (entity.getId() == null) {
+                return Mono.just(entity);
+            }
+            return workflowRepository.findStorageFields(entity.getId())
+                    .doOnNext(stored -> WorkflowRepository.carryStorageFields(stored, document))
+                    .thenReturn(entity);
+        });
+    }
+
+    @Override
+    public Publisher<Workflow> onAfterConvert(Workflow entity, Document document, String collection) {
+        return specificationSnapshotService.resolve(document.getString(WorkflowRepository.SPECIFICATION_SNAPSHOT_FIELD))
+                .doOnNext(entity::setSpecification)
+                .thenReturn(entity);
+    }
+}
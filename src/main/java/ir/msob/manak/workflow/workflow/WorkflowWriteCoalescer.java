@@ -0,0 +1,111 @@
+package ir.msob.manak.workflow.workflow;
+
+import ir.msob.jima.core.commons.logger.Logger;
+import ir.msob.jima.core.commons.logger.LoggerFactory;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+/**
+ * Write-behind buffer for workflow mutations, keyed by workflow id.
+ * <p>
+ * Mutations of the same workflow arriving within {@code window} are merged into one batch and written with a
+ * single read and compare-and-set replace. A batch is flushed when the window elapses or when it reaches
+ * {@code max-batch} mutations. Callers are acknowledged only after the merged write is durable; a failed write
+ * fails every caller of the batch. Disabled by default.
+ */
+@Component
+public class WorkflowWriteCoalescer {
+    private static final Logger logger = LoggerFactory.getLogger(WorkflowWriteCoalescer.class);
+
+    private final Map<String, Batch> pendingBatches = new ConcurrentHashMap<>();
+
+    @Getter
+    @Value("${manak.workflow.coalescing.enabled:false}")
+    private boolean enabled;
+    @Value("${manak.workflow.coalescing.window:10ms}")
+    private Duration window;
+    @Value("${manak.workflow.coalescing.max-batch:32}")
+    private int maxBatch;
+
+    /**
+     * Queue the mutation for the workflow and emit its outcome once the batch containing it is written.
+     *
+     * @param writer writes a batch of mutations of one workflow with a single update
+     */
+    <R> Mono<R> submit(String workflowId, PendingMutation<R> mutation,
+                       BiFunction<String, List<PendingMutation<?>>, Mono<Void>> writer) {
+        return Mono.defer(() -> {
+            Batch[] target = new Batch[1];
+            boolean[] opened = new boolean[1];
+            pendingBatches.compute(workflowId, (id, current) -> {
+                if (current == null || !current.add(mutation)) {
+                    current = new Batch();
+                    current.add(mutation);
+                    opened[0] = true;
+                }
+                target[0] = current;
+                // a full batch is detached so later mutations start a new one
+                return current.size() >= maxBatch ? null : current;
+            });
+            Mono<R> outcome = mutation.asMono();
+            if (target[0].size() >= maxBatch) {
+                flush(workflowId, target[0], writer);
+            } else if (opened[0]) {
+                Mono.delay(window).subscribe(tick -> flush(workflowId, target[0], writer));
+            }
+            return outcome;
+        });
+    }
+
+    private void flush(String workflowId, Batch batch, BiFunction<String, List<PendingMutation<?>>, Mono<Void>> writer) {
+        List<PendingMutation<?>> mutations = batch.close();
+        if (mutations == null) {
+            return;
+        }
+        pendingBatches.remove(workflowId, batch);
+        if (mutations.size() > 1) {
+            logger.debug("Coalesced workflow mutations. workflowId={} count={}", workflowId, mutations.size());
+        }
+        writer.apply(workflowId, mutations)
+                .subscribe(null,
+                        error -> mutations.forEach(mutation -> mutation.fail(error)),
+                        () -> mutations.forEach(PendingMutation::complete));
+    }
+
+    private static final class Batch {
+        private final List<PendingMutation<?>> mutations = new ArrayList<>();
+        private boolean closed;
+
+        synchronized boolean add(PendingMutation<?> mutation) {
+            if (closed) {
+                return false;
+            }
+            mutations.add(mutation);
+            return true;
+        }
+
+        synchronized int size() {
+            return mutations.size();
+        }
+
+        /**
+         * Stop accepting mutations and return them; null when the batch was already closed.
+         */
+        synchronized List<PendingMutation<?>> close() {
+            if (closed) {
+                return null;
+            }
+            closed = true;
+            return new ArrayList<>(mutations);
+        }
+    }
+}
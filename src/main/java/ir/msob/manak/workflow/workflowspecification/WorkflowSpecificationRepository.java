@@ -3,13 +3,46 @@ package ir.msob.manak.workflow.workflowspecification;
 import ir.msob.jima.core.ral.mongo.commons.query.MongoQueryBuilder;
 import ir.msob.manak.core.service.jima.crud.base.domain.DomainCrudRepository;
 import ir.msob.manak.domain.model.workflow.workflowspecification.WorkflowSpecification;
+import ir.msob.manak.workflow.mongo.IndexContributor;
+import ir.msob.manak.workflow.mongo.KeysetCursor;
+import ir.msob.manak.workflow.mongo.ManagedIndex;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+import java.util.Collection;
+import java.util.List;
 
 @Repository
-public class WorkflowSpecificationRepository extends DomainCrudRepository<WorkflowSpecification> {
+public class WorkflowSpecificationRepository extends DomainCrudRepository<WorkflowSpecification> implements IndexContributor {
+    private static final String ID_FIELD = "id";
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
     protected WorkflowSpecificationRepository(MongoQueryBuilder queryBuilder, ReactiveMongoTemplate reactiveMongoTemplate) {
         super(queryBuilder, reactiveMongoTemplate);
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
     }
-}
 
+    @Override
+    public Collection<ManagedIndex> getIndexes() {
+        return List.of(
+                new ManagedIndex(WorkflowSpecification.class, new Index().on(WorkflowSpecification.FN.name, Sort.Direction.ASC)));
+    }
+
+    /**
+     * Read the specifications after {@code after} (from the first when null) in id order, using the {@code _id} index.
+     */
+    public Flux<WorkflowSpecification> findPageAfter(KeysetCursor after, int limit) {
+        Query query = new Query()
+                .with(Sort.by(Sort.Direction.ASC, ID_FIELD))
+                .limit(limit);
+        if (after != null) {
+            query.addCriteria(after.ascendingAfter(ID_FIELD));
+        }
+        return reactiveMongoTemplate.find(query, WorkflowSpecification.class);
+    }
+}
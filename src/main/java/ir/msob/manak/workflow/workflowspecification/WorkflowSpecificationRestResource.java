@@ -8,8 +8,17 @@ import ir.msob.manak.core.service.jima.security.UserService;
 import ir.msob.manak.domain.model.workflow.workflowspecification.WorkflowSpecification;
 import ir.msob.manak.domain.model.workflow.workflowspecification.WorkflowSpecificationCriteria;
 import ir.msob.manak.domain.model.workflow.workflowspecification.WorkflowSpecificationDto;
+import ir.msob.manak.workflow.mongo.KeysetCursor;
+import ir.msob.manak.workflow.mongo.KeysetPage;
+import ir.msob.manak.workflow.workflow.WorkflowRestResource;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.security.Principal;
+import java.util.Optional;
 
 import static ir.msob.jima.core.commons.operation.Operations.*;
 
@@ -20,7 +29,23 @@ import static ir.msob.jima.core.commons.operation.Operations.*;
 public class WorkflowSpecificationRestResource extends DomainCrudRestResource<WorkflowSpecification, WorkflowSpecificationDto, WorkflowSpecificationCriteria, WorkflowSpecificationRepository, WorkflowSpecificationService> {
     public static final String BASE_URI = "/api/v1/" + WorkflowSpecification.DOMAIN_NAME_WITH_HYPHEN;
 
+    private final WorkflowSpecificationService specificationService;
+    private final UserService userService;
+
     protected WorkflowSpecificationRestResource(UserService userService, WorkflowSpecificationService service) {
         super(userService, service);
+        this.userService = userService;
+        this.specificationService = service;
+    }
+
+    /**
+     * Keyset page of specifications in id order, see {@link WorkflowRestResource#getKeysetPage}.
+     */
+    @GetMapping("/keyset")
+    public Mono<KeysetPage<WorkflowSpecificationDto>> getKeysetPage(@RequestParam(required = false) String token,
+                                                                    @RequestParam(defaultValue = "20") int size,
+                                                                    Principal principal) {
+        return Mono.defer(() -> specificationService.getKeysetPage(KeysetCursor.decode(token), KeysetPage.size(size),
+                userService.getUser(Optional.ofNullable(principal))));
     }
 }
@@ -11,6 +11,8 @@ import ir.msob.manak.core.service.jima.service.IdService;
 import ir.msob.manak.domain.model.workflow.workflowspecification.WorkflowSpecification;
 import ir.msob.manak.domain.model.workflow.workflowspecification.WorkflowSpecificationCriteria;
 import ir.msob.manak.domain.model.workflow.workflowspecification.WorkflowSpecificationDto;
+import ir.msob.manak.workflow.mongo.KeysetCursor;
+import ir.msob.manak.workflow.mongo.KeysetPage;
 import jakarta.validation.Valid;
 import org.modelmapper.ModelMapper;
 import org.springframework.stereotype.Service;
@@ -24,11 +26,13 @@ import java.util.Collections;
 public class WorkflowSpecificationService extends DomainCrudService<WorkflowSpecification, WorkflowSpecificationDto, WorkflowSpecificationCriteria, WorkflowSpecificationRepository>
         implements ChildDomainCrudService<WorkflowSpecificationDto> {
 
+    private final WorkflowSpecificationRepository specificationRepository;
     private final ModelMapper modelMapper;
     private final IdService idService;
 
     protected WorkflowSpecificationService(BeforeAfterComponent beforeAfterComponent, ObjectMapper objectMapper, WorkflowSpecificationRepository repository, ModelMapper modelMapper, IdService idService) {
         super(beforeAfterComponent, objectMapper, repository);
+        this.specificationRepository = repository;
         this.modelMapper = modelMapper;
         this.idService = idService;
     }
@@ -60,6 +64,16 @@ public class WorkflowSpecificationService extends DomainCrudService<WorkflowSpec
         return super.update(id, dto, user);
     }
 
+    /**
+     * Keyset page of specifications in id order.
+     */
+    public Mono<KeysetPage<WorkflowSpecificationDto>> getKeysetPage(KeysetCursor after, int size, User user) {
+        return specificationRepository.findPageAfter(after, size + 1)
+                .map(domain -> toDto(domain, user))
+                .collectList()
+                .map(dtos -> KeysetPage.of(dtos, size, last -> new KeysetCursor(null, last.getId())));
+    }
+
     @Override
     public BaseIdService getIdService() {
         return idService;
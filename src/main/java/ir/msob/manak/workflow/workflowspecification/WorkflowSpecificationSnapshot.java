@@ -0,0 +1,30 @@
+package ir.msob.manak.workflow.workflowspecification;
+
+import ir.msob.manak.domain.model.workflow.workflowspecification.WorkflowSpecificationDto;
+import lombok.*;
+import lombok.experimental.FieldNameConstants;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Immutable copy of a workflow specification as it was when a workflow started.
+ * The id is the content hash, so all workflows started from identical specifications share one snapshot.
+ */
+@Document(collection = WorkflowSpecificationSnapshot.COLLECTION_NAME)
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldNameConstants(innerTypeName = "FN")
+public class WorkflowSpecificationSnapshot {
+    public static final String COLLECTION_NAME = "WorkflowSpecificationSnapshot";
+
+    @Id
+    private String id;
+    private String specificationId;
+    private WorkflowSpecificationDto specification;
+    private Instant createdAt;
+}
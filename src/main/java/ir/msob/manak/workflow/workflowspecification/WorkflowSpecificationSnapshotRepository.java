@@ -0,0 +1,37 @@
+package ir.msob.manak.workflow.workflowspecification;
+
+import ir.msob.manak.domain.model.workflow.workflowspecification.WorkflowSpecification;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+
+@Repository
+public class WorkflowSpecificationSnapshotRepository {
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    public WorkflowSpecificationSnapshotRepository(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    /**
+     * Store the snapshot unless one with the same content hash already exists.
+     */
+    public Mono<Void> insertIfAbsent(String hash, WorkflowSpecification specification) {
+        Query query = Query.query(Criteria.where(WorkflowSpecificationSnapshot.FN.id).is(hash));
+        Update update = new Update()
+                .setOnInsert(WorkflowSpecificationSnapshot.FN.specificationId, specification.getId())
+                .setOnInsert(WorkflowSpecificationSnapshot.FN.specification, specification)
+                .setOnInsert(WorkflowSpecificationSnapshot.FN.createdAt, Instant.now());
+        return reactiveMongoTemplate.upsert(query, update, WorkflowSpecificationSnapshot.class).then();
+    }
+
+    public Mono<WorkflowSpecificationSnapshot> findById(String hash) {
+        return reactiveMongoTemplate.findById(hash, WorkflowSpecificationSnapshot.class);
+    }
+}
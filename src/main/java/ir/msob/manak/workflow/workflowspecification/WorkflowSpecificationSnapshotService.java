@@ -0,0 +1,84 @@
+package ir.msob.manak.workflow.workflowspecification;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import ir.msob.jima.core.commons.exception.datanotfound.DataNotFoundException;
+import ir.msob.jima.core.commons.logger.Logger;
+import ir.msob.jima.core.commons.logger.LoggerFactory;
+import ir.msob.manak.domain.model.workflow.workflowspecification.WorkflowSpecification;
+import ir.msob.manak.domain.model.workflow.workflowspecification.WorkflowSpecificationDto;
+import lombok.SneakyThrows;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Content-hashed, immutable specification snapshots referenced by workflows instead of an embedded copy.
+ * <p>
+ * Snapshots never change once written, so resolved snapshots are cached in memory (LRU) without invalidation.
+ * Cached instances are shared between workers and must be treated as read-only.
+ */
+@Service
+public class WorkflowSpecificationSnapshotService {
+    private static final Logger logger = LoggerFactory.getLogger(WorkflowSpecificationSnapshotService.class);
+
+    private final WorkflowSpecificationSnapshotRepository repository;
+    private final ObjectMapper canonicalObjectMapper;
+    private final Map<String, WorkflowSpecificationDto> cache;
+
+    public WorkflowSpecificationSnapshotService(WorkflowSpecificationSnapshotRepository repository,
+                                                ObjectMapper objectMapper,
+                                                @Value("${manak.workflow.specification-snapshot.cache-size:256}") int cacheSize) {
+        this.repository = repository;
+        this.canonicalObjectMapper = objectMapper.copy().enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, WorkflowSpecificationDto> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    /**
+     * Store a snapshot of the specification (once per distinct content).
+     *
+     * @return the snapshot id (content hash)
+     */
+    public Mono<String> snapshot(WorkflowSpecification specification) {
+        return Mono.fromCallable(() -> hash(specification))
+                .flatMap(hash -> repository.insertIfAbsent(hash, specification)
+                        .thenReturn(hash));
+    }
+
+    /**
+     * Resolve a snapshot by id, from the cache when possible. Completes empty for a null id.
+     */
+    public Mono<WorkflowSpecificationDto> resolve(String snapshotId) {
+        if (snapshotId == null) {
+            return Mono.empty();
+        }
+        WorkflowSpecificationDto cached = cache.get(snapshotId);
+        if (cached != null) {
+            return Mono.just(cached);
+        }
+        return repository.findById(snapshotId)
+                .switchIfEmpty(Mono.error(new DataNotFoundException("Workflow specification snapshot not found: " + snapshotId)))
+                .map(WorkflowSpecificationSnapshot::getSpecification)
+                .doOnNext(specification -> {
+                    cache.put(snapshotId, specification);
+                    logger.debug("Workflow specification snapshot cached. snapshotId={}", snapshotId);
+                });
+    }
+
+    @SneakyThrows
+    private String hash(WorkflowSpecification specification) {
+        byte[] canonical = canonicalObjectMapper.writeValueAsBytes(specification);
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(canonical));
+    }
+}
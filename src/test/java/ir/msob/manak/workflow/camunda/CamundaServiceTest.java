@@ -0,0 +1,66 @@
+package ir.msob.manak.workflow.camunda;
+
+import io.camunda.client.api.command.ClientStatusException;
+import io.grpc.Status;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+class CamundaServiceTest {
+
+    private final CamundaService camundaService = new CamundaService(null, null, null, null, null);
+
+    @Test
+    void unavailableAndResourceExhaustedAreTransientAndRetried() {
+        for (Status status : new Status[]{Status.UNAVAILABLE, Status.RESOURCE_EXHAUSTED}) {
+            Assertions.assertThat(camundaService.isTransient(status.asRuntimeException())).isTrue();
+            Assertions.assertThat(CamundaService.isRetryable(status.asRuntimeException())).isTrue();
+        }
+    }
+
+    @Test
+    void deadlineExceededIsTransientButNotRetried() {
+        Throwable ex = Status.DEADLINE_EXCEEDED.asRuntimeException();
+
+        Assertions.assertThat(camundaService.isTransient(ex)).isTrue();
+        Assertions.assertThat(CamundaService.isRetryable(ex)).isFalse();
+    }
+
+    @Test
+    void rejectionsAreNotTransient() {
+        for (Status status : new Status[]{Status.NOT_FOUND, Status.INVALID_ARGUMENT, Status.FAILED_PRECONDITION}) {
+            Assertions.assertThat(camundaService.isTransient(status.asRuntimeException())).isFalse();
+            Assertions.assertThat(CamundaService.isRetryable(status.asRuntimeException())).isFalse();
+        }
+        Assertions.assertThat(camundaService.isTransient(new IllegalStateException("boom"))).isFalse();
+    }
+
+    @Test
+    void statusIsFoundInTheCauseChain() {
+        Throwable ex = new CompletionException(new ClientStatusException(Status.UNAVAILABLE, null));
+
+        Assertions.assertThat(camundaService.isTransient(ex)).isTrue();
+        Assertions.assertThat(CamundaService.isRetryable(ex)).isTrue();
+    }
+
+    @Test
+    void notFoundIsRecognized() {
+        Assertions.assertThat(CamundaService.isNotFound(Status.NOT_FOUND.asRuntimeException())).isTrue();
+        Assertions.assertThat(CamundaService.isNotFound(Status.UNAVAILABLE.asRuntimeException())).isFalse();
+    }
+
+    @Test
+    void businessFailureIsReportedAndTheErrorRethrown() {
+        IllegalStateException ex = new IllegalStateException("boom");
+        AtomicBoolean reported = new AtomicBoolean();
+
+        Mono<Void> failed = camundaService.failJob(null, "job failed", ex, () -> Mono.fromRunnable(() -> reported.set(true)));
+
+        Assertions.assertThatThrownBy(() -> failed.block(Duration.ofSeconds(5))).isSameAs(ex);
+        Assertions.assertThat(reported).isTrue();
+    }
+}
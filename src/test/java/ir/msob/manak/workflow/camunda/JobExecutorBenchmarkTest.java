@@ -0,0 +1,101 @@
+package ir.msob.manak.workflow.camunda;
+
+import io.camunda.client.api.response.ActivatedJob;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.apachecommons.CommonsLog;
+import org.assertj.core.api.Assertions;
+import org.assertj.core.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link JobExecutor} with platform versus virtual threads at high job concurrency. Every job has a
+ * blocking step scheduled on {@link JobExecutor#getBlockingScheduler()}, and jobs are handed in by a small pool of
+ * handler threads, as the SDK does.
+ * <p>
+ * Run with {@code -Dmanak.benchmark=true}; virtual threads need a Java 21 runtime.
+ */
+@EnabledIfSystemProperty(named = "manak.benchmark", matches = "true")
+@CommonsLog
+class JobExecutorBenchmarkTest {
+    private static final int JOBS = 2_000;
+    private static final int HANDLER_THREADS = 8;
+    private static final Duration BLOCKING_STEP = Duration.ofMillis(20);
+
+    @Test
+    void virtualThreadsVersusPlatformThreads() throws InterruptedException {
+        Assumptions.assumeThat(Runtime.version().feature()).as("Java runtime").isGreaterThanOrEqualTo(21);
+
+        double platform = jobsPerSecond(false);
+        double virtual = jobsPerSecond(true);
+
+        log.info(String.format("Job throughput at %d jobs, %d handler threads, %d ms blocking step: platform=%.0f/s virtual=%.0f/s",
+                JOBS, HANDLER_THREADS, BLOCKING_STEP.toMillis(), platform, virtual));
+        Assertions.assertThat(virtual).isGreaterThan(platform);
+    }
+
+    private static double jobsPerSecond(boolean virtualThreads) throws InterruptedException {
+        JobWorkerProperties properties = new JobWorkerProperties();
+        properties.setVirtualThreads(virtualThreads);
+        properties.setDefaultMaxInFlight(JOBS);
+        JobExecutor jobExecutor = new JobExecutor(properties, new SimpleMeterRegistry(), new UnclaimedJobs());
+        ExecutorService handlers = Executors.newFixedThreadPool(HANDLER_THREADS);
+        CountDownLatch done = new CountDownLatch(JOBS);
+        try {
+            long start = System.nanoTime();
+            for (int i = 0; i < JOBS; i++) {
+                ActivatedJob job = job(i);
+                handlers.execute(() -> jobExecutor.execute(job, () -> Mono.fromCallable(() -> {
+                            Thread.sleep(BLOCKING_STEP.toMillis());
+                            return job.getKey();
+                        })
+                        .subscribeOn(jobExecutor.getBlockingScheduler())
+                        .doFinally(signal -> done.countDown())));
+            }
+            Assertions.assertThat(done.await(5, TimeUnit.MINUTES)).isTrue();
+            return JOBS / ((System.nanoTime() - start) / 1e9);
+        } finally {
+            handlers.shutdown();
+            jobExecutor.shutdown();
+        }
+    }
+
+    private static ActivatedJob job(long key) {
+        return (ActivatedJob) Proxy.newProxyInstance(ActivatedJob.class.getClassLoader(), new Class<?>[]{ActivatedJob.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getKey" -> key;
+                    case "getType" -> "benchmark";
+                    case "getRetries" -> 3;
+                    case "getVariables" -> "{}";
+                    case "getVariablesAsMap" -> Map.of();
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    /**
+     * Runs every job: no job result ledger and no metrics of the activation.
+     */
+    private static final class UnclaimedJobs extends CamundaService {
+        UnclaimedJobs() {
+            super(null, null, null, null, null);
+        }
+
+        @Override
+        public Mono<Boolean> claim(ActivatedJob job) {
+            return Mono.just(false);
+        }
+
+        @Override
+        public void recordActivation(ActivatedJob job) {
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package ir.msob.manak.workflow.camunda;
+
+import io.camunda.client.CamundaClient;
+import io.camunda.client.api.worker.JobWorker;
+import io.camunda.zeebe.model.bpmn.Bpmn;
+import io.camunda.zeebe.model.bpmn.BpmnModelInstance;
+import io.camunda.zeebe.model.bpmn.builder.AbstractFlowNodeBuilder;
+import lombok.extern.apachecommons.CommonsLog;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.wait.strategy.Wait;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.LongSummaryStatistics;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static ir.msob.manak.workflow.worker.Constants.JOB_COMPLETED_AT_KEY;
+
+/**
+ * Stage hop latency with polled versus streamed job activation, measured the way {@link CamundaService#recordActivation}
+ * does: from completing a job to activating the next job of the same process instance. The process is a chain of
+ * service tasks, as a cycle of five stages (pre-processing, action, post-processing, decision) is.
+ * <p>
+ * Run with {@code -Dmanak.benchmark=true}; needs Docker.
+ */
+@Testcontainers
+@EnabledIfSystemProperty(named = "manak.benchmark", matches = "true")
+@CommonsLog
+class JobStreamingBenchmarkIT {
+    private static final String PROCESS_ID = "benchmark-hops";
+    private static final String JOB_TYPE = "benchmark-hop";
+    private static final int HOPS = 20;
+    private static final int INSTANCES = 20;
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(100);
+    private static final int GATEWAY_PORT = 26500;
+
+    @Container
+    private static final GenericContainer<?> zeebe = new GenericContainer<>(DockerImageName.parse("camunda/zeebe:8.8.0"))
+            .withExposedPorts(GATEWAY_PORT, 9600)
+            .waitingFor(Wait.forHttp("/ready").forPort(9600));
+
+    @Test
+    void streamedAndPolledHopLatency() {
+        try (CamundaClient client = CamundaClient.newClientBuilder()
+                .grpcAddress(URI.create("http://" + zeebe.getHost() + ":" + zeebe.getMappedPort(GATEWAY_PORT)))
+                .preferRestOverGrpc(false)
+                .usePlaintext()
+                .build()) {
+            client.newDeployResourceCommand().addProcessModel(process(), PROCESS_ID + ".bpmn").send().join();
+
+            LongSummaryStatistics polled = hopLatencies(client, false);
+            LongSummaryStatistics streamed = hopLatencies(client, true);
+
+            log.info("Hop latency in ms. poll=" + polled + " stream=" + streamed);
+            Assertions.assertThat(polled.getCount()).isEqualTo((long) (HOPS - 1) * INSTANCES);
+            Assertions.assertThat(streamed.getCount()).isEqualTo((long) (HOPS - 1) * INSTANCES);
+        }
+    }
+
+    private static LongSummaryStatistics hopLatencies(CamundaClient client, boolean streamEnabled) {
+        List<Long> latencies = new CopyOnWriteArrayList<>();
+        try (JobWorker ignored = client.newWorker()
+                .jobType(JOB_TYPE)
+                .handler((jobClient, job) -> {
+                    if (job.getVariablesAsMap().get(JOB_COMPLETED_AT_KEY) instanceof Number completedAt) {
+                        latencies.add(System.currentTimeMillis() - completedAt.longValue());
+                    }
+                    jobClient.newCompleteCommand(job.getKey())
+                            .variables(Map.of(JOB_COMPLETED_AT_KEY, System.currentTimeMillis()))
+                            .send()
+                            .join();
+                })
+                .pollInterval(POLL_INTERVAL)
+                .streamEnabled(streamEnabled)
+                .open()) {
+            for (int i = 0; i < INSTANCES; i++) {
+                client.newCreateInstanceCommand()
+                        .bpmnProcessId(PROCESS_ID)
+                        .latestVersion()
+                        .withResult()
+                        .requestTimeout(Duration.ofMinutes(1))
+                        .send()
+                        .join();
+            }
+        }
+        return latencies.stream().mapToLong(Long::longValue).summaryStatistics();
+    }
+
+    private static BpmnModelInstance process() {
+        AbstractFlowNodeBuilder<?, ?> builder = Bpmn.createExecutableProcess(PROCESS_ID).startEvent();
+        for (int i = 0; i < HOPS; i++) {
+            builder = builder.serviceTask("hop-" + i, task -> task.zeebeJobType(JOB_TYPE));
+        }
+        return builder.endEvent().done();
+    }
+}
@@ -0,0 +1,77 @@
+package ir.msob.manak.workflow.compression;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+class ContextCompressionCodecTest {
+    private static final int MIN_SIZE = 256;
+
+    private final ContextCompressionCodec codec = codec(true);
+
+    @Test
+    void selectedEntriesOfEveryContextRoundTrip() {
+        Document document = workflow("lorem ipsum ".repeat(100));
+
+        codec.compress(document);
+
+        Assertions.assertThat(document.get("context", Document.class).get("report")).isInstanceOf(Binary.class);
+        Assertions.assertThat(stageOutput(document).get("report")).isInstanceOf(Binary.class);
+        Assertions.assertThat(document.get("context", Document.class).get("summary")).isEqualTo("short");
+        codec.decompress(document);
+        Assertions.assertThat(document).isEqualTo(workflow("lorem ipsum ".repeat(100)));
+    }
+
+    @Test
+    void entriesBelowTheMinSizeStayReadable() {
+        Document document = workflow("tiny");
+
+        codec.compress(document);
+
+        Assertions.assertThat(document).isEqualTo(workflow("tiny"));
+    }
+
+    @Test
+    void compressedEntriesAreDecodedWhenCompressionIsDisabled() {
+        Document document = workflow("lorem ipsum ".repeat(100));
+        codec.compress(document);
+        ContextCompressionCodec disabled = codec(false);
+        Document uncompressed = workflow("lorem ipsum ".repeat(100));
+
+        disabled.compress(uncompressed);
+        disabled.decompress(document);
+
+        Assertions.assertThat(uncompressed).isEqualTo(workflow("lorem ipsum ".repeat(100)));
+        Assertions.assertThat(document).isEqualTo(workflow("lorem ipsum ".repeat(100)));
+    }
+
+    @Test
+    void packedDocumentRoundTrips() {
+        Document document = workflow("lorem ipsum ".repeat(100));
+
+        Assertions.assertThat(codec.unpack(codec.pack(document))).isEqualTo(document);
+    }
+
+    private static ContextCompressionCodec codec(boolean enabled) {
+        return new ContextCompressionCodec(enabled, Set.of("report"), MIN_SIZE, 6, new SimpleMeterRegistry());
+    }
+
+    private static Document workflow(String report) {
+        return new Document("_id", "workflow-1")
+                .append("context", new Document("report", new Document("text", report).append("pages", 3))
+                        .append("summary", "short"))
+                .append("cycles", List.of(new Document("_id", "cycle-1")
+                        .append("stagesHistory", List.of(new Document("stageOutput", new Document("report", report))))));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Document stageOutput(Document workflow) {
+        Document cycle = ((List<Document>) workflow.get("cycles")).get(0);
+        return ((List<Document>) cycle.get("stagesHistory")).get(0).get("stageOutput", Document.class);
+    }
+}
@@ -0,0 +1,156 @@
+package ir.msob.manak.workflow.jobresult;
+
+import io.camunda.client.api.response.ActivatedJob;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+class JobResultServiceTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration TTL = Duration.ofHours(1);
+
+    private final InMemoryJobResults repository = new InMemoryJobResults();
+    private final JobResultService jobResultService = service(true);
+
+    @Test
+    void firstActivationClaimsTheJob() {
+        ActivatedJob job = job(Instant.now().plusSeconds(60));
+
+        Assertions.assertThat(jobResultService.claim(job).blockOptional(TIMEOUT)).isEmpty();
+        Assertions.assertThat(repository.entries.get(key(job)).getStatus()).isEqualTo(JobResult.Status.IN_PROGRESS);
+    }
+
+    @Test
+    void redeliveryOfARunningJobIsStopped() {
+        ActivatedJob job = job(Instant.now().plusSeconds(60));
+        jobResultService.claim(job).block(TIMEOUT);
+
+        JobResult existing = jobResultService.claim(job(Instant.now().plusSeconds(120))).block(TIMEOUT);
+
+        Assertions.assertThat(existing).isNotNull();
+        Assertions.assertThat(existing.getStatus()).isEqualTo(JobResult.Status.IN_PROGRESS);
+    }
+
+    @Test
+    void redeliveryOfACompletedJobReplaysTheRecordedResult() {
+        ActivatedJob job = job(Instant.now().plusSeconds(60));
+        jobResultService.claim(job).block(TIMEOUT);
+        jobResultService.record(job, Map.of("nextStage", "publish")).block(TIMEOUT);
+
+        // from the cache of this instance and from mongo on another one
+        for (JobResultService service : new JobResultService[]{jobResultService, service(true)}) {
+            JobResult existing = service.claim(job(Instant.now().plusSeconds(120))).block(TIMEOUT);
+
+            Assertions.assertThat(existing).isNotNull();
+            Assertions.assertThat(existing.getStatus()).isEqualTo(JobResult.Status.DONE);
+            Assertions.assertThat(existing.getVariables()).containsEntry("nextStage", "publish");
+        }
+    }
+
+    @Test
+    void releasedClaimLetsTheRetryRun() {
+        ActivatedJob job = job(Instant.now().plusSeconds(60));
+        jobResultService.claim(job).block(TIMEOUT);
+
+        jobResultService.release(job).block(TIMEOUT);
+
+        Assertions.assertThat(repository.entries).doesNotContainKey(key(job));
+        Assertions.assertThat(jobResultService.claim(job(Instant.now().plusSeconds(120))).blockOptional(TIMEOUT)).isEmpty();
+    }
+
+    @Test
+    void releaseLeavesAClaimTakenOverByALaterActivation() {
+        ActivatedJob lapsed = job(Instant.now().minusSeconds(1));
+        ActivatedJob current = job(Instant.now().plusSeconds(60));
+        jobResultService.claim(lapsed).block(TIMEOUT);
+
+        Assertions.assertThat(jobResultService.claim(current).blockOptional(TIMEOUT)).isEmpty();
+        jobResultService.release(lapsed).block(TIMEOUT);
+
+        Assertions.assertThat(repository.entries.get(key(current)).getLeaseUntil()).isEqualTo(Instant.ofEpochMilli(current.getDeadline()));
+    }
+
+    @Test
+    void disabledLedgerRunsEveryActivation() {
+        JobResultService disabled = service(false);
+        ActivatedJob job = job(Instant.now().plusSeconds(60));
+
+        disabled.claim(job).block(TIMEOUT);
+        disabled.record(job, Map.of("nextStage", "publish")).block(TIMEOUT);
+
+        Assertions.assertThat(disabled.claim(job).blockOptional(TIMEOUT)).isEmpty();
+        Assertions.assertThat(repository.entries).isEmpty();
+    }
+
+    private JobResultService service(boolean enabled) {
+        return new JobResultService(repository, enabled, TTL, 16);
+    }
+
+    private static String key(ActivatedJob job) {
+        return job.getElementInstanceKey() + ":" + job.getKey();
+    }
+
+    private static ActivatedJob job(Instant deadline) {
+        return (ActivatedJob) Proxy.newProxyInstance(ActivatedJob.class.getClassLoader(), new Class<?>[]{ActivatedJob.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getKey" -> 42L;
+                    case "getElementInstanceKey" -> 7L;
+                    case "getType" -> "stage-decision";
+                    case "getDeadline" -> deadline.toEpochMilli();
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    /**
+     * The repository's conditional writes over a map.
+     */
+    private static final class InMemoryJobResults extends JobResultRepository {
+        private final Map<String, JobResult> entries = new ConcurrentHashMap<>();
+
+        InMemoryJobResults() {
+            super(null);
+        }
+
+        @Override
+        public Mono<Void> insert(JobResult jobResult) {
+            return entries.putIfAbsent(jobResult.getId(), jobResult) == null
+                    ? Mono.empty()
+                    : Mono.error(new DuplicateKeyException("Duplicate job result " + jobResult.getId()));
+        }
+
+        @Override
+        public Mono<Boolean> replace(JobResult jobResult, Instant expectedExpiresAt) {
+            JobResult existing = entries.get(jobResult.getId());
+            boolean replaced = existing != null && Objects.equals(existing.getExpiresAt(), expectedExpiresAt)
+                    && entries.replace(jobResult.getId(), existing, jobResult);
+            return Mono.just(replaced);
+        }
+
+        @Override
+        public Mono<Void> save(JobResult jobResult) {
+            entries.put(jobResult.getId(), jobResult);
+            return Mono.empty();
+        }
+
+        @Override
+        public Mono<Long> deleteClaim(String id, Instant leaseUntil) {
+            JobResult existing = entries.get(id);
+            boolean deleted = existing != null && existing.getStatus() == JobResult.Status.IN_PROGRESS
+                    && existing.getLeaseUntil().equals(leaseUntil) && entries.remove(id, existing);
+            return Mono.just(deleted ? 1L : 0L);
+        }
+
+        @Override
+        public Mono<JobResult> findById(String id) {
+            return Mono.justOrEmpty(entries.get(id));
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package ir.msob.manak.workflow.largevalue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ir.msob.manak.workflow.Application;
+import ir.msob.manak.workflow.ContainerConfiguration;
+import lombok.extern.apachecommons.CommonsLog;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.gridfs.ReactiveGridFsTemplate;
+import org.springframework.util.unit.DataSize;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+@SpringBootTest(classes = {Application.class, ContainerConfiguration.class}, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@Testcontainers
+@CommonsLog
+class LargeValueStoreIT {
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+    private static final String WORKFLOW_ID = "workflow-1";
+
+    @Autowired
+    private ReactiveGridFsTemplate gridFsTemplate;
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private LargeValueStore largeValueStore;
+
+    @BeforeEach
+    void beforeEach() {
+        largeValueStore = new LargeValueStore(gridFsTemplate, reactiveMongoTemplate, objectMapper, DataSize.ofBytes(64), 5);
+    }
+
+    @Test
+    void oversizedValuesAreOffloadedAndLoadedBack() {
+        Map<String, Object> values = Map.of("report", Map.of("text", "lorem ipsum ".repeat(20)),
+                "summary", "short",
+                "pages", 3);
+
+        Map<String, Object> offloaded = largeValueStore.offload(values, WORKFLOW_ID).block(TIMEOUT);
+
+        Assertions.assertThat(offloaded).containsEntry("summary", "short").containsEntry("pages", 3);
+        Assertions.assertThat(LargeValueResolver.isReference(offloaded.get("report"))).isTrue();
+        Assertions.assertThat(largeValueStore.load(offloaded).block(TIMEOUT)).isEqualTo(values);
+    }
+
+    @Test
+    void referencesAreLoadedAtAnyDepth() {
+        Map<String, Object> offloaded = largeValueStore.offload(Map.of("report", "lorem ipsum ".repeat(20)), WORKFLOW_ID).block(TIMEOUT);
+        Map<String, Object> nested = Map.of("stages", List.of(Map.of("output", offloaded.get("report"))));
+
+        Assertions.assertThat(largeValueStore.load(nested).block(TIMEOUT))
+                .isEqualTo(Map.of("stages", List.of(Map.of("output", "lorem ipsum ".repeat(20)))));
+    }
+
+    @Test
+    void valuesWithinTheThresholdStayInline() {
+        Map<String, Object> values = Map.of("summary", "short");
+
+        Assertions.assertThat(largeValueStore.offload(values, WORKFLOW_ID).block(TIMEOUT)).isSameAs(values);
+        Assertions.assertThat(largeValueStore.load(values).block(TIMEOUT)).isSameAs(values);
+    }
+
+    @Test
+    void deletedValueFailsTheLoad() {
+        Map<String, Object> offloaded = largeValueStore.offload(Map.of("report", "lorem ipsum ".repeat(20)), WORKFLOW_ID).block(TIMEOUT);
+
+        largeValueStore.deleteOwnedBy(WORKFLOW_ID, List.of()).block(TIMEOUT);
+
+        Assertions.assertThatThrownBy(() -> largeValueStore.load(offloaded).block(TIMEOUT))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Large value not found");
+    }
+}
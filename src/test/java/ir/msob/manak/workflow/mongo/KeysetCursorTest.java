@@ -0,0 +1,109 @@
+package ir.msob.manak.workflow.mongo;
+
+import org.assertj.core.api.Assertions;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.server.ServerWebInputException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+class KeysetCursorTest {
+    private static final String SORT_FIELD = "startedAt";
+    private static final String ID_FIELD = "_id";
+    private static final int PAGE_SIZE = 2;
+
+    @Test
+    void tokenRoundTrips() {
+        KeysetCursor cursor = new KeysetCursor(Instant.parse("2024-05-01T10:15:30.123Z"), "665f1c2e9b1d4a3f8c7e6d5b");
+
+        KeysetCursor decoded = KeysetCursor.decode(cursor.encode());
+
+        Assertions.assertThat(decoded.getSortValue()).isEqualTo(cursor.getSortValue());
+        Assertions.assertThat(decoded.getId()).isEqualTo(cursor.getId());
+    }
+
+    @Test
+    void tokenWithoutSortValueRoundTrips() {
+        KeysetCursor decoded = KeysetCursor.decode(new KeysetCursor(null, "id-1").encode());
+
+        Assertions.assertThat(decoded.getSortValue()).isNull();
+        Assertions.assertThat(decoded.getId()).isEqualTo("id-1");
+    }
+
+    @Test
+    void missingTokenIsTheFirstPage() {
+        Assertions.assertThat(KeysetCursor.decode(null)).isNull();
+        Assertions.assertThat(KeysetCursor.decode(" ")).isNull();
+    }
+
+    @Test
+    void foreignTokensAreRejected() {
+        for (String token : List.of("not a token!", encode("no-separator"), encode("2024-05-01T10:15:30Z|"), encode("yesterday|id-1"))) {
+            Assertions.assertThatThrownBy(() -> KeysetCursor.decode(token))
+                    .as(token)
+                    .isInstanceOf(ServerWebInputException.class);
+        }
+    }
+
+    @Test
+    void pagingThroughEqualSortKeysReturnsEveryItemOnce() {
+        Instant later = Instant.parse("2024-05-02T00:00:00Z");
+        Instant earlier = Instant.parse("2024-05-01T00:00:00Z");
+        List<Document> items = new ArrayList<>(List.of(
+                item(later, "c"), item(null, "a"), item(later, "e"),
+                item(earlier, "b"), item(null, "f"), item(later, "d")));
+        items.sort(Comparator.<Document, Instant>comparing(item -> (Instant) item.get(SORT_FIELD), Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparing(item -> item.getString(ID_FIELD))
+                .reversed());
+
+        List<String> read = new ArrayList<>();
+        KeysetCursor cursor = null;
+        do {
+            KeysetCursor after = cursor;
+            List<Document> fetched = items.stream()
+                    .filter(item -> after == null || matches(after.descendingAfter(SORT_FIELD, ID_FIELD).getCriteriaObject(), item))
+                    .limit(PAGE_SIZE + 1)
+                    .toList();
+            KeysetPage<Document> page = KeysetPage.of(fetched, PAGE_SIZE,
+                    last -> new KeysetCursor((Instant) last.get(SORT_FIELD), last.getString(ID_FIELD)));
+            page.getContent().forEach(item -> read.add(item.getString(ID_FIELD)));
+            cursor = KeysetCursor.decode(page.getNextToken());
+        } while (cursor != null);
+
+        Assertions.assertThat(read).containsExactly("e", "d", "c", "b", "f", "a");
+    }
+
+    private static Document item(Instant startedAt, String id) {
+        return new Document(SORT_FIELD, startedAt).append(ID_FIELD, id);
+    }
+
+    private static String encode(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Evaluates the subset of the query language the keyset criteria use: $or, $and, $lt and equality (null
+     * matching a missing value), with the type bracketing of $lt.
+     */
+    @SuppressWarnings("unchecked")
+    private static boolean matches(Document criteria, Document item) {
+        return criteria.entrySet().stream().allMatch(condition -> switch (condition.getKey()) {
+            case "$or" -> ((List<Document>) condition.getValue()).stream().anyMatch(c -> matches(c, item));
+            case "$and" -> ((List<Document>) condition.getValue()).stream().allMatch(c -> matches(c, item));
+            default -> condition.getValue() instanceof Document operator
+                    ? lessThan(item.get(condition.getKey()), operator.get("$lt"))
+                    : Objects.equals(item.get(condition.getKey()), condition.getValue());
+        });
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static boolean lessThan(Object value, Object bound) {
+        return value != null && value.getClass() == bound.getClass() && ((Comparable) value).compareTo(bound) < 0;
+    }
+}
@@ -0,0 +1,127 @@
+package ir.msob.manak.workflow.mongo;
+
+import com.mongodb.MongoException;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+class MongoBulkWriteSinkTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration WINDOW = Duration.ofMillis(50);
+
+    private final List<Map.Entry<String, Integer>> bulkWrites = new CopyOnWriteArrayList<>();
+    private MongoBulkWriteSink sink;
+
+    @AfterEach
+    void tearDown() {
+        if (sink != null) {
+            sink.shutdown();
+        }
+    }
+
+    @Test
+    void writesWithinTheWindowAreFlushedAsOneBulkWritePerCollection() {
+        sink = sink(() -> Mono.just(BulkWriteResult.unacknowledged()), 500, 100);
+
+        Flux.merge(Flux.range(0, 5).flatMap(i -> sink.write("WorkerHistory", insert(i))),
+                        Flux.range(0, 3).flatMap(i -> sink.write("StageHistory", insert(i))))
+                .then()
+                .block(TIMEOUT);
+
+        Assertions.assertThat(bulkWrites).containsExactlyInAnyOrder(Map.entry("WorkerHistory", 5), Map.entry("StageHistory", 3));
+    }
+
+    @Test
+    void writesBeyondMaxQueuedAreRejectedUntilTheQueueDrains() {
+        Sinks.One<BulkWriteResult> flushed = Sinks.one();
+        sink = sink(flushed::asMono, 1, 2);
+        Mono<Void> first = sink.write("WorkerHistory", insert(1)).cache();
+        Mono<Void> second = sink.write("WorkerHistory", insert(2)).cache();
+        first.subscribe(null, ex -> {
+        });
+        second.subscribe(null, ex -> {
+        });
+
+        Assertions.assertThatThrownBy(() -> sink.write("WorkerHistory", insert(3)).block(TIMEOUT))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("queue is full");
+
+        flushed.tryEmitValue(BulkWriteResult.unacknowledged());
+        Mono.when(first, second).block(TIMEOUT);
+        sink.write("WorkerHistory", insert(4)).block(TIMEOUT);
+    }
+
+    @Test
+    void failedBulkWriteFailsOnlyItsOwnWrites() {
+        sink = sink(() -> bulkWrites.size() == 1
+                ? Mono.error(new MongoException("node is recovering"))
+                : Mono.just(BulkWriteResult.unacknowledged()), 500, 100);
+
+        Assertions.assertThatThrownBy(() -> sink.write("WorkerHistory", insert(1)).block(TIMEOUT))
+                .isInstanceOf(MongoException.class);
+        sink.write("WorkerHistory", insert(2)).block(TIMEOUT);
+
+        Assertions.assertThat(bulkWrites).hasSize(2);
+    }
+
+    private MongoBulkWriteSink sink(Supplier<Mono<BulkWriteResult>> result, int maxOperations, int maxQueued) {
+        return new MongoBulkWriteSink(new StubCollections(result), new SimpleMeterRegistry(), true, WINDOW, maxOperations, 4, maxQueued);
+    }
+
+    private static WriteModel<Document> insert(int i) {
+        return new InsertOneModel<>(new Document("_id", i));
+    }
+
+    /**
+     * Collections that record every bulk write and answer it with {@code result}.
+     */
+    private final class StubCollections extends ReactiveMongoTemplate {
+        private final Supplier<Mono<BulkWriteResult>> result;
+
+        StubCollections(Supplier<Mono<BulkWriteResult>> result) {
+            super(unused(MongoClient.class), "test");
+            this.result = result;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Mono<MongoCollection<Document>> getCollection(String collectionName) {
+            return Mono.just((MongoCollection<Document>) Proxy.newProxyInstance(MongoCollection.class.getClassLoader(),
+                    new Class<?>[]{MongoCollection.class}, (proxy, method, args) -> {
+                        if (!method.getName().equals("bulkWrite")) {
+                            throw new UnsupportedOperationException(method.getName());
+                        }
+                        bulkWrites.add(Map.entry(collectionName, ((List<?>) args[0]).size()));
+                        return result.get();
+                    }));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T unused(Class<T> type) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> switch (method.getName()) {
+            case "toString" -> type.getSimpleName();
+            case "hashCode" -> System.identityHashCode(proxy);
+            case "equals" -> proxy == args[0];
+            default -> throw new UnsupportedOperationException(method.getName());
+        });
+    }
+}
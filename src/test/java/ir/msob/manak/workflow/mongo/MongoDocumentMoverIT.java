@@ -0,0 +1,83 @@
+package ir.msob.manak.workflow.mongo;
+
+import com.mongodb.client.model.Filters;
+import ir.msob.manak.workflow.Application;
+import ir.msob.manak.workflow.ContainerConfiguration;
+import lombok.extern.apachecommons.CommonsLog;
+import org.assertj.core.api.Assertions;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.IntStream;
+
+@SpringBootTest(classes = {Application.class, ContainerConfiguration.class}, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@Testcontainers
+@CommonsLog
+class MongoDocumentMoverIT {
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+    private static final String SOURCE = "MoverSource";
+    private static final String TARGET = "MoverTarget";
+
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+    @Autowired
+    private MongoDocumentMover mongoDocumentMover;
+
+    @BeforeEach
+    void beforeEach() {
+        Mono.when(reactiveMongoTemplate.dropCollection(SOURCE), reactiveMongoTemplate.dropCollection(TARGET)).block(TIMEOUT);
+        List<Document> documents = IntStream.range(0, 25)
+                .mapToObj(i -> new Document("_id", i).append("done", i % 5 != 0))
+                .toList();
+        reactiveMongoTemplate.insert(documents, SOURCE).then().block(TIMEOUT);
+    }
+
+    @Test
+    void matchingDocumentsAreMovedInBatches() {
+        Long moved = mongoDocumentMover.move(SOURCE, TARGET, Filters.eq("done", true), 7).block(TIMEOUT);
+
+        Assertions.assertThat(moved).isEqualTo(20L);
+        Assertions.assertThat(ids(TARGET)).containsExactlyInAnyOrderElementsOf(
+                IntStream.range(0, 25).filter(i -> i % 5 != 0).boxed().toList());
+        Assertions.assertThat(ids(SOURCE)).containsExactlyInAnyOrder(0, 5, 10, 15, 20);
+    }
+
+    @Test
+    void documentAlreadyInTheTargetIsReplaced() {
+        reactiveMongoTemplate.insert(new Document("_id", 1).append("done", false).append("stale", true), TARGET).block(TIMEOUT);
+
+        mongoDocumentMover.move(SOURCE, TARGET, Filters.eq("_id", 1), 10).block(TIMEOUT);
+
+        Document target = reactiveMongoTemplate.getCollection(TARGET)
+                .flatMap(collection -> Mono.from(collection.find(Filters.eq("_id", 1)).first()))
+                .block(TIMEOUT);
+        Assertions.assertThat(target).isEqualTo(new Document("_id", 1).append("done", true));
+        Assertions.assertThat(ids(SOURCE)).doesNotContain(1);
+    }
+
+    @Test
+    void noMatchMovesNothing() {
+        Long moved = mongoDocumentMover.move(SOURCE, TARGET, Filters.eq("done", "never"), 10).block(TIMEOUT);
+
+        Assertions.assertThat(moved).isZero();
+        Assertions.assertThat(ids(SOURCE)).hasSize(25);
+        Assertions.assertThat(ids(TARGET)).isEmpty();
+    }
+
+    private List<Object> ids(String collectionName) {
+        return reactiveMongoTemplate.getCollection(collectionName)
+                .flatMapMany(collection -> Flux.from(collection.find()))
+                .map(document -> document.get("_id"))
+                .collectList()
+                .block(TIMEOUT);
+    }
+}
@@ -0,0 +1,76 @@
+package ir.msob.manak.workflow.worker.core;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ir.msob.manak.domain.model.workflow.workflow.Workflow;
+import ir.msob.manak.domain.model.workflow.workflow.WorkflowDto;
+import ir.msob.manak.domain.model.workflow.workflowspecification.WorkflowSpecification;
+import ir.msob.manak.workflow.largevalue.LargeValueResolver;
+import ir.msob.manak.workflow.stagehistory.StageHistoryRepository;
+import ir.msob.manak.workflow.stagehistory.StageHistoryService;
+import ir.msob.manak.workflow.worker.util.ConditionEvaluator;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+class StageDecisionWorkerTest {
+    private static final String CYCLE_ID = "cycle-1";
+
+    private final StageHistoryService stageHistoryService = new StageHistoryService(new NoStageHistories(), null);
+    private final StageDecisionWorker worker = new StageDecisionWorker(null, stageHistoryService, null, null, new ConditionEvaluator(), null);
+
+    @Test
+    void missingStageHistoryIsDecidedOnAnEmptyStageOutput() {
+        Workflow workflow = workflow(List.of(
+                Map.of("stage", Map.of("key", "review"), "firstStage", true, "transitions", List.of(
+                        Map.of("on", Map.of("$approved", true), "goTo", "publish"),
+                        Map.of("on", Map.of("$approved", Map.of("$exists", false)), "goTo", "rework"))),
+                Map.of("stage", Map.of("key", "publish")),
+                Map.of("stage", Map.of("key", "rework"))));
+
+        WorkflowSpecification.StageSpec next = worker.determineNextStage(workflow, CYCLE_ID, "missing-history", "review",
+                Map.of(), new LargeValueResolver()).block(Duration.ofSeconds(5));
+
+        Assertions.assertThat(next).isNotNull();
+        Assertions.assertThat(next.getStage().getKey()).isEqualTo("rework");
+    }
+
+    @Test
+    void missingStageHistoryWithoutMatchingTransitionFails() {
+        Workflow workflow = workflow(List.of(
+                Map.of("stage", Map.of("key", "review"), "firstStage", true, "transitions", List.of(
+                        Map.of("on", Map.of("$approved", true), "goTo", "publish"))),
+                Map.of("stage", Map.of("key", "publish"))));
+
+        Mono<WorkflowSpecification.StageSpec> next = worker.determineNextStage(workflow, CYCLE_ID, "missing-history", "review",
+                Map.of(), new LargeValueResolver());
+
+        Assertions.assertThatThrownBy(() -> next.block(Duration.ofSeconds(5)))
+                .hasMessageContaining("No valid transition found");
+    }
+
+    private static Workflow workflow(List<?> stages) {
+        return new ObjectMapper().convertValue(Map.of(
+                "id", "workflow-1",
+                "context", Map.of(),
+                "specification", Map.of("stages", stages),
+                "cycles", List.of(Map.of("id", CYCLE_ID, "context", Map.of()))), WorkflowDto.class);
+    }
+
+    /**
+     * A stage history collection without the requested entry; the workflow has no embedded stage histories either.
+     */
+    private static final class NoStageHistories extends StageHistoryRepository {
+        NoStageHistories() {
+            super(null, null, null, null);
+        }
+
+        @Override
+        public Mono<Workflow.StageHistory> findOne(String workflowId, String cycleId, String stageHistoryId) {
+            return Mono.empty();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package ir.msob.manak.workflow.worker.core;
+
+import io.camunda.client.annotation.JobWorker;
+import io.camunda.client.annotation.value.JobWorkerValue;
+import io.camunda.client.api.response.ActivatedJob;
+import ir.msob.manak.workflow.camunda.JobWorkerProperties;
+import ir.msob.manak.workflow.camunda.JobWorkerSettingsCustomizer;
+import ir.msob.manak.workflow.largevalue.LargeValueResolver;
+import ir.msob.manak.workflow.worker.util.ConditionEvaluator;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static ir.msob.manak.workflow.worker.Constants.*;
+
+class StageWorkerProcessVariableTest {
+
+    private final ConditionEvaluator conditionEvaluator = new ConditionEvaluator();
+
+    @Test
+    void stageWorkersFetchTheVariablesTheyRead() throws NoSuchMethodException {
+        for (Class<?> worker : new Class<?>[]{StagePreProcessingWorker.class, StagePostProcessingWorker.class, StageDecisionWorker.class}) {
+            JobWorker jobWorker = worker.getMethod("execute", ActivatedJob.class).getAnnotation(JobWorker.class);
+
+            Assertions.assertThat(jobWorker.fetchVariables())
+                    .as("fetchVariables of %s", worker.getSimpleName())
+                    .contains(WORKFLOW_ID_KEY, CYCLE_ID_KEY, STAGE_KEY_KEY, JOB_COMPLETED_AT_KEY);
+        }
+    }
+
+    @Test
+    void configuredProcessVariablesAreFetchedWithTheDeclaredOnes() {
+        JobWorkerProperties properties = new JobWorkerProperties();
+        JobWorkerProperties.JobTypeSettings settings = new JobWorkerProperties.JobTypeSettings();
+        settings.setFetchVariables(List.of("customer", WORKFLOW_ID_KEY));
+        properties.getTypes().put("stage-decision", settings);
+        JobWorkerValue jobWorkerValue = new JobWorkerValue();
+        jobWorkerValue.setType("stage-decision");
+        jobWorkerValue.setFetchVariables(List.of(WORKFLOW_ID_KEY, CYCLE_ID_KEY));
+
+        new JobWorkerSettingsCustomizer(properties).customize(jobWorkerValue);
+
+        Assertions.assertThat(jobWorkerValue.getFetchVariables()).containsExactly(WORKFLOW_ID_KEY, CYCLE_ID_KEY, "customer");
+    }
+
+    @Test
+    void processVariableMappingResolves() {
+        Map<String, Object> processVars = Map.of("customer", Map.of("tier", "gold"));
+
+        Object value = conditionEvaluator.resolveValueFromConditionKey("$processVariable>customer.tier",
+                Map.of(), Map.of(), processVars, Map.of(), new LargeValueResolver());
+
+        Assertions.assertThat(value).isEqualTo("gold");
+    }
+
+    @Test
+    void processVariableConditionMatches() {
+        Map<String, Object> processVars = Map.of("customer", Map.of("tier", "gold"));
+
+        Assertions.assertThat(conditionEvaluator.evaluateConditions(Map.of("$processVariable>customer.tier", "gold"),
+                Map.of(), Map.of(), processVars, Map.of(), new LargeValueResolver())).isTrue();
+        Assertions.assertThat(conditionEvaluator.evaluateConditions(Map.of("$processVariable>customer.tier", "gold"),
+                Map.of(), Map.of(), Map.of(), Map.of(), new LargeValueResolver())).isFalse();
+    }
+}
@@ -0,0 +1,106 @@
+package ir.msob.manak.workflow.workflow;
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Updates;
+import ir.msob.manak.domain.model.workflow.workflow.Workflow;
+import ir.msob.manak.workflow.Application;
+import ir.msob.manak.workflow.ContainerConfiguration;
+import lombok.extern.apachecommons.CommonsLog;
+import org.assertj.core.api.Assertions;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Date;
+
+@SpringBootTest(classes = {Application.class, ContainerConfiguration.class}, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@Testcontainers
+@CommonsLog
+class WorkflowArchiveRepositoryIT {
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+    @Autowired
+    private WorkflowRepository workflowRepository;
+    @Autowired
+    private WorkflowArchiveRepository workflowArchiveRepository;
+
+    private Document workflow;
+
+    @BeforeEach
+    void beforeEach() {
+        workflow = new Document(WorkflowRepository.MONGO_ID, new ObjectId())
+                .append(Workflow.FN.executionStatus, Workflow.WorkflowExecutionStatus.COMPLETED.name())
+                .append(Workflow.FN.endedAt, new Date())
+                .append(WorkflowRepository.VERSION_FIELD, 3L);
+        reactiveMongoTemplate.insert(new Document(workflow), workflowRepository.getWorkflowCollectionName()).block(TIMEOUT);
+    }
+
+    @Test
+    void unchangedWorkflowIsMoved() {
+        Assertions.assertThat(workflowArchiveRepository.archive(workflow, false).block(TIMEOUT)).isTrue();
+
+        Assertions.assertThat(hot()).isNull();
+        Assertions.assertThat(archived()).containsAllEntriesOf(workflow);
+    }
+
+    @Test
+    void workflowChangedInBetweenStaysHotAndItsCopyIsDropped() {
+        reactiveMongoTemplate.getCollection(workflowRepository.getWorkflowCollectionName())
+                .flatMap(hot -> Mono.from(hot.updateOne(Filters.eq(WorkflowRepository.MONGO_ID, id()),
+                        Updates.inc(WorkflowRepository.VERSION_FIELD, 1L))))
+                .block(TIMEOUT);
+
+        Assertions.assertThat(workflowArchiveRepository.archive(workflow, false).block(TIMEOUT)).isFalse();
+
+        Assertions.assertThat(hot()).isNotNull();
+        Assertions.assertThat(archived()).isNull();
+    }
+
+    @Test
+    void workflowAlreadyMovedKeepsItsCopy() {
+        workflowArchiveRepository.archive(workflow, false).block(TIMEOUT);
+
+        Assertions.assertThat(workflowArchiveRepository.archive(workflow, false).block(TIMEOUT)).isFalse();
+
+        Assertions.assertThat(hot()).isNull();
+        Assertions.assertThat(archived()).isNotNull();
+    }
+
+    @Test
+    void compressedWorkflowIsStoredAsPayload() {
+        Assertions.assertThat(workflowArchiveRepository.archive(workflow, true).block(TIMEOUT)).isTrue();
+
+        Document archived = archived();
+        Assertions.assertThat(archived).isNotNull();
+        Assertions.assertThat(archived.get("payload")).isInstanceOf(Binary.class);
+        Assertions.assertThat(archived).doesNotContainKey(WorkflowRepository.VERSION_FIELD);
+    }
+
+    private ObjectId id() {
+        return workflow.getObjectId(WorkflowRepository.MONGO_ID);
+    }
+
+    private Document hot() {
+        return find(workflowRepository.getWorkflowCollectionName());
+    }
+
+    private Document archived() {
+        return find(WorkflowArchiveRepository.COLLECTION_NAME);
+    }
+
+    private Document find(String collectionName) {
+        return reactiveMongoTemplate.getCollection(collectionName)
+                .flatMap(collection -> Mono.from(collection.find(Filters.eq(WorkflowRepository.MONGO_ID, id())).first()))
+                .block(TIMEOUT);
+    }
+}
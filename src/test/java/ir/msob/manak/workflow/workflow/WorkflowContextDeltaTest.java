@@ -0,0 +1,98 @@
+package ir.msob.manak.workflow.workflow;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+class WorkflowContextDeltaTest {
+
+    @Test
+    void targetedUpdateLeavesTheSameContextAsReplacingTheWholeWorkflow() {
+        Map<String, Object> stored = context();
+        Map<String, Object> workflowContext = context();
+        Map<String, Object> cycleContext = new HashMap<>(Map.of("attempt", 1));
+        Map<String, Object> storedCycle = new HashMap<>(Map.of("attempt", 1));
+        WorkflowContextDelta delta = new WorkflowContextDelta(workflowContext, cycleContext);
+
+        // what the output mapping does in memory; the reported path is the shallowest one it created
+        child(workflowContext, "customer").put("tier", "gold");
+        delta.workflowContextChanged("customer.tier");
+        workflowContext.put("shipping", new HashMap<>(Map.of("address", new HashMap<>(Map.of("city", "Shiraz")))));
+        delta.workflowContextChanged("shipping");
+        cycleContext.put("decision", "approve");
+        delta.cycleContextChanged("decision");
+
+        Map<String, Object> workflowValues = delta.workflowContextValues(entry -> false);
+        Map<String, Object> cycleValues = delta.cycleContextValues(entry -> false);
+        workflowValues.forEach((path, value) -> set(stored, path, value));
+        cycleValues.forEach((path, value) -> set(storedCycle, path, value));
+
+        // the legacy path writes the mutated contexts as they are
+        Assertions.assertThat(stored).isEqualTo(workflowContext);
+        Assertions.assertThat(storedCycle).isEqualTo(cycleContext);
+        Assertions.assertThat(workflowValues).containsOnlyKeys("customer.tier", "shipping");
+        Assertions.assertThat(cycleValues).containsOnlyKeys("decision");
+    }
+
+    @Test
+    void pathBelowAnotherChangedPathIsCoveredByIt() {
+        Map<String, Object> workflowContext = context();
+        WorkflowContextDelta delta = new WorkflowContextDelta(workflowContext, new HashMap<>());
+        delta.workflowContextChanged("customer.tier");
+        delta.workflowContextChanged("customer");
+
+        Assertions.assertThat(delta.workflowContextValues(entry -> false))
+                .containsOnlyKeys("customer")
+                .containsEntry("customer", workflowContext.get("customer"));
+    }
+
+    @Test
+    void pathInsideAWholeEntryIsWidenedToTheEntry() {
+        Map<String, Object> workflowContext = context();
+        WorkflowContextDelta delta = new WorkflowContextDelta(workflowContext, new HashMap<>());
+        delta.workflowContextChanged("customer.tier");
+        delta.workflowContextChanged("order.id");
+
+        Assertions.assertThat(delta.workflowContextValues("customer"::equals))
+                .containsOnlyKeys("customer", "order.id")
+                .containsEntry("customer", workflowContext.get("customer"))
+                .containsEntry("order.id", 42);
+    }
+
+    @Test
+    void deltaWithoutChangesIsEmpty() {
+        WorkflowContextDelta delta = new WorkflowContextDelta(context(), new HashMap<>());
+
+        Assertions.assertThat(delta.isEmpty()).isTrue();
+        delta.cycleContextChanged("decision");
+        Assertions.assertThat(delta.isEmpty()).isFalse();
+    }
+
+    private static Map<String, Object> context() {
+        Map<String, Object> context = new HashMap<>();
+        context.put("customer", new HashMap<>(Map.of("name", "Sara", "tier", "silver")));
+        context.put("order", new HashMap<>(Map.of("id", 42)));
+        context.put("report", "large untouched entry");
+        return context;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> child(Map<String, Object> context, String key) {
+        return (Map<String, Object>) context.get(key);
+    }
+
+    /**
+     * {@code $set} of a dotted path: missing intermediate documents are created.
+     */
+    @SuppressWarnings("unchecked")
+    private static void set(Map<String, Object> context, String path, Object value) {
+        String[] keys = path.split("\\.");
+        Map<String, Object> current = context;
+        for (int i = 0; i < keys.length - 1; i++) {
+            current = (Map<String, Object>) current.computeIfAbsent(keys[i], key -> new HashMap<String, Object>());
+        }
+        current.put(keys[keys.length - 1], value);
+    }
+}
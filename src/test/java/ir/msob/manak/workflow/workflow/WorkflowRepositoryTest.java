@@ -0,0 +1,51 @@
+package ir.msob.manak.workflow.workflow;
+
+import ir.msob.manak.domain.model.workflow.workflow.Workflow;
+import org.assertj.core.api.Assertions;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+class WorkflowRepositoryTest {
+
+    @Test
+    void fullSaveKeepsSnapshotReferenceAndBumpsVersion() {
+        Document stored = new Document(WorkflowRepository.VERSION_FIELD, 4L)
+                .append(WorkflowRepository.SPECIFICATION_SNAPSHOT_FIELD, "hash");
+        Document replacement = new Document(Workflow.FN.specification,
+                new Document(WorkflowRepository.MONGO_ID, "spec-1").append("stages", "full content"));
+
+        WorkflowRepository.carryStorageFields(stored, replacement);
+
+        Assertions.assertThat(replacement.get(WorkflowRepository.VERSION_FIELD)).isEqualTo(5L);
+        Assertions.assertThat(replacement.getString(WorkflowRepository.SPECIFICATION_SNAPSHOT_FIELD)).isEqualTo("hash");
+        Assertions.assertThat(replacement.get(Workflow.FN.specification)).isEqualTo(new Document(WorkflowRepository.MONGO_ID, "spec-1"));
+    }
+
+    @Test
+    void fullSaveOfLegacyWorkflowKeepsEmbeddedSpecification() {
+        Document specification = new Document(WorkflowRepository.MONGO_ID, "spec-1").append("stages", "full content");
+        Document replacement = new Document(Workflow.FN.specification, specification);
+
+        WorkflowRepository.carryStorageFields(new Document(), replacement);
+
+        Assertions.assertThat(replacement.get(WorkflowRepository.VERSION_FIELD)).isEqualTo(1L);
+        Assertions.assertThat(replacement.containsKey(WorkflowRepository.SPECIFICATION_SNAPSHOT_FIELD)).isFalse();
+        Assertions.assertThat(replacement.get(Workflow.FN.specification)).isSameAs(specification);
+    }
+
+    @Test
+    void firstVersionAlsoMatchesDocumentsWrittenBeforeVersioning() {
+        Assertions.assertThat(WorkflowRepository.versionCriteria(0).getCriteriaObject())
+                .isEqualTo(new Document(WorkflowRepository.VERSION_FIELD, new Document("$in", Arrays.asList(0L, null))));
+        Assertions.assertThat(WorkflowRepository.versionCriteria(3).getCriteriaObject())
+                .isEqualTo(new Document(WorkflowRepository.VERSION_FIELD, 3L));
+    }
+
+    @Test
+    void unversionedDocumentIsAtVersionZero() {
+        Assertions.assertThat(WorkflowRepository.versionOf(new Document())).isZero();
+        Assertions.assertThat(WorkflowRepository.versionOf(new Document(WorkflowRepository.VERSION_FIELD, 7))).isEqualTo(7L);
+    }
+}
@@ -0,0 +1,64 @@
+package ir.msob.manak.workflow.workflow;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class WorkflowServiceTest {
+
+    private static final Duration MIN_BACKOFF = Duration.ofMillis(1);
+    private static final Duration MAX_BACKOFF = Duration.ofMillis(5);
+
+    @Test
+    void versionConflictsAreRetriedUntilTheWriteSucceeds() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        Integer written = write(attempts, 2)
+                .retryWhen(WorkflowService.conflictRetry("workflow-1", 5, MIN_BACKOFF, MAX_BACKOFF))
+                .block(Duration.ofSeconds(5));
+
+        Assertions.assertThat(written).isEqualTo(3);
+        Assertions.assertThat(attempts).hasValue(3);
+    }
+
+    @Test
+    void exhaustedRetriesRethrowTheConflict() {
+        AtomicInteger attempts = new AtomicInteger();
+        Mono<Integer> write = write(attempts, Integer.MAX_VALUE)
+                .retryWhen(WorkflowService.conflictRetry("workflow-1", 2, MIN_BACKOFF, MAX_BACKOFF));
+
+        Assertions.assertThatThrownBy(() -> write.block(Duration.ofSeconds(5)))
+                .isInstanceOf(OptimisticLockingFailureException.class);
+        Assertions.assertThat(attempts).hasValue(3);
+    }
+
+    @Test
+    void otherErrorsAreNotRetried() {
+        AtomicInteger attempts = new AtomicInteger();
+        Mono<Integer> write = Mono.<Integer>defer(() -> {
+                    attempts.incrementAndGet();
+                    return Mono.error(new IllegalStateException("boom"));
+                })
+                .retryWhen(WorkflowService.conflictRetry("workflow-1", 5, MIN_BACKOFF, MAX_BACKOFF));
+
+        Assertions.assertThatThrownBy(() -> write.block(Duration.ofSeconds(5)))
+                .isInstanceOf(IllegalStateException.class);
+        Assertions.assertThat(attempts).hasValue(1);
+    }
+
+    /**
+     * A compare-and-set write that conflicts {@code conflicts} times before it matches, emitting its attempt number.
+     */
+    private static Mono<Integer> write(AtomicInteger attempts, int conflicts) {
+        return Mono.defer(() -> {
+            int attempt = attempts.incrementAndGet();
+            return attempt <= conflicts
+                    ? Mono.error(new OptimisticLockingFailureException("Workflow was modified concurrently."))
+                    : Mono.just(attempt);
+        });
+    }
+}
@@ -0,0 +1,90 @@
+package ir.msob.manak.workflow.workflow;
+
+import ir.msob.manak.domain.model.workflow.workflow.WorkflowDto;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Signal;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+class WorkflowWriteCoalescerTest {
+
+    private final WorkflowWriteCoalescer coalescer = new WorkflowWriteCoalescer();
+    private final List<String> writes = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(coalescer, "window", Duration.ofMillis(100));
+        ReflectionTestUtils.setField(coalescer, "maxBatch", 32);
+    }
+
+    @Test
+    void mutationsOfOneWorkflowWithinTheWindowShareOneWrite() {
+        List<String> results = submit("workflow-1", 5, this::write);
+
+        Assertions.assertThat(writes).containsExactly("workflow-1:5");
+        Assertions.assertThat(results).containsExactlyInAnyOrder("r0", "r1", "r2", "r3", "r4");
+    }
+
+    @Test
+    void fullBatchIsWrittenWithoutWaitingForTheWindow() {
+        ReflectionTestUtils.setField(coalescer, "maxBatch", 2);
+
+        List<String> results = submit("workflow-1", 5, this::write);
+
+        Assertions.assertThat(writes).containsExactly("workflow-1:2", "workflow-1:2", "workflow-1:1");
+        Assertions.assertThat(results).hasSize(5);
+    }
+
+    @Test
+    void workflowsAreWrittenSeparately() {
+        Flux.merge(Flux.range(0, 2).flatMap(i -> submitOne("workflow-1", i, this::write)),
+                        Flux.range(0, 3).flatMap(i -> submitOne("workflow-2", i, this::write)))
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        Assertions.assertThat(writes).containsExactlyInAnyOrder("workflow-1:2", "workflow-2:3");
+    }
+
+    @Test
+    void failedWriteFailsEveryCallerOfTheBatch() {
+        List<Signal<String>> outcomes = Flux.range(0, 3)
+                .flatMap(i -> submitOne("workflow-1", i, (id, mutations) -> Mono.error(new IllegalStateException("write failed")))
+                        .materialize())
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        Assertions.assertThat(outcomes).hasSize(3).allMatch(Signal::isOnError);
+    }
+
+    private List<String> submit(String workflowId, int count, Writer writer) {
+        return Flux.range(0, count)
+                .flatMap(i -> submitOne(workflowId, i, writer))
+                .collectList()
+                .block(Duration.ofSeconds(5));
+    }
+
+    private Mono<String> submitOne(String workflowId, int i, Writer writer) {
+        return coalescer.submit(workflowId, new PendingMutation<>(workflow -> "r" + i, false), writer::write);
+    }
+
+    /**
+     * Applies the batch to one workflow, as a compare-and-set write would, and records its size.
+     */
+    private Mono<Void> write(String workflowId, List<PendingMutation<?>> mutations) {
+        writes.add(workflowId + ":" + mutations.size());
+        WorkflowDto workflow = new WorkflowDto();
+        mutations.forEach(mutation -> mutation.apply(workflow));
+        return Mono.empty();
+    }
+
+    private interface Writer {
+        Mono<Void> write(String workflowId, List<PendingMutation<?>> mutations);
+    }
+}